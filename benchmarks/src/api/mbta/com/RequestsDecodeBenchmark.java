@@ -0,0 +1,91 @@
+package api.mbta.com;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding MBTA api responses held in memory, so that no network time is
+ * measured: a /routes response of the subway routes and a /stops response
+ * of a given number of stops. Lives in the package of <em>Requests</em> to
+ * reach its decoders; every /stops decode uses fresh Requests, so that no
+ * stop is known beforehand, as on a first load.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestsDecodeBenchmark {
+
+	private static final String[][] SUBWAY = { { "Red", "Red Line" }, { "Mattapan", "Mattapan Trolley" },
+			{ "Orange", "Orange Line" }, { "Green-B", "Green Line B" }, { "Green-C", "Green Line C" },
+			{ "Green-D", "Green Line D" }, { "Green-E", "Green Line E" }, { "Blue", "Blue Line" } };
+
+	@Param({ "100", "8000" })
+	public int stops;
+
+	private String routesBody;
+	private String stopsBody;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < SUBWAY.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append("{\"attributes\":{\"color\":\"DA291C\",\"description\":\"Rapid Transit\",")
+					.append("\"direction_names\":[\"South\",\"North\"],\"long_name\":\"").append(SUBWAY[i][1])
+					.append("\",\"short_name\":\"\",\"sort_order\":").append(10010 + i).append(",\"type\":1},\"id\":\"")
+					.append(SUBWAY[i][0]).append("\",\"links\":{\"self\":\"/routes/").append(SUBWAY[i][0])
+					.append("\"},\"type\":\"route\"}");
+		}
+		routesBody = sb.append("],\"jsonapi\":{\"version\":\"1.0\"}}").toString();
+
+		// Shaped like the MBTA api /stops response
+		sb = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < stops; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append("{\"attributes\":{\"address\":\"Massachusetts Ave and Holyoke St, Cambridge, MA 02138\",")
+					.append("\"at_street\":null,\"description\":null,\"latitude\":").append(42.3 + i * 1e-3)
+					.append(",\"location_type\":1,\"longitude\":").append(-71.1 + i * 1e-3)
+					.append(",\"municipality\":\"Cambridge\",\"name\":\"Stop ").append(i)
+					.append("\",\"on_street\":null,\"platform_code\":null,\"platform_name\":null,")
+					.append("\"vehicle_type\":null,\"wheelchair_boarding\":1},\"id\":\"place-").append(i)
+					.append("\",\"links\":{\"self\":\"/stops/place-").append(i).append("\"},")
+					.append("\"relationships\":{\"parent_station\":{\"data\":null},\"zone\":{\"data\":{\"id\":")
+					.append("\"RapidTransit\",\"type\":\"zone\"}}},\"type\":\"stop\"}");
+		}
+		stopsBody = sb.append("],\"jsonapi\":{\"version\":\"1.0\"}}").toString();
+	}
+
+	@Benchmark
+	public List<Route> readRoutes() throws IOException {
+		return Requests.readRoutes(new StringReader(routesBody));
+	}
+
+	@Benchmark
+	public Map<Route, List<Stop>> readStops() throws IOException {
+		Requests requests = new Requests("http://localhost");
+		return requests.readStops(new StringReader(stopsBody), Collections.singletonList(new Route("Red", "Red Line")), null);
+	}
+}
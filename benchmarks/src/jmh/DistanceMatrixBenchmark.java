@@ -0,0 +1,66 @@
+package jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+
+/**
+ * A 50 by 50 origin-destination distance matrix of random stops with
+ * {@code SubwayGraph.distanceMatrix}: one one-to-many search per origin, or
+ * bucket-based many-to-many searches once a contraction hierarchy is prepared.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceMatrixBenchmark {
+
+	@Param({ "grid-40", "grid-80" })
+	public String network;
+
+	@Param({ "false", "true" })
+	public boolean contracted;
+
+	private SubwayGraph graph;
+	private List<Stop> origins;
+	private List<Stop> destinations;
+
+	@Setup
+	public void setup() {
+		graph = new SubwayGraph(Networks.routes(network));
+		if (contracted)
+			graph.prepareContractionHierarchy();
+		Random random = new Random(2);
+		origins = new ArrayList<Stop>();
+		destinations = new ArrayList<Stop>();
+		for (int i = 0; i < 50; i++) {
+			origins.add(graph.vertexAt(random.nextInt(graph.getNumVertices())));
+			destinations.add(graph.vertexAt(random.nextInt(graph.getNumVertices())));
+		}
+	}
+
+	@Benchmark
+	public int[][] distanceMatrix() {
+		return graph.distanceMatrix(origins, destinations);
+	}
+}
@@ -0,0 +1,81 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.Path;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import graph.CompiledGraph;
+import graph.DistanceTable;
+
+/**
+ * Building the all-pairs <em>DistanceTable</em>, and shortest path queries
+ * between random pairs of stops answered from it. The same queries searched in
+ * the graph are in <em>RoutingBenchmark</em>. The table holds two ints per pair
+ * of stops, so the networks are no larger than a subway.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceTableBenchmark {
+
+	@Param({ "fixture", "grid-20" })
+	public String network;
+
+	private CompiledGraph compiled;
+	private SubwayGraph graph;
+	private Stop[] starts;
+	private Stop[] goals;
+
+	@Setup
+	public void setup() {
+		graph = new SubwayGraph(Networks.routes(network));
+		compiled = graph.compile();
+		graph.precomputeAllPairs();
+		Random random = new Random(2);
+		starts = new Stop[1024];
+		goals = new Stop[starts.length];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = graph.vertexAt(random.nextInt(graph.getNumVertices()));
+			goals[i] = graph.vertexAt(random.nextInt(graph.getNumVertices()));
+		}
+	}
+
+	/**
+	 * The next pair of stops for each thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public DistanceTable build() {
+		return DistanceTable.build(compiled);
+	}
+
+	@Benchmark
+	public Path lookup(Cursor cursor) {
+		int i = cursor.next++ & (starts.length - 1);
+		return graph.shortestPath(starts[i], goals[i]);
+	}
+}
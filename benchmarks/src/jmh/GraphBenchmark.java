@@ -0,0 +1,73 @@
+package jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import graph.G;
+
+/**
+ * Building a <em>G</em> edge by edge with {@code addEdge}, and visiting every
+ * neighbor of every vertex with {@code getNeighbors}.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+
+	@Param({ "fixture", "grid-20", "grid-80", "grid-160" })
+	public String network;
+
+	private List<Route> routes;
+	private SubwayGraph graph;
+	private Stop[] vertices;
+
+	@Setup
+	public void setup() {
+		routes = Networks.routes(network);
+		graph = new SubwayGraph(routes);
+		vertices = new Stop[graph.getNumVertices()];
+		for (int v = 0; v < vertices.length; v++)
+			vertices[v] = graph.vertexAt(v);
+	}
+
+	@Benchmark
+	public G<Stop> addEdge() {
+		G<Stop> g = new G<Stop>();
+		for (Route route : routes) {
+			List<Stop> stops = route.getStops();
+			for (int i = 0; i + 1 < stops.size(); i++) {
+				g.addEdge(stops.get(i), stops.get(i + 1));
+				g.addEdge(stops.get(i + 1), stops.get(i));
+			}
+		}
+		return g;
+	}
+
+	@Benchmark
+	public void getNeighbors(Blackhole bh) {
+		for (Stop v : vertices)
+			for (Stop w : graph.getNeighbors(v))
+				bh.consume(w);
+	}
+}
@@ -0,0 +1,79 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import graph.IndexMinPQ;
+import graph.IntIndexMinPQ;
+
+/**
+ * A Dijkstra-like workload on the indexed priority queues: every index is
+ * inserted with a random key, half of them get a smaller key with
+ * {@code decreaseKey}, then all are removed with {@code delMin}. Runs on the
+ * generic <em>IndexMinPQ</em> and the primitive <em>IntIndexMinPQ</em>.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexMinPQBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private int[] keys;
+	private int[] decreased; // smaller keys for the even indices
+
+	@Setup
+	public void setup() {
+		Random random = new Random(1);
+		keys = new int[size];
+		decreased = new int[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = 1 + random.nextInt(Integer.MAX_VALUE - 1);
+			decreased[i] = random.nextInt(keys[i]);
+		}
+	}
+
+	@Benchmark
+	public long indexMinPQ() {
+		IndexMinPQ<Integer> pq = new IndexMinPQ<Integer>(size);
+		for (int i = 0; i < size; i++)
+			pq.insert(i, keys[i]);
+		for (int i = 0; i < size; i += 2)
+			pq.decreaseKey(i, decreased[i], false);
+		long sum = 0;
+		while (!pq.isEmpty())
+			sum += pq.delMin();
+		return sum;
+	}
+
+	@Benchmark
+	public long intIndexMinPQ() {
+		IntIndexMinPQ pq = new IntIndexMinPQ(size);
+		for (int i = 0; i < size; i++)
+			pq.insert(i, keys[i]);
+		for (int i = 0; i < size; i += 2)
+			pq.decreaseKey(i, decreased[i]);
+		long sum = 0;
+		while (!pq.isEmpty())
+			sum += pq.delMin();
+		return sum;
+	}
+}
@@ -0,0 +1,112 @@
+package jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.Journey;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import api.mbta.com.Timetable;
+
+/**
+ * Journey queries between random pairs of stops: the Pareto set over stops
+ * travelled and transfers with {@code SubwayGraph.journeys}, and the earliest
+ * arrival with {@code Timetable.earliestArrival}. The timetable runs a trip in
+ * each direction of every line every 6 minutes from 05:00 to 01:00, 90 seconds
+ * between stops with 30 seconds at each.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JourneyBenchmark {
+	private static final int RUN = 90; // seconds between stops
+	private static final int DWELL = 30; // seconds at a stop
+	private static final int HEADWAY = 6 * 60;
+
+	@Param({ "grid-20", "grid-40" })
+	public String network;
+
+	private SubwayGraph graph;
+	private Timetable timetable;
+	private Stop[] starts;
+	private Stop[] goals;
+	private int[] departures;
+
+	@Setup
+	public void setup() {
+		List<Route> routes = Networks.routes(network);
+		graph = new SubwayGraph(routes);
+		timetable = timetable(routes);
+		Random random = new Random(2);
+		starts = new Stop[1024];
+		goals = new Stop[starts.length];
+		departures = new int[starts.length];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = graph.vertexAt(random.nextInt(graph.getNumVertices()));
+			goals[i] = graph.vertexAt(random.nextInt(graph.getNumVertices()));
+			departures[i] = Timetable.parseTime("06:00:00") + random.nextInt(16 * 3600);
+		}
+	}
+
+	private static Timetable timetable(List<Route> routes) {
+		Timetable.Builder builder = new Timetable.Builder();
+		for (Route route : routes) {
+			List<Stop> stops = route.getStops();
+			List<Stop> reversed = new ArrayList<Stop>(stops);
+			Collections.reverse(reversed);
+			for (List<Stop> tripStops : Arrays.asList(stops, reversed)) {
+				for (int start = Timetable.parseTime("05:00:00"); start < Timetable.parseTime("25:00:00"); start += HEADWAY) {
+					int[] arrivals = new int[stops.size()], departures = new int[stops.size()];
+					for (int i = 0, time = start; i < stops.size(); i++, time += RUN + DWELL) {
+						arrivals[i] = time;
+						departures[i] = time + DWELL;
+					}
+					builder.addTrip(route, tripStops, arrivals, departures);
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The next query for each thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	public List<Journey> journeys(Cursor cursor) {
+		int i = cursor.next++ & (starts.length - 1);
+		return graph.journeys(starts[i], goals[i]);
+	}
+
+	@Benchmark
+	public int earliestArrival(Cursor cursor) {
+		int i = cursor.next++ & (starts.length - 1);
+		return timetable.earliestArrival(starts[i], goals[i], departures[i]);
+	}
+}
@@ -0,0 +1,62 @@
+package jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.LiveSubwayGraph;
+import api.mbta.com.Route;
+
+/**
+ * Refreshes of a <em>LiveSubwayGraph</em> where every other fetch renames one
+ * line, so that each refresh diffs the routes and publishes a new version
+ * sharing the rest of the network. A fetch generates fresh routes, as the api
+ * would return; {@code fetch} measures that alone.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LiveRefreshBenchmark {
+
+	@Param({ "grid-20", "grid-40" })
+	public String network;
+
+	private LiveSubwayGraph live;
+	private int fetches;
+
+	@Setup
+	public void setup() {
+		live = new LiveSubwayGraph(() -> {
+			List<Route> routes = fetch();
+			if (fetches++ % 2 == 1)
+				routes.get(0).setLong_name("Renamed Line");
+			return routes;
+		});
+	}
+
+	@Benchmark
+	public List<Route> fetch() {
+		return Networks.routes(network);
+	}
+
+	@Benchmark
+	public LiveSubwayGraph.Diff refresh() {
+		return live.refresh();
+	}
+}
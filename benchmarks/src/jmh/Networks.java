@@ -0,0 +1,35 @@
+package jmh;
+
+import java.util.List;
+
+import api.mbta.com.Route;
+import bench.SyntheticNetwork;
+
+/**
+ * The networks the benchmarks run on, named by a benchmark parameter:
+ * <em>fixture</em> is the Red Line, Mattapan Trolley and Green Line B excerpt
+ * of the MBTA subway the unit tests use, and <em>grid-N</em> is a synthetic
+ * grid of N by N lines with 3 stops between interchanges, about 7 N^2
+ * stops, e.g. 178,240 for grid-160. Both come from <em>SyntheticNetwork</em>.
+ *
+ * @author Ivan Chang
+ */
+final class Networks {
+
+	private Networks() {
+	}
+
+	/**
+	 * @param name is fixture or grid-N
+	 * @return new routes including stops, sharing no objects with earlier calls
+	 */
+	static List<Route> routes(String name) {
+		if (name.equals("fixture"))
+			return SyntheticNetwork.excerpt();
+		if (name.startsWith("grid-")) {
+			int side = Integer.parseInt(name.substring("grid-".length()));
+			return SyntheticNetwork.grid(side, side, 3);
+		}
+		throw new IllegalArgumentException("no network " + name);
+	}
+}
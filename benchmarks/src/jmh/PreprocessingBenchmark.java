@@ -0,0 +1,77 @@
+package jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.GraphSnapshot;
+import api.mbta.com.Route;
+import api.mbta.com.SubwayGraph;
+import graph.CompiledGraph;
+import graph.ContractionHierarchy;
+
+/**
+ * The work done before the first query: building and compiling a
+ * <em>SubwayGraph</em> from routes, reading it back from a snapshot instead,
+ * and contracting its compiled graph into a <em>ContractionHierarchy</em>.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreprocessingBenchmark {
+
+	@Param({ "grid-20", "grid-80" })
+	public String network;
+
+	private List<Route> routes;
+	private CompiledGraph compiled;
+	private File snapshot;
+
+	@Setup
+	public void setup() throws IOException {
+		routes = Networks.routes(network);
+		SubwayGraph graph = new SubwayGraph(routes);
+		compiled = graph.compile();
+		snapshot = File.createTempFile("subway", ".snapshot");
+		GraphSnapshot.write(graph, snapshot);
+	}
+
+	@TearDown
+	public void tearDown() {
+		snapshot.delete();
+	}
+
+	@Benchmark
+	public CompiledGraph build() {
+		return new SubwayGraph(routes).compile();
+	}
+
+	@Benchmark
+	public SubwayGraph readSnapshot() throws IOException {
+		return GraphSnapshot.read(snapshot);
+	}
+
+	@Benchmark
+	public ContractionHierarchy contractionHierarchy() {
+		return ContractionHierarchy.build(compiled);
+	}
+}
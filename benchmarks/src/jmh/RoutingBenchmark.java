@@ -0,0 +1,77 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.Path;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+
+/**
+ * Point-to-point shortest path queries between random pairs of stops, with
+ * every search strategy of <em>SubwayGraph</em>. The deprecated
+ * {@code Dijkstra(Stop, Stop)} runs the same search as the DIJKSTRA strategy
+ * and prints its result, so it is not measured separately. The graph and any
+ * contraction hierarchy are built before measuring.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+	@Param({ "fixture", "grid-20", "grid-80", "grid-160" })
+	public String network;
+
+	@Param({ "DIJKSTRA", "BIDIRECTIONAL", "ASTAR", "CONTRACTION_HIERARCHY" })
+	public SubwayGraph.Strategy strategy;
+
+	private SubwayGraph graph;
+	private Stop[] starts;
+	private Stop[] goals;
+
+	@Setup
+	public void setup() {
+		graph = new SubwayGraph(Networks.routes(network));
+		graph.setStrategy(strategy);
+		if (strategy == SubwayGraph.Strategy.CONTRACTION_HIERARCHY)
+			graph.prepareContractionHierarchy();
+		Random random = new Random(2);
+		starts = new Stop[1024];
+		goals = new Stop[starts.length];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = graph.vertexAt(random.nextInt(graph.getNumVertices()));
+			goals[i] = graph.vertexAt(random.nextInt(graph.getNumVertices()));
+		}
+	}
+
+	/**
+	 * The next pair of stops for each thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	public Path shortestPath(Cursor cursor) {
+		int i = cursor.next++ & (starts.length - 1);
+		return graph.shortestPath(starts[i], goals[i]);
+	}
+}
@@ -0,0 +1,79 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+
+/**
+ * Stop name lookups with {@code matchStopName}: whole names, prefixes, inner
+ * substrings and misspellings of the names of the stops, in turn. The stop
+ * name index is built before measuring.
+ *
+ * @author Ivan Chang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopNameBenchmark {
+
+	@Param({ "fixture", "grid-20", "grid-80" })
+	public String network;
+
+	private SubwayGraph graph;
+	private String[] queries;
+
+	@Setup
+	public void setup() {
+		graph = new SubwayGraph(Networks.routes(network));
+		Random random = new Random(3);
+		queries = new String[1024];
+		for (int q = 0; q < queries.length; q++) {
+			String name = graph.vertexAt(random.nextInt(graph.getNumVertices())).getName();
+			int cut = 1 + random.nextInt(name.length() - 1);
+			switch (q % 4) {
+			case 0:
+				queries[q] = name;
+				break;
+			case 1: // typeahead prefix
+				queries[q] = name.substring(0, cut);
+				break;
+			case 2: // from the middle of the name
+				queries[q] = name.substring(cut / 2, cut + 1);
+				break;
+			default: // a letter dropped
+				queries[q] = name.substring(0, cut - 1) + name.substring(cut);
+			}
+		}
+		graph.matchStopName(queries[0]);
+	}
+
+	/**
+	 * The next query for each thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	public Stop matchStopName(Cursor cursor) {
+		return graph.matchStopName(queries[cursor.next++ & (queries.length - 1)]);
+	}
+}
@@ -0,0 +1,296 @@
+package api.mbta.com;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * A <em>GraphSnapshot</em> saves a built Subway Graph to a compact binary file
+ * and maps it back with {@code FileChannel.map}, so a process gets a ready to
+ * query graph without calling the MBTA api. The file holds the stops, routes,
+ * route membership of every stop, and the index-based adjacency lists and edge
+ * lengths as flat int arrays that are copied out of the mapping in bulk.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * header   magic "MBTAGRPH", int version, int CRC32 of the payload,
+ *          long creation time in milliseconds, long payload length
+ * payload  int stops n, int adjacency entries m, int routes r
+ *          int[n + 1] adjacency start, int[m] neighbor, int[m] length, int[m] reverse length
+ *          double[n] latitude, double[n] longitude
+ *          int[r + 1] route start, route stops
+ *          int[n + 1] membership start, routes of every stop
+ *          int[2n + 2r + 1] string offsets, UTF-8 bytes of stop ids and names, route ids and long names
+ * </pre>
+ *
+ * @author Ivan Chang
+ */
+public final class GraphSnapshot {
+	public static final int VERSION = 1;
+	private static final long MAGIC = 0x4d42544147525048L; // "MBTAGRPH"
+	private static final int HEADER = 32;
+
+	private GraphSnapshot() {
+	}
+
+	/**
+	 * Returns the Subway Graph in a snapshot file if it is valid and fresh, otherwise
+	 * rebuilds the graph, e.g. from the MBTA api, and replaces the snapshot. A stale
+	 * snapshot is still used if the rebuild fails or the rebuilt graph is empty.
+	 * If the snapshot cannot be replaced the rebuilt graph is returned all the same.
+	 * @param file is the snapshot file
+	 * @param maxAgeMillis is how old a snapshot may be before it is considered stale
+	 * @param rebuild builds the graph when the snapshot cannot be used
+	 * @return the Subway Graph.
+	 */
+	public static SubwayGraph load(File file, long maxAgeMillis, Supplier<SubwayGraph> rebuild) {
+		if (file.isFile()) {
+			try {
+				SubwayGraph g = read(file, maxAgeMillis);
+				if (g != null)
+					return g;
+			} catch (IOException e) {
+				System.err.println("Ignoring snapshot " + file + ": " + e.getMessage());
+			}
+		}
+		SubwayGraph g;
+		try {
+			g = rebuild.get();
+		} catch (RuntimeException e) {
+			// The rebuild failed, e.g. the api is down. A stale snapshot is better.
+			try {
+				return read(file);
+			} catch (IOException stale) {
+				throw e;
+			}
+		}
+		if (g.getNumVertices() == 0 && file.isFile()) {
+			// The rebuild found nothing. A stale snapshot is better.
+			try {
+				return read(file);
+			} catch (IOException e) {
+				return g;
+			}
+		}
+		try {
+			write(g, file);
+		} catch (IOException e) {
+			// The graph is still good, only the next start will rebuild it again.
+			System.err.println("Cannot write snapshot " + file + ": " + e.getMessage());
+		}
+		return g;
+	}
+
+	/**
+	 * Reads a Subway Graph from a snapshot file.
+	 * @param file is the snapshot file
+	 * @return the Subway Graph.
+	 * @throws IOException if the file cannot be read, is of another version or is corrupt
+	 */
+	public static SubwayGraph read(File file) throws IOException {
+		return read(file, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return the Subway Graph, <em>null</em> if the snapshot is older than maxAgeMillis
+	 */
+	private static SubwayGraph read(File file, long maxAgeMillis) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER)
+				throw new IOException("snapshot is truncated");
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getLong() != MAGIC)
+				throw new IOException("not a snapshot");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("snapshot version " + version + " is not " + VERSION);
+			int crc = buffer.getInt();
+			long created = buffer.getLong();
+			long length = buffer.getLong();
+			if (length != size - HEADER)
+				throw new IOException("snapshot is truncated");
+			if (System.currentTimeMillis() - created > maxAgeMillis)
+				return null;
+			CRC32 checksum = new CRC32();
+			checksum.update(buffer.duplicate());
+			if ((int) checksum.getValue() != crc)
+				throw new IOException("snapshot checksum does not match");
+			return decode(buffer);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+				| NegativeArraySizeException e) {
+			throw new IOException("snapshot is corrupt", e);
+		}
+	}
+
+	private static SubwayGraph decode(ByteBuffer buffer) {
+		int n = buffer.getInt(), m = buffer.getInt(), r = buffer.getInt();
+		IntBuffer ints = buffer.asIntBuffer();
+		int[] adjStart = get(ints, n + 1), neighbor = get(ints, m), length = get(ints, m), reverse = get(ints, m);
+		buffer.position(buffer.position() + 4 * ints.position());
+		double[] latitude = new double[n], longitude = new double[n];
+		buffer.asDoubleBuffer().get(latitude);
+		buffer.position(buffer.position() + 8 * n);
+		buffer.asDoubleBuffer().get(longitude);
+		buffer.position(buffer.position() + 8 * n);
+		ints = buffer.asIntBuffer();
+		int[] routeStart = get(ints, r + 1), routeStops = get(ints, routeStart[r]);
+		int[] memberStart = get(ints, n + 1), memberRoutes = get(ints, memberStart[n]);
+		int[] stringStart = get(ints, 2 * n + 2 * r + 1);
+		buffer.position(buffer.position() + 4 * ints.position());
+		byte[] strings = new byte[stringStart[stringStart.length - 1]];
+		buffer.get(strings);
+
+		Stop[] stops = new Stop[n];
+		for (int v = 0; v < n; v++) {
+			stops[v] = new Stop(string(strings, stringStart, 2 * v), string(strings, stringStart, 2 * v + 1));
+			stops[v].setLatitude(latitude[v]);
+			stops[v].setLongitude(longitude[v]);
+		}
+		List<Route> routes = new ArrayList<Route>(r);
+		for (int i = 0; i < r; i++) {
+			Route route = new Route(string(strings, stringStart, 2 * n + 2 * i), string(strings, stringStart, 2 * n + 2 * i + 1));
+			List<Stop> sequence = new ArrayList<Stop>(routeStart[i + 1] - routeStart[i]);
+			for (int k = routeStart[i]; k < routeStart[i + 1]; k++)
+				sequence.add(stops[routeStops[k]]);
+			route.setStops(sequence);
+			routes.add(route);
+		}
+		for (int v = 0; v < n; v++)
+			for (int k = memberStart[v]; k < memberStart[v + 1]; k++)
+				stops[v].addConnectsTo(routes.get(memberRoutes[k]));
+
+		int[][] adj = new int[n][], len = new int[n][], rev = new int[n][];
+		for (int v = 0; v < n; v++) {
+			int from = adjStart[v], to = adjStart[v + 1];
+			adj[v] = Arrays.copyOfRange(neighbor, from, to);
+			len[v] = Arrays.copyOfRange(length, from, to);
+			rev[v] = Arrays.copyOfRange(reverse, from, to);
+			for (int w : adj[v])
+				if (w < 0 || w >= n)
+					throw new IllegalArgumentException("neighbor " + w + " is not a stop");
+		}
+		return new SubwayGraph(routes, stops, adj, len, rev);
+	}
+
+	private static int[] get(IntBuffer ints, int length) {
+		int[] a = new int[length];
+		ints.get(a);
+		return a;
+	}
+
+	private static String string(byte[] strings, int[] start, int i) {
+		return new String(strings, start[i], start[i + 1] - start[i], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a snapshot of a Subway Graph. The file is replaced atomically, so
+	 * concurrent readers see either the old or the new snapshot.
+	 * @param g is the Subway Graph
+	 * @param file is the snapshot file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(SubwayGraph g, File file) throws IOException {
+		int n = g.getNumVertices();
+		List<Route> routes = g.getRoutes();
+		int r = routes.size();
+		Map<Route, Integer> routeIndex = new HashMap<Route, Integer>();
+		for (int i = 0; i < r; i++)
+			routeIndex.put(routes.get(i), i);
+		int[][] adj = g.adjacencyIndex(), len = g.edgeLengthIndex(), rev = g.reverseEdgeLengthIndex();
+		RouteStats stats = g.getRouteStats();
+		int m = 0, routeStops = 0, members = 0;
+		for (int v = 0; v < n; v++) {
+			m += adj[v].length;
+			members += stats.getNumRoutes(g.vertexAt(v));
+		}
+		for (Route route : routes)
+			routeStops += route.getNumStops();
+		byte[][] strings = new byte[2 * n + 2 * r][];
+		int stringBytes = 0;
+		for (int v = 0; v < n; v++) {
+			strings[2 * v] = bytes(g.vertexAt(v).getId());
+			strings[2 * v + 1] = bytes(g.vertexAt(v).getName());
+		}
+		for (int i = 0; i < r; i++) {
+			strings[2 * n + 2 * i] = bytes(routes.get(i).getId());
+			strings[2 * n + 2 * i + 1] = bytes(routes.get(i).getLong_name());
+		}
+		for (byte[] s : strings)
+			stringBytes += s.length;
+
+		long length = 12 + 4L * (n + 1 + 3 * m) + 16L * n + 4L * (r + 1 + routeStops) + 4L * (n + 1 + members)
+				+ 4L * (strings.length + 1) + stringBytes;
+		if (HEADER + length > Integer.MAX_VALUE)
+			throw new IOException("graph is too large for a snapshot");
+		ByteBuffer buffer = ByteBuffer.allocate((int) (HEADER + length));
+		buffer.position(HEADER);
+		buffer.putInt(n).putInt(m).putInt(r);
+		int start = 0;
+		buffer.putInt(0);
+		for (int v = 0; v < n; v++)
+			buffer.putInt(start += adj[v].length);
+		for (int[][] rows : new int[][][] { adj, len, rev })
+			for (int v = 0; v < n; v++)
+				for (int x : rows[v])
+					buffer.putInt(x);
+		for (int v = 0; v < n; v++)
+			buffer.putDouble(g.vertexAt(v).getLatitude());
+		for (int v = 0; v < n; v++)
+			buffer.putDouble(g.vertexAt(v).getLongitude());
+		start = 0;
+		buffer.putInt(0);
+		for (Route route : routes)
+			buffer.putInt(start += route.getNumStops());
+		for (Route route : routes)
+			for (Stop stop : route.getStops())
+				buffer.putInt(g.indexOf(stop));
+		start = 0;
+		buffer.putInt(0);
+		for (int v = 0; v < n; v++)
+			buffer.putInt(start += stats.getNumRoutes(g.vertexAt(v)));
+		for (int v = 0; v < n; v++)
+			for (Route route : stats.getRoutesThrough(g.vertexAt(v)))
+				buffer.putInt(routeIndex.get(route));
+		start = 0;
+		buffer.putInt(0);
+		for (byte[] s : strings)
+			buffer.putInt(start += s.length);
+		for (byte[] s : strings)
+			buffer.put(s);
+
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.array(), HEADER, (int) length);
+		buffer.position(0);
+		buffer.putLong(MAGIC).putInt(VERSION).putInt((int) checksum.getValue()).putLong(System.currentTimeMillis())
+				.putLong(length);
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile("snapshot", ".tmp", dir);
+		try {
+			Files.write(tmp.toPath(), buffer.array());
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,547 @@
+package api.mbta.com;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A <em>GtfsLoader</em> builds the same subway <em>Route</em> and <em>Stop</em> objects as
+ * {@code Requests} from a local GTFS static feed, so a Subway Graph can be built offline,
+ * and the <em>Timetable</em> of their scheduled trips. The feed is either a zip file or a
+ * directory holding routes.txt, trips.txt, stops.txt, stop_times.txt and, for timetables,
+ * calendar.txt or calendar_dates.txt. Every file is parsed a line at a time, so memory
+ * stays proportional to the subway part of the feed rather than to the size of stop_times.txt.
+ *
+ * Like the MBTA api, stops are parent stations and the stops of a route are those of its
+ * most frequent direction 0 stop pattern, followed by the stops only other patterns (i.e.
+ * other branches) visit, in their order.
+ *
+ * @author Ivan Chang
+ */
+public class GtfsLoader {
+	private final File feed;
+
+	/**
+	 * @param feed is a GTFS zip file or a directory holding the unzipped feed
+	 */
+	public GtfsLoader(File feed) {
+		this.feed = feed;
+	}
+
+	/**
+	 * Returns the subway routes, i.e. of route type 0 or 1, including their stops.
+	 * @return a list of <em>Route</em> objects including stops
+	 * @throws IOException if the feed cannot be read or misses a file or column
+	 */
+	public List<Route> subwayRoutes() throws IOException {
+		ZipFile zip = feed.isDirectory() ? null : new ZipFile(feed);
+		try {
+			// routes.txt: subway routes in feed order
+			Map<String, Route> routes = new LinkedHashMap<String, Route>();
+			try (Csv csv = open(zip, "routes.txt")) {
+				int id = csv.column("route_id"), name = csv.column("route_long_name"), type = csv.column("route_type");
+				while (csv.next()) {
+					if (csv.equals(type, "0") || csv.equals(type, "1"))
+						routes.put(csv.get(id), new Route(csv.get(id), csv.get(name)));
+				}
+			}
+
+			// trips.txt: direction 0 trips of subway routes
+			Map<String, TripBuilder> trips = new HashMap<String, TripBuilder>();
+			Map<String, Patterns> patterns = new HashMap<String, Patterns>();
+			try (Csv csv = open(zip, "trips.txt")) {
+				int id = csv.column("trip_id"), route = csv.column("route_id"), direction = csv.optColumn("direction_id");
+				while (csv.next()) {
+					String routeId = csv.get(route);
+					if (routes.containsKey(routeId) && (direction < 0 || csv.equals(direction, "0") || csv.equals(direction, "")))
+						trips.put(csv.get(id), new TripBuilder(null, patterns.computeIfAbsent(routeId, k -> new Patterns())));
+				}
+			}
+
+			Stations stations = new Stations(zip);
+			readStopTimes(zip, trips, stations, false);
+			for (TripBuilder trip : trips.values())
+				trip.patterns.add(trip.stations());
+
+			// Build stops shared by all routes, like Requests does for the MBTA api.
+			Stop[] stops = new Stop[stations.ids.size()];
+			List<Route> result = new ArrayList<Route>();
+			for (Route route : routes.values()) {
+				Patterns p = patterns.get(route.getId());
+				if (p == null)
+					continue; // no scheduled trips
+				for (int station : p.stations()) {
+					if (stops[station] == null)
+						stops[station] = stations.stop(station);
+					stops[station].addConnectsTo(route);
+					route.addStop(stops[station]);
+				}
+				result.add(route);
+			}
+			return result;
+		} finally {
+			if (zip != null)
+				zip.close();
+		}
+	}
+
+	/**
+	 * Returns the timetable of the subway routes on a service day, with the trips of
+	 * every route in both directions. Routes and stops are matched by id, so the routes
+	 * may come from {@code subwayRoutes()} or from the MBTA api.
+	 * @param routes is a list of <em>Route</em> objects including stops
+	 * @param date is the service day
+	 * @return a <em>Timetable</em> of the trips running on that day
+	 * @throws IOException if the feed cannot be read or misses a file or column
+	 */
+	public Timetable subwayTimetable(List<Route> routes, LocalDate date) throws IOException {
+		ZipFile zip = feed.isDirectory() ? null : new ZipFile(feed);
+		try {
+			Map<String, Route> byId = new HashMap<String, Route>();
+			for (Route route : routes)
+				byId.put(route.getId(), route);
+			Set<String> services = services(zip, date);
+
+			// trips.txt: trips of the routes running on that day, in feed order
+			Map<String, TripBuilder> trips = new LinkedHashMap<String, TripBuilder>();
+			try (Csv csv = open(zip, "trips.txt")) {
+				int id = csv.column("trip_id"), route = csv.column("route_id"), service = csv.column("service_id");
+				while (csv.next()) {
+					Route r = byId.get(csv.get(route));
+					if (r != null && services.contains(csv.get(service)))
+						trips.put(csv.get(id), new TripBuilder(r, null));
+				}
+			}
+
+			Stations stations = new Stations(zip);
+			Stop[] stops = new Stop[stations.ids.size()];
+			for (Route route : routes) {
+				for (Stop stop : route.getStops()) {
+					Integer station = stations.of.get(stop.getId());
+					if (station != null)
+						stops[station] = stop;
+				}
+			}
+			readStopTimes(zip, trips, stations, true);
+
+			Timetable.Builder builder = new Timetable.Builder();
+			for (TripBuilder trip : trips.values())
+				trip.addTo(builder, stops);
+			return builder.build();
+		} finally {
+			if (zip != null)
+				zip.close();
+		}
+	}
+
+	/**
+	 * Reads calendar.txt and calendar_dates.txt, at least one of which a feed has.
+	 * @return the ids of the services running on <em>date</em>
+	 */
+	private Set<String> services(ZipFile zip, LocalDate date) throws IOException {
+		Set<String> services = new HashSet<String>();
+		String day = date.format(DateTimeFormatter.BASIC_ISO_DATE);
+		boolean found = false;
+		if (exists(zip, "calendar.txt")) {
+			found = true;
+			try (Csv csv = open(zip, "calendar.txt")) {
+				int id = csv.column("service_id"), start = csv.column("start_date"), end = csv.column("end_date");
+				int weekday = csv.column(date.getDayOfWeek().name().toLowerCase(Locale.ROOT));
+				while (csv.next()) {
+					if (csv.equals(weekday, "1") && csv.get(start).compareTo(day) <= 0 && day.compareTo(csv.get(end)) <= 0)
+						services.add(csv.get(id));
+				}
+			}
+		}
+		if (exists(zip, "calendar_dates.txt")) {
+			found = true;
+			try (Csv csv = open(zip, "calendar_dates.txt")) {
+				int id = csv.column("service_id"), when = csv.column("date"), type = csv.column("exception_type");
+				while (csv.next()) {
+					if (!csv.equals(when, day))
+						continue;
+					if (csv.equals(type, "1"))
+						services.add(csv.get(id));
+					else if (csv.equals(type, "2"))
+						services.remove(csv.get(id));
+				}
+			}
+		}
+		if (!found)
+			throw new FileNotFoundException("calendar.txt and calendar_dates.txt are missing from " + feed);
+		return services;
+	}
+
+	/**
+	 * Reads stop_times.txt into the builders of the trips kept. Lines of one trip are
+	 * usually consecutive, so the trip is only looked up when trip_id changes.
+	 */
+	private void readStopTimes(ZipFile zip, Map<String, TripBuilder> trips, Stations stations, boolean times)
+			throws IOException {
+		try (Csv csv = open(zip, "stop_times.txt")) {
+			int trip = csv.column("trip_id"), stop = csv.column("stop_id"), sequence = csv.column("stop_sequence");
+			int arrival = times ? csv.column("arrival_time") : -1, departure = times ? csv.column("departure_time") : -1;
+			String tripId = null;
+			TripBuilder current = null;
+			while (csv.next()) {
+				if (tripId == null || !csv.equals(trip, tripId)) {
+					tripId = csv.get(trip);
+					current = trips.get(tripId);
+				}
+				if (current == null)
+					continue;
+				Integer station = stations.of.get(csv.get(stop));
+				if (station == null)
+					throw new IOException("stop_times.txt refers to unknown stop " + csv.get(stop));
+				if (times)
+					current.add(csv.getInt(sequence), station, csv.getTime(arrival), csv.getTime(departure));
+				else
+					current.add(csv.getInt(sequence), station, -1, -1);
+			}
+		}
+	}
+
+	/**
+	 * The rows of stops.txt, with every platform resolved to its parent station.
+	 */
+	private final class Stations {
+		private final Map<String, String[]> rows = new HashMap<String, String[]>(); // parent, name, lat, lon
+		private final List<String> ids = new ArrayList<String>(); // station ids by index
+		private final Map<String, Integer> of = new HashMap<String, Integer>(); // station index of every stop id
+
+		Stations(ZipFile zip) throws IOException {
+			try (Csv csv = open(zip, "stops.txt")) {
+				int id = csv.column("stop_id"), name = csv.column("stop_name"), parent = csv.optColumn("parent_station");
+				int lat = csv.optColumn("stop_lat"), lon = csv.optColumn("stop_lon");
+				while (csv.next()) {
+					rows.put(csv.get(id), new String[] { parent < 0 ? "" : csv.get(parent), csv.get(name),
+							lat < 0 ? "" : csv.get(lat), lon < 0 ? "" : csv.get(lon) });
+				}
+			}
+			for (String stopId : rows.keySet())
+				station(stopId);
+		}
+
+		private int station(String stopId) {
+			Integer station = of.get(stopId);
+			if (station != null)
+				return station;
+			String parent = rows.get(stopId)[0];
+			if (parent.isEmpty() || !rows.containsKey(parent) || parent.equals(stopId)) {
+				station = ids.size();
+				ids.add(stopId);
+			} else {
+				station = station(parent);
+			}
+			of.put(stopId, station);
+			return station;
+		}
+
+		Stop stop(int station) {
+			String id = ids.get(station);
+			String[] row = rows.get(id);
+			Stop stop = new Stop(id, row[1]);
+			stop.setLatitude(row[2].isEmpty() ? Double.NaN : Double.parseDouble(row[2]));
+			stop.setLongitude(row[3].isEmpty() ? Double.NaN : Double.parseDouble(row[3]));
+			return stop;
+		}
+	}
+
+	private boolean exists(ZipFile zip, String name) {
+		return zip == null ? new File(feed, name).isFile() : zip.getEntry(name) != null;
+	}
+
+	private Csv open(ZipFile zip, String name) throws IOException {
+		InputStream in;
+		if (zip == null) {
+			File file = new File(feed, name);
+			if (!file.isFile())
+				throw new FileNotFoundException(name + " is missing from " + feed);
+			in = new FileInputStream(file);
+		} else {
+			ZipEntry entry = zip.getEntry(name);
+			if (entry == null)
+				throw new FileNotFoundException(name + " is missing from " + feed);
+			in = zip.getInputStream(entry);
+		}
+		return new Csv(name, in);
+	}
+
+	/**
+	 * The stations of one trip and the times at each, kept in stop_sequence order.
+	 */
+	private static final class TripBuilder {
+		private final Route route; // for a timetable
+		private final Patterns patterns; // of the route, for its stop list
+		private int[] sequence = new int[0];
+		private int[] station = new int[0];
+		private int[] arrival = new int[0];
+		private int[] departure = new int[0];
+		private int size;
+
+		TripBuilder(Route route, Patterns patterns) {
+			this.route = route;
+			this.patterns = patterns;
+		}
+
+		void add(int seq, int s, int arr, int dep) {
+			if (size == sequence.length) {
+				int capacity = Math.max(16, 2 * size);
+				sequence = Arrays.copyOf(sequence, capacity);
+				station = Arrays.copyOf(station, capacity);
+				arrival = Arrays.copyOf(arrival, capacity);
+				departure = Arrays.copyOf(departure, capacity);
+			}
+			int i = size++;
+			for (; i > 0 && seq < sequence[i - 1]; i--) { // insertion sort, lines are nearly always in order
+				sequence[i] = sequence[i - 1];
+				station[i] = station[i - 1];
+				arrival[i] = arrival[i - 1];
+				departure[i] = departure[i - 1];
+			}
+			sequence[i] = seq;
+			station[i] = s;
+			arrival[i] = arr;
+			departure[i] = dep;
+		}
+
+		int[] stations() {
+			// consecutive platforms of one station count once
+			int[] stations = new int[size];
+			int n = 0;
+			for (int i = 0; i < size; i++)
+				if (n == 0 || stations[n - 1] != station[i])
+					stations[n++] = station[i];
+			return Arrays.copyOf(stations, n);
+		}
+
+		/**
+		 * Adds this trip to a timetable, skipping stops without a time or not on any route.
+		 */
+		void addTo(Timetable.Builder builder, Stop[] stops) {
+			List<Stop> tripStops = new ArrayList<Stop>(size);
+			int[] arrivals = new int[size], departures = new int[size];
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				Stop stop = stops[station[i]];
+				if (stop == null || arrival[i] < 0 || departure[i] < 0)
+					continue;
+				if (n > 0 && tripStops.get(n - 1) == stop) {
+					departures[n - 1] = departure[i]; // another platform of the same station
+					continue;
+				}
+				tripStops.add(stop);
+				arrivals[n] = arrival[i];
+				departures[n++] = departure[i];
+			}
+			if (n > 1)
+				builder.addTrip(route, tripStops, Arrays.copyOf(arrivals, n), Arrays.copyOf(departures, n));
+		}
+	}
+
+	/**
+	 * The distinct station sequences of one route and the number of trips following each.
+	 */
+	private static final class Patterns {
+		private final Map<List<Integer>, int[]> count = new HashMap<List<Integer>, int[]>();
+
+		void add(int[] stations) {
+			if (stations.length > 0)
+				count.computeIfAbsent(key(stations), k -> new int[1])[0]++;
+		}
+
+		private static List<Integer> key(int[] stations) {
+			List<Integer> key = new ArrayList<Integer>(stations.length);
+			for (int s : stations)
+				key.add(s);
+			return key;
+		}
+
+		/**
+		 * @return the stations of the most frequent pattern, then those only other patterns visit
+		 */
+		List<Integer> stations() {
+			List<Map.Entry<List<Integer>, int[]>> byFrequency = new ArrayList<Map.Entry<List<Integer>, int[]>>(
+					count.entrySet());
+			byFrequency.sort((a, b) -> a.getValue()[0] != b.getValue()[0] ? b.getValue()[0] - a.getValue()[0]
+					: b.getKey().size() != a.getKey().size() ? b.getKey().size() - a.getKey().size()
+							: a.getKey().toString().compareTo(b.getKey().toString()));
+			LinkedHashMap<Integer, Boolean> stations = new LinkedHashMap<Integer, Boolean>();
+			for (Map.Entry<List<Integer>, int[]> pattern : byFrequency)
+				for (int s : pattern.getKey())
+					stations.putIfAbsent(s, Boolean.TRUE);
+			return new ArrayList<Integer>(stations.keySet());
+		}
+	}
+
+	/**
+	 * A minimal streaming reader of RFC 4180 CSV files with a header line. Fields are
+	 * located in the current line and only turned into strings on request.
+	 */
+	private static final class Csv implements AutoCloseable {
+		private final String name;
+		private final BufferedReader reader;
+		private final Map<String, Integer> header = new HashMap<String, Integer>();
+		private String line;
+		private int[] start = new int[16], end = new int[16]; // field bounds in line
+		private boolean[] quoted = new boolean[16];
+		private int fields;
+
+		Csv(String name, InputStream in) throws IOException {
+			this.name = name;
+			this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+			if (!next())
+				throw new IOException(name + " is empty");
+			if (line.charAt(0) == '\uFEFF') { // byte order mark
+				line = line.substring(1);
+				split();
+			}
+			for (int i = 0; i < fields; i++)
+				header.put(get(i).trim(), i);
+		}
+
+		int column(String column) throws IOException {
+			Integer i = header.get(column);
+			if (i == null)
+				throw new IOException(name + " has no " + column + " column");
+			return i;
+		}
+
+		int optColumn(String column) {
+			Integer i = header.get(column);
+			return i == null ? -1 : i;
+		}
+
+		boolean next() throws IOException {
+			do {
+				line = reader.readLine();
+				if (line == null)
+					return false;
+			} while (line.isEmpty());
+			while (!split()) { // a quoted field spans lines
+				String more = reader.readLine();
+				if (more == null)
+					throw new IOException(name + " ends inside a quoted field");
+				line = line + "\n" + more;
+			}
+			return true;
+		}
+
+		/**
+		 * Locates the fields of the current line.
+		 * @return false if the line ends inside a quoted field
+		 */
+		private boolean split() {
+			fields = 0;
+			int i = 0, n = line.length();
+			while (true) {
+				if (fields == start.length) {
+					start = Arrays.copyOf(start, 2 * fields);
+					end = Arrays.copyOf(end, 2 * fields);
+					quoted = Arrays.copyOf(quoted, 2 * fields);
+				}
+				if (i < n && line.charAt(i) == '"') {
+					int j = i + 1;
+					while (true) {
+						j = line.indexOf('"', j);
+						if (j < 0)
+							return false;
+						if (j + 1 < n && line.charAt(j + 1) == '"')
+							j += 2;
+						else
+							break;
+					}
+					start[fields] = i + 1;
+					end[fields] = j;
+					quoted[fields++] = true;
+					i = j + 1;
+				} else {
+					int j = line.indexOf(',', i);
+					start[fields] = i;
+					end[fields] = j < 0 ? n : j;
+					quoted[fields++] = false;
+					i = end[fields - 1];
+				}
+				if (i >= n)
+					return true;
+				i++; // skip the comma
+			}
+		}
+
+		String get(int i) {
+			if (i >= fields)
+				return "";
+			String s = line.substring(start[i], end[i]);
+			return quoted[i] ? s.replace("\"\"", "\"") : s;
+		}
+
+		boolean equals(int i, String s) {
+			if (i >= fields)
+				return s.isEmpty();
+			if (quoted[i])
+				return get(i).equals(s);
+			return end[i] - start[i] == s.length() && line.regionMatches(start[i], s, 0, s.length());
+		}
+
+		int getInt(int i) throws IOException {
+			if (i >= fields || start[i] == end[i])
+				throw new IOException(name + " has an empty number in line " + line);
+			int value = 0;
+			int from = start[i], to = end[i];
+			for (int j = from; j < to; j++) {
+				char c = line.charAt(j);
+				if (c < '0' || c > '9')
+					throw new IOException(name + " has an invalid number in line " + line);
+				value = value * 10 + (c - '0');
+			}
+			return value;
+		}
+
+		/**
+		 * @return the seconds after midnight of a H:MM:SS time, -1 if the field is empty
+		 */
+		int getTime(int i) throws IOException {
+			if (i >= fields || start[i] == end[i])
+				return -1;
+			int seconds = 0, value = 0, colons = 0;
+			for (int j = start[i]; j < end[i]; j++) {
+				char c = line.charAt(j);
+				if (c == ':') {
+					seconds = (seconds + value) * 60;
+					value = 0;
+					colons++;
+				} else if (c >= '0' && c <= '9') {
+					value = value * 10 + (c - '0');
+				} else if (c != ' ') {
+					throw new IOException(name + " has an invalid time in line " + line);
+				}
+			}
+			if (colons != 2)
+				throw new IOException(name + " has an invalid time in line " + line);
+			return seconds + value;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package api.mbta.com;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable <em>Itinerary</em>, i.e. the result of an earliest arrival query on a
+ * <em>Timetable</em>: the scheduled rides from a beginning to a destination subway stop.
+ *
+ * @author Ivan Chang
+ */
+public final class Itinerary {
+	private final Stop start;
+	private final int departure;
+	private final List<Leg> legs;
+
+	Itinerary(Stop start, int departure, List<Leg> legs) {
+		this.start = start;
+		this.departure = departure;
+		this.legs = Collections.unmodifiableList(legs);
+	}
+
+	/**
+	 * @return the beginning subway stop
+	 */
+	public Stop getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the destination subway stop
+	 */
+	public Stop getGoal() {
+		return legs.isEmpty() ? start : legs.get(legs.size() - 1).getTo();
+	}
+
+	/**
+	 * @return the earliest departure asked for, in seconds after midnight
+	 */
+	public int getDeparture() {
+		return departure;
+	}
+
+	/**
+	 * @return the arrival at the destination, in seconds after midnight
+	 */
+	public int getArrival() {
+		return legs.isEmpty() ? departure : legs.get(legs.size() - 1).getArrival();
+	}
+
+	/**
+	 * @return the rides of this itinerary, in order. The list cannot be modified.
+	 */
+	public List<Leg> getLegs() {
+		return legs;
+	}
+
+	/**
+	 * @return the number of transfers between rides
+	 */
+	public int getTransfers() {
+		return Math.max(0, legs.size() - 1);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Leg leg : legs) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(leg);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * One ride on a single trip, from boarding to alighting.
+	 */
+	public static final class Leg {
+		private final Route route;
+		private final Stop from;
+		private final int departure;
+		private final Stop to;
+		private final int arrival;
+
+		Leg(Route route, Stop from, int departure, Stop to, int arrival) {
+			this.route = route;
+			this.from = from;
+			this.departure = departure;
+			this.to = to;
+			this.arrival = arrival;
+		}
+
+		/**
+		 * @return the route ridden
+		 */
+		public Route getRoute() {
+			return route;
+		}
+
+		/**
+		 * @return the subway stop where this ride boards
+		 */
+		public Stop getFrom() {
+			return from;
+		}
+
+		/**
+		 * @return the departure from the boarding stop, in seconds after midnight
+		 */
+		public int getDeparture() {
+			return departure;
+		}
+
+		/**
+		 * @return the subway stop where this ride alights
+		 */
+		public Stop getTo() {
+			return to;
+		}
+
+		/**
+		 * @return the arrival at the alighting stop, in seconds after midnight
+		 */
+		public int getArrival() {
+			return arrival;
+		}
+
+		@Override
+		public String toString() {
+			return Timetable.formatTime(departure) + " " + from.getName() + " [" + route.getLong_name() + "] -> "
+					+ Timetable.formatTime(arrival) + " " + to.getName();
+		}
+	}
+}
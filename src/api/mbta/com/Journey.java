@@ -0,0 +1,111 @@
+package api.mbta.com;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable <em>Journey</em> through the subway network: a sequence of rides,
+ * each on a single route, with a transfer between consecutive rides.
+ *
+ * @author Ivan Chang
+ */
+public final class Journey {
+	private final SubwayGraph graph;
+	private final int[] stops; // vertex indices along the journey, start first
+	private final Route[] legs; // route ridden on each leg
+	private final int[] legStart; // position in stops where each leg boards
+
+	Journey(SubwayGraph graph, int[] stops, Route[] legs, int[] legStart) {
+		this.graph = graph;
+		this.stops = stops;
+		this.legs = legs;
+		this.legStart = legStart;
+	}
+
+	/**
+	 * @return the beginning subway stop
+	 */
+	public Stop getStart() {
+		return graph.vertexAt(stops[0]);
+	}
+
+	/**
+	 * @return the destination subway stop
+	 */
+	public Stop getGoal() {
+		return graph.vertexAt(stops[stops.length - 1]);
+	}
+
+	/**
+	 * @return the number of stops travelled, i.e. the number of edges along this journey
+	 */
+	public int getStopsTravelled() {
+		return stops.length - 1;
+	}
+
+	/**
+	 * @return the number of transfers between routes
+	 */
+	public int getTransfers() {
+		return Math.max(0, legs.length - 1);
+	}
+
+	/**
+	 * @return the routes ridden, in order. The list cannot be modified.
+	 */
+	public List<Route> getRoutes() {
+		return Collections.unmodifiableList(Arrays.asList(legs));
+	}
+
+	/**
+	 * @return the subway stops along this journey, beginning stop first. The list cannot be modified.
+	 */
+	public List<Stop> getStops() {
+		return new AbstractList<Stop>() {
+			@Override
+			public Stop get(int i) {
+				return graph.vertexAt(stops[i]);
+			}
+
+			@Override
+			public int size() {
+				return stops.length;
+			}
+		};
+	}
+
+	/**
+	 * Returns the subway stops where each ride boards, i.e. the beginning stop followed by
+	 * every transfer stop.
+	 * @return a list of subway stops with one entry per route ridden.
+	 */
+	public List<Stop> getBoardingStops() {
+		return new AbstractList<Stop>() {
+			@Override
+			public Stop get(int i) {
+				return graph.vertexAt(stops[legStart[i]]);
+			}
+
+			@Override
+			public int size() {
+				return legStart.length;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		int leg = 0;
+		for (int i = 0; i < stops.length; i++) {
+			if (i > 0)
+				sb.append(" -> ");
+			sb.append(graph.vertexAt(stops[i]).getName());
+			if (leg < legStart.length && legStart[leg] == i)
+				sb.append(" [").append(legs[leg++].getLong_name()).append("]");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,395 @@
+package api.mbta.com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import client.ResponseCache;
+
+/**
+ * A <em>LiveSubwayGraph</em> keeps the current version of a Subway Graph and
+ * refreshes it from a source of routes, e.g. the MBTA api. A refresh diffs the
+ * fresh routes and stops against the current version and, if anything changed,
+ * builds a new version that shares the unchanged parts, prepares it like the
+ * current one, and publishes it with a single atomic swap.
+ *
+ * Versions are frozen before they are published, see {@code G.freeze()}, so
+ * they are never modified afterwards. A query should take {@code current()}
+ * once and run entirely on it: queries in flight finish on the version they
+ * started with while new queries use the new one, and no query ever waits for
+ * a refresh.
+ *
+ * A new version shares every route whose name and stops did not change, and
+ * every stop whose name and location did not change, with the previous one.
+ * Stops keep their vertex index, so only the connections of the stops on
+ * added, removed or changed routes are worked out again; the rest are copied
+ * over. If no connection changed at all, the compiled graph, the all-pairs
+ * table and the contraction hierarchy are shared too, otherwise they are built
+ * again for the new version. Since stops are shared, {@code Stop.getConnectsTo()}
+ * may hold the routes of the version a stop was first loaded in; the routes of
+ * a version through a stop are {@code getRouteStats().getRoutesThrough(stop)}.
+ *
+ * @author Ivan Chang
+ */
+public final class LiveSubwayGraph {
+	private final Supplier<List<Route>> source;
+	private final AtomicReference<SubwayGraph> current;
+	private volatile long version;
+
+	/**
+	 * @param initial is the first version, frozen here if it is not already
+	 * @param source fetches fresh routes including stops, new objects on every call
+	 */
+	public LiveSubwayGraph(SubwayGraph initial, Supplier<List<Route>> source) {
+		Objects.requireNonNull(initial).freeze();
+		this.current = new AtomicReference<SubwayGraph>(initial);
+		this.source = Objects.requireNonNull(source);
+	}
+
+	/**
+	 * Loads the first version from a source of routes.
+	 * @param source fetches fresh routes including stops, new objects on every call
+	 */
+	public LiveSubwayGraph(Supplier<List<Route>> source) {
+		this(new SubwayGraph(source.get()), source);
+	}
+
+	/**
+	 * Returns a source of routes fetching from the MBTA api, revalidating cached
+	 * responses so that unchanged routes cost a 304 each.
+	 * @param url is the root url of the MBTA api
+	 * @param cache is the response cache, may be <em>null</em>
+	 * @return the source.
+	 */
+	public static Supplier<List<Route>> fromApi(String url, ResponseCache cache) {
+		return () -> {
+			// Fresh Requests, so that no stop objects are shared with an earlier fetch
+			Requests requests = new Requests(url);
+			requests.setCache(cache);
+			return requests.mbtaStops(requests.subwayRoutes());
+		};
+	}
+
+	/**
+	 * @return the current version of the Subway Graph
+	 */
+	public SubwayGraph current() {
+		return current.get();
+	}
+
+	/**
+	 * @return the number of versions published after the first
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Fetches the routes and publishes a new version if they changed. Refreshes
+	 * run one at a time; queries go on meanwhile.
+	 * @return what changed, empty if no new version was published.
+	 * @throws RuntimeException if the source fails, the current version is kept
+	 */
+	public synchronized Diff refresh() {
+		SubwayGraph old = current.get();
+		List<Route> fresh = source.get();
+		Map<String, Route> oldById = byId(old.getRoutes()), newById = byId(fresh);
+
+		List<String> added = new ArrayList<String>(), removed = new ArrayList<String>(), changed = new ArrayList<String>();
+		for (String id : newById.keySet()) {
+			Route before = oldById.get(id);
+			if (before == null)
+				added.add(id);
+			else if (!same(before, newById.get(id)))
+				changed.add(id);
+		}
+		for (String id : oldById.keySet())
+			if (!newById.containsKey(id))
+				removed.add(id);
+		if (added.isEmpty() && removed.isEmpty() && changed.isEmpty())
+			return new Diff(added, removed, changed, fresh.size());
+
+		// The stops on added, removed or changed routes, whose connections may have changed
+		Set<String> touched = new HashSet<String>();
+		for (String id : removed)
+			addStopIds(touched, oldById.get(id));
+		for (String id : changed) {
+			addStopIds(touched, oldById.get(id));
+			addStopIds(touched, newById.get(id));
+		}
+		for (String id : added)
+			addStopIds(touched, newById.get(id));
+
+		// Share the unchanged routes, and every stop whose attributes did not change
+		Map<String, Stop> oldStops = new HashMap<String, Stop>();
+		for (int v = 0; v < old.getNumVertices(); v++)
+			oldStops.put(old.vertexAt(v).getId(), old.vertexAt(v));
+		Map<String, Stop> stops = new HashMap<String, Stop>();
+		List<Route> routes = new ArrayList<Route>(fresh.size());
+		Set<Route> rebuilt = Collections.newSetFromMap(new IdentityHashMap<Route, Boolean>());
+		int shared = 0;
+		for (Route route : fresh) {
+			Route before = oldById.get(route.getId());
+			if (before != null && !changed.contains(route.getId())) {
+				for (Stop stop : before.getStops())
+					stops.put(stop.getId(), stop);
+				routes.add(before);
+				shared++;
+			} else {
+				routes.add(route);
+				rebuilt.add(route);
+			}
+		}
+		Set<Stop> created = Collections.newSetFromMap(new IdentityHashMap<Stop, Boolean>());
+		for (Route route : rebuilt) {
+			List<Stop> list = new ArrayList<Stop>(route.getNumStops());
+			for (Stop stop : route.getStops()) {
+				Stop s = stops.get(stop.getId());
+				if (s == null) {
+					Stop before = oldStops.get(stop.getId());
+					s = before != null && same(before, stop) ? before : stop;
+					if (s == stop)
+						created.add(stop);
+					stops.put(stop.getId(), s);
+				}
+				list.add(s);
+			}
+			route.setStops(list);
+		}
+		// Stops new to this version connect to the routes of this version
+		for (Stop stop : created)
+			stop.setConnectsTo(new ArrayList<Route>());
+		for (Route route : routes)
+			for (Stop stop : route.getStops())
+				if (created.contains(stop) && !stop.getConnectsTo().contains(route))
+					stop.addConnectsTo(route);
+
+		SubwayGraph next = patch(old, routes, stops, touched, rebuilt);
+
+		// Build everything queries need before publishing, so none waits on it
+		next.freeze();
+		next.setStrategy(old.getStrategy());
+		next.getRouteStats();
+		if (old.hasAllPairs() && !next.hasAllPairs())
+			next.precomputeAllPairs();
+		if (old.getStrategy() == SubwayGraph.Strategy.CONTRACTION_HIERARCHY && !next.hasContractionHierarchy())
+			next.prepareContractionHierarchy();
+		current.set(next);
+		version++;
+		return new Diff(added, removed, changed, shared);
+	}
+
+	/**
+	 * Builds the next version from the index arrays of the previous one. Stops
+	 * keep their vertex index, less those of stops that are gone, and new stops
+	 * come after them. Only the connections of touched stops are worked out
+	 * again, from the routes through them; the others are copied.
+	 */
+	private static SubwayGraph patch(SubwayGraph old, List<Route> routes, Map<String, Stop> stops, Set<String> touched,
+			Set<Route> rebuilt) {
+		int oldN = old.getNumVertices();
+		int[][] oldAdj = old.adjacencyIndex(), oldLen = old.edgeLengthIndex(), oldRev = old.reverseEdgeLengthIndex();
+		int[] remap = new int[oldN]; // new index of every old vertex, -1 if gone
+		List<Stop> vertices = new ArrayList<Stop>(stops.size());
+		Map<String, Integer> index = new HashMap<String, Integer>(2 * stops.size());
+		for (int v = 0; v < oldN; v++) {
+			Stop stop = stops.get(old.vertexAt(v).getId());
+			remap[v] = stop == null ? -1 : vertices.size();
+			if (stop != null) {
+				index.put(stop.getId(), vertices.size());
+				vertices.add(stop);
+			}
+		}
+		boolean sameStops = vertices.size() == oldN;
+		for (Route route : rebuilt) {
+			for (Stop stop : route.getStops()) {
+				if (!index.containsKey(stop.getId())) {
+					index.put(stop.getId(), vertices.size());
+					vertices.add(stop);
+					sameStops = false;
+				}
+			}
+		}
+		int n = vertices.size();
+		int[] back = new int[n]; // old index of every new vertex, -1 if new
+		Arrays.fill(back, -1);
+		for (int v = 0; v < oldN; v++) {
+			if (remap[v] < 0)
+				continue;
+			back[remap[v]] = v;
+			for (int w : oldAdj[v])
+				if (remap[w] < 0) // connected to a stop that is gone
+					touched.add(old.vertexAt(v).getId());
+		}
+
+		// The connections of touched stops: along the routes through them, i.e. the
+		// rebuilt routes and the shared routes through them in the previous version,
+		// and whatever connected them to untouched stops before
+		Map<Integer, Set<Integer>> neighbors = new HashMap<Integer, Set<Integer>>();
+		for (String id : touched)
+			if (index.containsKey(id))
+				neighbors.put(index.get(id), new LinkedHashSet<Integer>());
+		Set<Route> through = Collections.newSetFromMap(new IdentityHashMap<Route, Boolean>());
+		through.addAll(rebuilt);
+		RouteStats stats = old.getRouteStats();
+		for (int v : neighbors.keySet()) {
+			int u = back[v];
+			if (u < 0)
+				continue;
+			for (Route route : stats.getRoutesThrough(old.vertexAt(u)))
+				if (!rebuilt.contains(route))
+					through.add(route);
+			for (int w : oldAdj[u])
+				if (remap[w] >= 0 && !neighbors.containsKey(remap[w]))
+					neighbors.get(v).add(remap[w]);
+		}
+		for (Route route : routes) {
+			if (!through.contains(route))
+				continue;
+			List<Stop> list = route.getStops();
+			for (int i = 0; i + 1 < list.size(); i++) {
+				int v = index.get(list.get(i).getId()), w = index.get(list.get(i + 1).getId());
+				if (neighbors.containsKey(v))
+					neighbors.get(v).add(w);
+				if (neighbors.containsKey(w))
+					neighbors.get(w).add(v);
+			}
+		}
+
+		int[][] adj = new int[n][], len = new int[n][], rev = new int[n][];
+		boolean sameEdges = sameStops;
+		for (int v = 0; v < n; v++) {
+			int u = back[v];
+			Set<Integer> set = neighbors.get(v);
+			if (set == null) { // untouched, so all its neighbors are still there
+				adj[v] = new int[oldAdj[u].length];
+				for (int k = 0; k < adj[v].length; k++)
+					adj[v][k] = remap[oldAdj[u][k]];
+				len[v] = oldLen[u];
+				rev[v] = oldRev[u];
+				continue;
+			}
+			if (sameEdges && !sameRow(oldAdj[u], set))
+				sameEdges = false;
+			adj[v] = new int[set.size()];
+			len[v] = new int[set.size()];
+			rev[v] = new int[set.size()];
+			int k = 0;
+			for (int w : set) {
+				adj[v][k] = w;
+				len[v][k] = rev[v][k] = 1; // as in SubwayGraph(List), unless connected before
+				for (int j = 0; u >= 0 && back[w] >= 0 && j < oldAdj[u].length; j++) {
+					if (oldAdj[u][j] == back[w]) {
+						len[v][k] = oldLen[u][j];
+						rev[v][k] = oldRev[u][j];
+					}
+				}
+				k++;
+			}
+		}
+		Stop[] array = vertices.toArray(new Stop[n]);
+		if (sameEdges)
+			return new SubwayGraph(routes, array, old);
+		return new SubwayGraph(routes, array, adj, len, rev);
+	}
+
+	private static boolean sameRow(int[] row, Set<Integer> set) {
+		if (row.length != set.size())
+			return false;
+		for (int w : row)
+			if (!set.contains(w))
+				return false;
+		return true;
+	}
+
+	private static void addStopIds(Set<String> ids, Route route) {
+		for (Stop stop : route.getStops())
+			ids.add(stop.getId());
+	}
+
+	private static Map<String, Route> byId(List<Route> routes) {
+		Map<String, Route> byId = new LinkedHashMap<String, Route>();
+		for (Route route : routes)
+			byId.put(route.getId(), route);
+		return byId;
+	}
+
+	// Same attributes and the same stops, with the same attributes, in the same order
+	private static boolean same(Route a, Route b) {
+		if (!Objects.equals(a.getLong_name(), b.getLong_name()) || a.getNumStops() != b.getNumStops())
+			return false;
+		List<Stop> s = a.getStops(), t = b.getStops();
+		for (int i = 0; i < s.size(); i++)
+			if (!same(s.get(i), t.get(i)))
+				return false;
+		return true;
+	}
+
+	private static boolean same(Stop v, Stop w) {
+		return Objects.equals(v.getId(), w.getId()) && Objects.equals(v.getName(), w.getName())
+				&& Double.compare(v.getLatitude(), w.getLatitude()) == 0
+				&& Double.compare(v.getLongitude(), w.getLongitude()) == 0;
+	}
+
+	/**
+	 * What a refresh found changed, by route id.
+	 */
+	public static final class Diff {
+		private final List<String> added;
+		private final List<String> removed;
+		private final List<String> changed;
+		private final int shared;
+
+		Diff(List<String> added, List<String> removed, List<String> changed, int shared) {
+			this.added = Collections.unmodifiableList(added);
+			this.removed = Collections.unmodifiableList(removed);
+			this.changed = Collections.unmodifiableList(changed);
+			this.shared = shared;
+		}
+
+		/**
+		 * @return true if nothing changed and no new version was published
+		 */
+		public boolean isEmpty() {
+			return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+		}
+
+		public List<String> getAdded() {
+			return added;
+		}
+
+		public List<String> getRemoved() {
+			return removed;
+		}
+
+		/**
+		 * @return the routes whose name, stops or stop attributes changed
+		 */
+		public List<String> getChanged() {
+			return changed;
+		}
+
+		/**
+		 * @return the number of routes of the current version shared with the previous one
+		 */
+		public int getShared() {
+			return shared;
+		}
+
+		@Override
+		public String toString() {
+			return "added " + added + ", removed " + removed + ", changed " + changed + ", shared " + shared;
+		}
+	}
+}
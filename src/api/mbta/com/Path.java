@@ -0,0 +1,249 @@
+package api.mbta.com;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable <em>Path</em> through a Subway Graph, i.e. the result of a shortest path query.
+ * 
+ * The hops of a path are grouped into legs, each ridden on a single route, by
+ * intersecting the route bitsets of consecutive stops, see <em>RouteStats</em>.
+ * A leg extends as long as some route serves every stop on it, so a path has
+ * the fewest legs its stops allow. Legs are found on first use.
+ * 
+ * @author Ivan Chang
+ */
+public final class Path {
+	private final SubwayGraph graph;
+	private final int[] stops; // vertex indices along the path, start first
+	private final int distance;
+	private final int settled;
+	private volatile Legs legs; // found on first use
+
+	Path(SubwayGraph graph, int[] stops, int distance, int settled) {
+		this.graph = graph;
+		this.stops = stops;
+		this.distance = distance;
+		this.settled = settled;
+	}
+
+	/**
+	 * @return the beginning subway stop
+	 */
+	public Stop getStart() {
+		return graph.vertexAt(stops[0]);
+	}
+
+	/**
+	 * @return the destination subway stop
+	 */
+	public Stop getGoal() {
+		return graph.vertexAt(stops[stops.length - 1]);
+	}
+
+	/**
+	 * @return the distance - the total edge length along this path
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return the number of subway stops on this path, including both ends
+	 */
+	public int size() {
+		return stops.length;
+	}
+
+	/**
+	 * Returns the vertex index of the i-th subway stop on this path.
+	 * @param i is a position between 0 and size() - 1
+	 * @return the index of the subway stop in the Subway Graph.
+	 */
+	public int getStopIndex(int i) {
+		return stops[i];
+	}
+
+	/**
+	 * @return the subway stops along this path, beginning stop first. The list cannot be modified.
+	 */
+	public List<Stop> getStops() {
+		return new AbstractList<Stop>() {
+			@Override
+			public Stop get(int i) {
+				return graph.vertexAt(stops[i]);
+			}
+
+			@Override
+			public int size() {
+				return stops.length;
+			}
+		};
+	}
+
+	/**
+	 * @return the number of vertices the search settled to find this path
+	 */
+	public int getSettled() {
+		return settled;
+	}
+
+	/**
+	 * Returns the routes ridden, one per leg. A hop between two stops that no
+	 * route serves together, e.g. an edge added to the graph by hand, is a leg of
+	 * its own with a <em>null</em> route.
+	 * @return the routes ridden, in order. The list cannot be modified.
+	 */
+	public List<Route> getRoutes() {
+		return Collections.unmodifiableList(Arrays.asList(legs().routes));
+	}
+
+	/**
+	 * Returns the subway stops where each leg boards, i.e. the beginning stop followed by
+	 * every transfer stop.
+	 * @return a list of subway stops with one entry per leg.
+	 */
+	public List<Stop> getBoardingStops() {
+		final int[] start = legs().start;
+		return new AbstractList<Stop>() {
+			@Override
+			public Stop get(int i) {
+				return graph.vertexAt(stops[start[i]]);
+			}
+
+			@Override
+			public int size() {
+				return start.length;
+			}
+		};
+	}
+
+	/**
+	 * @return the number of transfers between routes
+	 */
+	public int getTransfers() {
+		return Math.max(0, legs().routes.length - 1);
+	}
+
+	/**
+	 * Returns this path as a JSON object of the form
+	 * <pre>
+	 * {"distance":4,
+	 *  "stops":[{"id":"place-davis","name":"Davis"}, ...],
+	 *  "legs":[{"route":"Red","name":"Red Line","board":0,"alight":4}, ...]}
+	 * </pre>
+	 * where board and alight are positions in stops.
+	 * @return the JSON text.
+	 */
+	public String toJson() {
+		return appendJson(new StringBuilder(64 + 48 * stops.length)).toString();
+	}
+
+	/**
+	 * Appends this path as a JSON object to a buffer, see {@code toJson()}.
+	 * @param sb is the buffer
+	 * @return the buffer.
+	 */
+	public StringBuilder appendJson(StringBuilder sb) {
+		Legs legs = legs();
+		sb.append("{\"distance\":").append(distance).append(",\"stops\":[");
+		for (int i = 0; i < stops.length; i++) {
+			Stop stop = graph.vertexAt(stops[i]);
+			sb.append(i == 0 ? "{\"id\":" : ",{\"id\":");
+			quote(sb, stop.getId());
+			sb.append(",\"name\":");
+			quote(sb, stop.getName());
+			sb.append('}');
+		}
+		sb.append("],\"legs\":[");
+		for (int i = 0; i < legs.routes.length; i++) {
+			Route route = legs.routes[i];
+			sb.append(i == 0 ? "{\"route\":" : ",{\"route\":");
+			quote(sb, route == null ? null : route.getId());
+			sb.append(",\"name\":");
+			quote(sb, route == null ? null : route.getLong_name());
+			sb.append(",\"board\":").append(legs.start[i]);
+			sb.append(",\"alight\":").append(i + 1 < legs.start.length ? legs.start[i + 1] : stops.length - 1);
+			sb.append('}');
+		}
+		return sb.append("]}");
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static void quote(StringBuilder sb, String s) {
+		if (s == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 15]);
+			else
+				sb.append(c);
+		}
+		sb.append('"');
+	}
+
+	private Legs legs() {
+		Legs legs = this.legs;
+		if (legs == null) {
+			legs = new Legs(graph.getRouteStats(), stops);
+			this.legs = legs;
+		}
+		return legs;
+	}
+
+	/**
+	 * The legs of a path: the route ridden on each and the position where each boards.
+	 */
+	private static final class Legs {
+		private final Route[] routes;
+		private final int[] start;
+
+		Legs(RouteStats stats, int[] stops) {
+			int words = stats.words(), n = 0;
+			long[] ride = new long[words]; // the routes serving every stop of the current leg
+			Route[] routes = new Route[Math.max(0, stops.length - 1)];
+			int[] start = new int[routes.length];
+			int i = 0;
+			while (i < stops.length - 1) {
+				boolean served = false;
+				for (int w = 0; w < words; w++)
+					served |= (ride[w] = stats.word(stops[i], w) & stats.word(stops[i + 1], w)) != 0;
+				int j = i + 1;
+				while (served && j < stops.length - 1) {
+					boolean further = false;
+					for (int w = 0; w < words && !further; w++)
+						further = (ride[w] & stats.word(stops[j + 1], w)) != 0;
+					if (!further)
+						break;
+					for (int w = 0; w < words; w++)
+						ride[w] &= stats.word(stops[j + 1], w);
+					j++;
+				}
+				Route route = null;
+				for (int w = 0; w < words && route == null; w++)
+					if (ride[w] != 0)
+						route = stats.getRoutes().get((w << 6) + Long.numberOfTrailingZeros(ride[w]));
+				start[n] = i;
+				routes[n++] = route;
+				i = j;
+			}
+			this.routes = Arrays.copyOf(routes, n);
+			this.start = Arrays.copyOf(start, n);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getStops().stream().map(s -> s.getName()).collect(Collectors.joining(" -> "));
+	}
+}
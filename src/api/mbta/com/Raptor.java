@@ -0,0 +1,280 @@
+package api.mbta.com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import graph.CompiledGraph;
+
+/**
+ * A round-based (RAPTOR-like) router over the stop sequences of subway routes.
+ * Round k finds the fewest stops travelled to every stop using at most k rides,
+ * so a single query yields the Pareto set of journeys over (stops travelled,
+ * number of transfers). Transfers happen between routes serving the same stop.
+ *
+ * Every route is ridden in both directions, each direction being a separate
+ * pattern. Patterns and the patterns serving every stop are kept in flat arrays
+ * so that a round scans contiguous memory. A Raptor is immutable and safe for
+ * concurrent queries; per-query state is kept per thread.
+ *
+ * @author Ivan Chang
+ */
+public final class Raptor {
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	private final SubwayGraph graph;
+	private final List<Route> routes;
+	private final CompiledGraph compiled; // the Subway Graph when built, to detect changes
+	private final int n; // number of stops in the Subway Graph
+
+	// Pattern p visits patternStops[patternStart[p]] .. patternStops[patternStart[p + 1] - 1]
+	private final int[] patternStart;
+	private final int[] patternStops;
+	private final int[] patternOf; // pattern of each position in patternStops
+	private final int[] patternRoute; // index into routes
+
+	// Stop v is served at positions servedAt[servedStart[v]] .. servedAt[servedStart[v + 1] - 1]
+	private final int[] servedStart;
+	private final int[] servedAt;
+
+	private final ThreadLocal<State> states = new ThreadLocal<State>();
+
+	/**
+	 * Builds the flat route and stop arrays for the routes of a Subway Graph.
+	 * @param graph is a Subway Graph containing every stop of its routes
+	 */
+	Raptor(SubwayGraph graph) {
+		this.graph = graph;
+		this.routes = graph.getRoutes();
+		this.compiled = graph.compile();
+		this.n = graph.getNumVertices();
+
+		int patterns = 0, positions = 0;
+		for (Route route : routes) {
+			if (route.getNumStops() > 1) {
+				patterns += 2;
+				positions += 2 * route.getNumStops();
+			}
+		}
+		patternStart = new int[patterns + 1];
+		patternStops = new int[positions];
+		patternOf = new int[positions];
+		patternRoute = new int[patterns];
+		int p = 0, i = 0;
+		for (int r = 0; r < routes.size(); r++) {
+			List<Stop> stops = routes.get(r).getStops();
+			if (stops.size() < 2)
+				continue;
+			for (int direction = 0; direction < 2; direction++) {
+				patternStart[p] = i;
+				patternRoute[p] = r;
+				for (int j = 0; j < stops.size(); j++) {
+					Stop stop = stops.get(direction == 0 ? j : stops.size() - 1 - j);
+					patternStops[i] = graph.indexOf(stop);
+					patternOf[i++] = p;
+				}
+				p++;
+			}
+		}
+		patternStart[patterns] = positions;
+
+		servedStart = new int[n + 1];
+		servedAt = new int[positions];
+		for (int v : patternStops)
+			servedStart[v + 1]++;
+		for (int v = 0; v < n; v++)
+			servedStart[v + 1] += servedStart[v];
+		int[] fill = Arrays.copyOf(servedStart, n);
+		for (int j = 0; j < positions; j++)
+			servedAt[fill[patternStops[j]]++] = j;
+	}
+
+	/**
+	 * @return true if the Subway Graph has neither changed nor been given other routes since this Raptor was built.
+	 */
+	boolean isCurrent(SubwayGraph g) {
+		return routes == g.getRoutes() && compiled == g.compile();
+	}
+
+	/**
+	 * Finds the Pareto set of journeys between two stops over stops travelled and
+	 * number of transfers.
+	 * @param s is the index of the beginning stop
+	 * @param t is the index of the destination stop
+	 * @param maxTransfers is the largest number of transfers to consider
+	 * @return the journeys ordered by increasing transfers and decreasing stops travelled,
+	 *         empty if the destination cannot be reached.
+	 */
+	List<Journey> journeys(int s, int t, int maxTransfers) {
+		if (s == t)
+			return Collections.singletonList(new Journey(graph, new int[] { s }, new Route[0], new int[0]));
+		State state = states.get();
+		if (state == null || state.best.length != n) {
+			state = new State(n, patternStart.length - 1);
+			states.set(state);
+		}
+		int rounds = state.run(s, t, maxTransfers + 1);
+
+		List<Journey> journeys = new ArrayList<Journey>();
+		int previous = INFINITY;
+		for (int k = 1; k <= rounds; k++) {
+			int d = state.label(k)[t];
+			if (d < previous) {
+				journeys.add(state.journey(t, k));
+				previous = d;
+			}
+		}
+		return journeys;
+	}
+
+	/**
+	 * Per-thread query state: one label, boarding and arrival array per round.
+	 */
+	private final class State {
+		private final int[] best; // fewest stops travelled to each stop over all rounds
+		private final List<int[]> labels = new ArrayList<int[]>(); // per round, carried forward
+		private final List<int[]> boardedAt = new ArrayList<int[]>(); // per round, -1 if carried forward
+		private final List<int[]> arrivedAt = new ArrayList<int[]>();
+		private final boolean[] marked;
+		private int[] markedStops;
+		private int numMarked;
+		private final int[] firstPosition; // per pattern, earliest marked position in this round
+		private final int[] queued;
+		private int numQueued;
+
+		State(int n, int patterns) {
+			best = new int[n];
+			marked = new boolean[n];
+			markedStops = new int[n];
+			firstPosition = new int[patterns];
+			queued = new int[patterns];
+			Arrays.fill(firstPosition, -1);
+		}
+
+		int[] label(int k) {
+			return labels.get(k);
+		}
+
+		private void ensureRound(int k) {
+			while (labels.size() <= k) {
+				labels.add(new int[best.length]);
+				boardedAt.add(new int[best.length]);
+				arrivedAt.add(new int[best.length]);
+			}
+		}
+
+		/**
+		 * Runs rounds until no stop improves or maxRounds rides have been taken.
+		 * @return the number of rounds run
+		 */
+		int run(int s, int t, int maxRounds) {
+			Arrays.fill(best, INFINITY);
+			ensureRound(0);
+			Arrays.fill(labels.get(0), INFINITY);
+			labels.get(0)[s] = 0;
+			best[s] = 0;
+			markedStops[0] = s;
+			numMarked = 1;
+			marked[s] = true;
+
+			int k = 0;
+			while (numMarked > 0 && k < maxRounds) {
+				k++;
+				ensureRound(k);
+				int[] previous = labels.get(k - 1);
+				int[] label = labels.get(k);
+				int[] board = boardedAt.get(k);
+				int[] arrive = arrivedAt.get(k);
+				System.arraycopy(previous, 0, label, 0, label.length);
+				Arrays.fill(board, -1);
+
+				// Collect the patterns serving a stop improved in the previous round,
+				// each from the earliest such stop along the pattern.
+				for (int m = 0; m < numMarked; m++) {
+					int v = markedStops[m];
+					marked[v] = false;
+					for (int j = servedStart[v]; j < servedStart[v + 1]; j++) {
+						int position = servedAt[j];
+						int p = patternOf[position];
+						if (firstPosition[p] == -1)
+							queued[numQueued++] = p;
+						if (firstPosition[p] == -1 || position < firstPosition[p])
+							firstPosition[p] = position;
+					}
+				}
+				numMarked = 0;
+
+				// Ride every queued pattern once, boarding wherever the previous round
+				// reached a stop with fewer stops travelled than staying on board.
+				for (int q = 0; q < numQueued; q++) {
+					int p = queued[q];
+					int end = patternStart[p + 1];
+					int travelled = INFINITY, boarded = -1;
+					for (int i = firstPosition[p]; i < end; i++) {
+						int v = patternStops[i];
+						if (travelled < INFINITY) {
+							travelled++;
+							if (travelled < best[v] && travelled < best[t]) {
+								label[v] = travelled;
+								best[v] = travelled;
+								board[v] = boarded;
+								arrive[v] = i;
+								if (!marked[v]) {
+									marked[v] = true;
+									markedStops[numMarked++] = v;
+								}
+							}
+						}
+						if (previous[v] < travelled) {
+							travelled = previous[v];
+							boarded = i;
+						}
+					}
+					firstPosition[p] = -1;
+				}
+				numQueued = 0;
+			}
+			for (int m = 0; m < numMarked; m++)
+				marked[markedStops[m]] = false;
+			numMarked = 0;
+			return k;
+		}
+
+		/**
+		 * Walks the rides of round k back to the beginning stop.
+		 */
+		Journey journey(int t, int k) {
+			List<int[]> rides = new ArrayList<int[]>(); // {board position, arrival position}
+			int v = t;
+			while (k > 0) {
+				int board = boardedAt.get(k)[v];
+				if (board == -1) {
+					k--; // carried forward from the previous round
+					continue;
+				}
+				rides.add(new int[] { board, arrivedAt.get(k)[v] });
+				v = patternStops[board];
+				k--;
+			}
+			Collections.reverse(rides);
+
+			int length = 1;
+			for (int[] ride : rides)
+				length += ride[1] - ride[0];
+			int[] stops = new int[length];
+			Route[] legs = new Route[rides.size()];
+			int[] legStart = new int[rides.size()];
+			int i = 0;
+			stops[i] = patternStops[rides.get(0)[0]];
+			for (int l = 0; l < rides.size(); l++) {
+				int[] ride = rides.get(l);
+				legs[l] = routes.get(patternRoute[patternOf[ride[0]]]);
+				legStart[l] = i;
+				for (int j = ride[0] + 1; j <= ride[1]; j++)
+					stops[++i] = patternStops[j];
+			}
+			return new Journey(graph, stops, legs, legStart);
+		}
+	}
+}
@@ -1,38 +1,101 @@
 package api.mbta.com;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import client.HttpClient;
+import client.JsonReader;
+import client.RateLimiter;
 
 /**
  * A <em>Requests</em> class that inherits the GET protocol from Base HttpClient.
+ * Responses are decoded as they stream in with a <em>JsonReader</em>, building
+ * Routes and Stops directly and skipping the fields that are not used, so no
+ * document tree of a whole page is ever held in memory.
+ * <p>
+ * Routes are fetched asynchronously on a dedicated, bounded pool of I/O threads
+ * rather than on the common ForkJoin pool, so blocking HTTP calls never starve
+ * parallel computations elsewhere in the JVM. With enough threads for every
+ * route, loading all stops takes about one round trip.
+ * <p>
+ * Requests are limited by the MBTA rate-limit headers and retried with backoff
+ * when throttled or timed out. A request that still fails raises an exception,
+ * so a route is never silently left without stops.
+ * <p>
+ * The stops of many routes are fetched in batches, one /stops request naming
+ * several routes, and split back out to each route by the route relationship of
+ * every stop. The response lists a stop shared by several routes only once, so
+ * a route is only taken from it where its sequence of stops is one run of the
+ * response; any other route is fetched on its own. If the api links a stop to
+ * a single route, which cannot show the other routes it is on, every route is
+ * fetched on its own from then on.
  * 
  *  @author Ivan Chang
  */
 public class Requests extends HttpClient {
 
+	public static final int DEFAULT_CONCURRENCY = 16;
+	public static final int DEFAULT_RETRIES = 5;
+	public static final int DEFAULT_BATCH_SIZE = 20;
+	private static final AtomicInteger pools = new AtomicInteger();
+
 	// Keep track of subway stops discovered, avoid duplicates.
 	// Safe for concurrent use
-	static Map<String, Stop> visited = new ConcurrentHashMap<String, Stop>();
+	private final Map<String, Stop> visited = new ConcurrentHashMap<String, Stop>();
+	private final ExecutorService executor;
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+	private volatile boolean linksEveryRoute = true; // stops of a batch list all their routes
 
 	public Requests(String url) {
+		this(url, DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * Initializes Requests fetching up to a number of routes at once.
+	 * @param url is the root url of the MBTA api
+	 * @param concurrency is the most requests in flight at once
+	 */
+	public Requests(String url, int concurrency) {
 		super(url);
+		if (concurrency < 1)
+			throw new IllegalArgumentException("concurrency must be positive");
+		int pool = pools.incrementAndGet();
+		AtomicInteger threads = new AtomicInteger();
+		// Idle threads exit, so an unused Requests holds no threads.
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), r -> {
+					Thread t = new Thread(r, "mbta-io-" + pool + "-" + threads.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		this.executor = executor;
+		setRateLimiter(new RateLimiter(concurrency));
+		setMaxRetries(DEFAULT_RETRIES);
 	}
 
 	/**
 	 * Returns a list of MBTA Subway <em>Route</em> objects
 	 * 
+	 * @throws UncheckedIOException if the routes cannot be fetched
 	 */
 	public List<Route> subwayRoutes() {
 		List<Route> routes = new ArrayList<Route>();
@@ -43,19 +106,9 @@ public class Requests extends HttpClient {
 			Map<String, String> qp = new HashMap<String, String>();
 			qp.put(filter, subway);
 
-			String response = GET("/routes", qp);
-
-			JSONObject json = new JSONObject(response.toString());
-			JSONArray routesData = json.getJSONArray("data");
-
-			routes = StreamSupport.stream(routesData.spliterator(), false)
-					.map(route -> new Route(((JSONObject) route).getString("id"),
-							((JSONObject) route).getJSONObject("attributes").getString("long_name")))
-					.collect(Collectors.toList());
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
+			routes = GET("/routes", qp, Requests::readRoutes);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException("cannot fetch subway routes", e);
 		}
 
 		return routes;
@@ -65,6 +118,7 @@ public class Requests extends HttpClient {
 	 * Returns a MBTA Subway <em>Route</em> object including stops
 	 * 
 	 * @param route is a valid <em>Route</em> object
+	 * @throws UncheckedIOException if the stops cannot be fetched
 	 */
 	public Route mbtaStops(Route route) {
 		List<Stop> stops = new ArrayList<Stop>();
@@ -75,25 +129,9 @@ public class Requests extends HttpClient {
 			Map<String, String> qp = new HashMap<String, String>();
 			qp.put(filter, value);
 
-			String response = GET("/stops", qp);
-
-			JSONObject json = new JSONObject(response.toString());
-			JSONArray stopsData = json.getJSONArray("data");
-
-			stops = StreamSupport.stream(stopsData.spliterator(), true).map(stop -> {
-				String id = ((JSONObject) stop).getString("id");
-				if (!visited.containsKey(id)) {
-					String name = ((JSONObject) stop).getJSONObject("attributes").isNull("name") ? ""
-							: ((JSONObject) stop).getJSONObject("attributes").getString("name");
-					visited.put(id, new Stop(id, name));
-				}
-				visited.get(id).addConnectsTo(route);
-				return visited.get(id);
-			}).collect(Collectors.toList());
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
+			stops = GET("/stops", qp, in -> readStops(in, Collections.singletonList(route), null)).get(route);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException("cannot fetch stops of route " + route.getId(), e);
 		}
 
 		route.setStops(stops);
@@ -104,10 +142,318 @@ public class Requests extends HttpClient {
 	 * Returns multiple MBTA Subway <em>Route</em> objects including stops
 	 * 
 	 * @param routes is a valid list <em>Route</em> objects
+	 * @throws CompletionException if the stops of any route cannot be fetched
 	 */
 	public List<Route> mbtaStops(List<Route> routes) {
-		List<Route> includeStops = StreamSupport.stream(routes.spliterator(), true).map(route -> mbtaStops(route))
-				.collect(Collectors.toList());
-		return includeStops;
+		return mbtaStopsAsync(routes).join();
+	}
+
+	/**
+	 * Fetches the stops of a MBTA Subway <em>Route</em> on the I/O threads.
+	 * 
+	 * @param route is a valid <em>Route</em> object
+	 * @return a future of the route including stops, completed exceptionally if they cannot be fetched
+	 */
+	public CompletableFuture<Route> mbtaStopsAsync(Route route) {
+		return CompletableFuture.supplyAsync(() -> mbtaStops(route), executor);
+	}
+
+	/**
+	 * Fetches the stops of multiple MBTA Subway <em>Route</em> objects at once on
+	 * the I/O threads.
+	 * 
+	 * @param routes is a valid list <em>Route</em> objects
+	 * @return a future of the routes including stops, in the given order, completed exceptionally if
+	 *         any route cannot be fetched
+	 */
+	public CompletableFuture<List<Route>> mbtaStopsAsync(List<Route> routes) {
+		int size = linksEveryRoute ? batchSize : 1;
+		List<CompletableFuture<List<Route>>> futures = new ArrayList<CompletableFuture<List<Route>>>();
+		for (int i = 0; i < routes.size(); i += size) {
+			List<Route> batch = routes.subList(i, Math.min(i + size, routes.size()));
+			futures.add(batch.size() == 1 ? mbtaStopsAsync(batch.get(0)).thenApply(Collections::singletonList)
+					: CompletableFuture.supplyAsync(() -> mbtaStopsBatch(batch), executor));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> futures.stream()
+				.flatMap(future -> future.join().stream()).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Fetches the stops of several routes with one request,
+	 * /stops?filter[route]=A,B,C&amp;include=route, splitting them out by the route
+	 * relationship of each stop. A route the response names no stop for, or whose
+	 * sequence of stops cannot be told from it, is fetched on its own.
+	 */
+	private List<Route> mbtaStopsBatch(List<Route> batch) {
+		Map<Route, List<Stop>> stops;
+		Set<Route> doubtful = new HashSet<Route>();
+		try {
+			Map<String, String> qp = new HashMap<String, String>();
+			qp.put("filter[route]", batch.stream().map(Route::getId).collect(Collectors.joining(",")));
+			qp.put("include", "route");
+			stops = GET("/stops", qp, in -> readStops(in, batch, doubtful));
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot fetch stops of routes "
+					+ batch.stream().map(Route::getId).collect(Collectors.joining(",")), e);
+		}
+		for (Route route : batch) {
+			if (stops.containsKey(route) && !doubtful.contains(route))
+				route.setStops(stops.get(route));
+			else
+				mbtaStops(route);
+		}
+		return batch;
+	}
+
+	/**
+	 * @return how many routes are fetched with a single /stops request
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets how many routes are fetched with a single /stops request, 1 for a request per route.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	private static final String[] DOCUMENT = { "data" };
+	private static final String[] RESOURCE = { "id", "attributes", "relationships" };
+	private static final String[] RELATIONSHIPS = { "route" };
+	private static final String[] LINKAGE = { "data" };
+	private static final String[] IDENTIFIER = { "id" };
+	private static final String[] ROUTE_ATTRIBUTES = { "long_name" };
+	private static final String[] STOP_ATTRIBUTES = { "name", "latitude", "longitude" };
+
+	/**
+	 * Decodes the routes of a /routes response.
+	 */
+	static List<Route> readRoutes(Reader body) throws IOException {
+		List<Route> routes = new ArrayList<Route>();
+		JsonReader json = new JsonReader(body);
+		json.beginObject();
+		while (json.hasNext()) {
+			if (json.selectName(DOCUMENT) != 0) {
+				json.skipValue();
+				continue;
+			}
+			json.beginArray();
+			while (json.hasNext()) {
+				String id = null, longName = null;
+				json.beginObject();
+				while (json.hasNext()) {
+					switch (json.selectName(RESOURCE)) {
+					case 0:
+						id = json.nextString();
+						break;
+					case 1:
+						json.beginObject();
+						while (json.hasNext()) {
+							if (json.selectName(ROUTE_ATTRIBUTES) == 0)
+								longName = optString(json);
+							else
+								json.skipValue();
+						}
+						json.endObject();
+						break;
+					default:
+						json.skipValue();
+					}
+				}
+				json.endObject();
+				routes.add(new Route(id, longName));
+			}
+			json.endArray();
+		}
+		json.endObject();
+		return routes;
+	}
+
+	/**
+	 * Decodes the stops of a /stops response for some routes, reusing the stops
+	 * already discovered. Every stop is added to the routes its route relationship
+	 * names, in the order of the response, or to the only route if there is one
+	 * and the response names none.
+	 * <p>
+	 * A response for several routes lists the stops of each route in sequence, but
+	 * a stop shared with a route listed earlier only there, e.g. Downtown Crossing
+	 * under the Red Line and not between State and Chinatown on the Orange Line. A
+	 * route is only in sequence if its stops are one run of the response with no
+	 * shared stop at either end, which could belong to the neighboring run instead;
+	 * other routes are added to <em>doubtful</em>. So is every route if a stop
+	 * names a single route, or none of the batch, as then the response does not
+	 * show the other routes of a stop.
+	 * @param doubtful collects the routes whose stops may be missing or out of order, may be null for a single route
+	 * @return the stops of each route the response names a stop for
+	 */
+	Map<Route, List<Stop>> readStops(Reader body, List<Route> batch, Set<Route> doubtful) throws IOException {
+		Map<String, Route> byId = new HashMap<String, Route>();
+		for (Route route : batch)
+			byId.put(route.getId(), route);
+		Map<Route, List<Stop>> stops = new HashMap<Route, List<Stop>>();
+		if (batch.size() == 1)
+			stops.put(batch.get(0), new ArrayList<Stop>());
+		Map<Route, int[]> runs = new HashMap<Route, int[]>(); // first and last position of the stops of each route
+		BitSet shared = new BitSet(); // positions of stops on more than one route of the batch
+		boolean unsplit = false; // the response does not show every route of a stop
+		int position = 0;
+		List<Route> of = new ArrayList<Route>();
+		JsonReader json = new JsonReader(body);
+		json.beginObject();
+		while (json.hasNext()) {
+			if (json.selectName(DOCUMENT) != 0) {
+				json.skipValue(); // including the included routes
+				continue;
+			}
+			json.beginArray();
+			while (json.hasNext()) {
+				String id = null, name = null;
+				double latitude = Double.NaN, longitude = Double.NaN;
+				boolean every = false; // the relationship lists every route of the stop
+				of.clear();
+				json.beginObject();
+				while (json.hasNext()) {
+					switch (json.selectName(RESOURCE)) {
+					case 0:
+						id = json.nextString();
+						break;
+					case 1:
+						json.beginObject();
+						while (json.hasNext()) {
+							switch (json.selectName(STOP_ATTRIBUTES)) {
+							case 0:
+								name = optString(json);
+								break;
+							case 1:
+								latitude = optDouble(json);
+								break;
+							case 2:
+								longitude = optDouble(json);
+								break;
+							default:
+								json.skipValue();
+							}
+						}
+						json.endObject();
+						break;
+					case 2:
+						every = readRouteRelationship(json, byId, of);
+						break;
+					default:
+						json.skipValue();
+					}
+				}
+				json.endObject();
+				if (of.isEmpty() && batch.size() == 1)
+					of.add(batch.get(0));
+				else if ((!every || of.isEmpty()) && batch.size() > 1) {
+					unsplit = true;
+					if (!every)
+						linksEveryRoute = false;
+				}
+
+				String stopName = name == null ? "" : name;
+				double lat = latitude, lon = longitude;
+				Stop s = visited.computeIfAbsent(id, k -> {
+					Stop stop = new Stop(k, stopName);
+					stop.setLatitude(lat);
+					stop.setLongitude(lon);
+					return stop;
+				});
+				for (Route route : of) {
+					synchronized (s) { // routes sharing a stop are read concurrently
+						if (!s.getConnectsTo().contains(route))
+							s.addConnectsTo(route);
+					}
+					stops.computeIfAbsent(route, r -> new ArrayList<Stop>()).add(s);
+					int at = position;
+					runs.computeIfAbsent(route, r -> new int[] { at, at })[1] = at;
+				}
+				shared.set(position++, of.size() > 1);
+			}
+			json.endArray();
+		}
+		json.endObject();
+		if (batch.size() > 1) {
+			for (Map.Entry<Route, List<Stop>> entry : stops.entrySet()) {
+				int[] run = runs.get(entry.getKey());
+				if (unsplit || run[1] - run[0] + 1 != entry.getValue().size() || shared.get(run[0]) || shared.get(run[1]))
+					doubtful.add(entry.getKey());
+			}
+		}
+		return stops;
+	}
+
+	/**
+	 * Reads the routes named by relationships.route, a single linkage or an array
+	 * of them, keeping those among byId.
+	 * @return true if the routes were an array
+	 */
+	private static boolean readRouteRelationship(JsonReader json, Map<String, Route> byId, List<Route> of)
+			throws IOException {
+		boolean array = false;
+		json.beginObject();
+		while (json.hasNext()) {
+			if (json.selectName(RELATIONSHIPS) != 0) {
+				json.skipValue();
+				continue;
+			}
+			json.beginObject();
+			while (json.hasNext()) {
+				if (json.selectName(LINKAGE) != 0) {
+					json.skipValue();
+					continue;
+				}
+				JsonReader.Token token = json.peek();
+				if (token == JsonReader.Token.BEGIN_ARRAY) {
+					array = true;
+					json.beginArray();
+					while (json.hasNext())
+						readLinkage(json, byId, of);
+					json.endArray();
+				} else if (token == JsonReader.Token.BEGIN_OBJECT) {
+					readLinkage(json, byId, of);
+				} else {
+					json.skipValue();
+				}
+			}
+			json.endObject();
+		}
+		json.endObject();
+		return array;
+	}
+
+	private static void readLinkage(JsonReader json, Map<String, Route> byId, List<Route> of) throws IOException {
+		json.beginObject();
+		while (json.hasNext()) {
+			if (json.selectName(IDENTIFIER) == 0) {
+				Route route = byId.get(json.nextString());
+				if (route != null && !of.contains(route))
+					of.add(route);
+			} else {
+				json.skipValue();
+			}
+		}
+		json.endObject();
+	}
+
+	private static String optString(JsonReader json) throws IOException {
+		if (json.peek() == JsonReader.Token.NULL) {
+			json.nextNull();
+			return null;
+		}
+		return json.nextString();
+	}
+
+	private static double optDouble(JsonReader json) throws IOException {
+		if (json.peek() != JsonReader.Token.NUMBER) {
+			json.skipValue();
+			return Double.NaN;
+		}
+		return json.nextDouble();
 	}
 }
@@ -0,0 +1,209 @@
+package api.mbta.com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import graph.CompiledGraph;
+
+/**
+ * Route statistics and the interchange index of a Subway Graph, computed once
+ * so that queries cost O(1) or O(size of the result) instead of copying and
+ * sorting the routes on every call.
+ *
+ * The routes through every stop are kept as a bitset over the routes, one row
+ * of {@code words} longs per stop in a single flat array, so the routes two
+ * stops share are a single AND of their rows. Stops are also kept sorted by
+ * decreasing number of routes, so the stops with at least k routes are a
+ * prefix of that order.
+ *
+ * RouteStats are immutable and safe for concurrent use. A Subway Graph builds
+ * them on first use and again after its routes or stops change, see
+ * {@code SubwayGraph.getRouteStats()}.
+ *
+ * @author Ivan Chang
+ */
+public final class RouteStats {
+	private final SubwayGraph graph;
+	private final CompiledGraph compiled; // the stops and connections these were computed for
+	private final List<Route> given; // the route list of the Subway Graph these were computed for
+	private final List<Route> routes;
+	private final Map<Route, Integer> routeIndex = new HashMap<Route, Integer>();
+	private final List<Route> fewestStops; // every route with the fewest stops, in route order
+	private final List<Route> mostStops;
+
+	private final int words; // longs per stop
+	private final long[] routesOf; // bits of the routes through stop v at [v * words, (v + 1) * words)
+	private final int[] routeCount; // number of routes through each stop
+	private final Stop[] byRoutes; // stops by decreasing number of routes, then in vertex order
+	private final int[] atLeast; // atLeast[k] = number of stops with k or more routes
+
+	/**
+	 * Computes the statistics of a Subway Graph.
+	 * @param graph is a Subway Graph containing every stop of its routes
+	 */
+	RouteStats(SubwayGraph graph) {
+		this.graph = graph;
+		this.compiled = graph.compile();
+		this.given = graph.getRoutes();
+		this.routes = Collections.unmodifiableList(new ArrayList<Route>(given));
+		int r = routes.size(), n = graph.getNumVertices();
+
+		int fewest = Integer.MAX_VALUE, most = Integer.MIN_VALUE;
+		for (int i = 0; i < r; i++) {
+			Route route = routes.get(i);
+			routeIndex.put(route, i);
+			fewest = Math.min(fewest, route.getNumStops());
+			most = Math.max(most, route.getNumStops());
+		}
+		List<Route> fewestStops = new ArrayList<Route>(), mostStops = new ArrayList<Route>();
+		for (Route route : routes) {
+			if (route.getNumStops() == fewest)
+				fewestStops.add(route);
+			if (route.getNumStops() == most)
+				mostStops.add(route);
+		}
+		this.fewestStops = Collections.unmodifiableList(fewestStops);
+		this.mostStops = Collections.unmodifiableList(mostStops);
+
+		words = (r + 63) >>> 6;
+		routesOf = new long[n * words];
+		for (int i = 0; i < r; i++)
+			for (Stop stop : routes.get(i).getStops())
+				routesOf[graph.indexOf(stop) * words + (i >>> 6)] |= 1L << i;
+
+		// Counting sort of the stops by decreasing number of routes
+		routeCount = new int[n];
+		for (int v = 0; v < n; v++)
+			for (int w = 0; w < words; w++)
+				routeCount[v] += Long.bitCount(routesOf[v * words + w]);
+		atLeast = new int[r + 2];
+		for (int v = 0; v < n; v++)
+			atLeast[routeCount[v]]++;
+		for (int k = r; k >= 0; k--)
+			atLeast[k] += atLeast[k + 1];
+		byRoutes = new Stop[n];
+		int[] fill = new int[r + 1];
+		for (int k = 0; k <= r; k++)
+			fill[k] = atLeast[k + 1];
+		for (int v = 0; v < n; v++)
+			byRoutes[fill[routeCount[v]]++] = graph.vertexAt(v);
+	}
+
+	/**
+	 * @return true if the Subway Graph has neither changed nor been given other routes since these were computed.
+	 */
+	boolean isCurrent(SubwayGraph g) {
+		return graph == g && given == g.getRoutes() && compiled == g.compile();
+	}
+
+	/**
+	 * @return the routes with the fewest stops, in route order, empty if there are no routes
+	 */
+	public List<Route> getRoutesWithFewestStops() {
+		return fewestStops;
+	}
+
+	/**
+	 * @return the routes with the most stops, in route order, empty if there are no routes
+	 */
+	public List<Route> getRoutesWithMostStops() {
+		return mostStops;
+	}
+
+	/**
+	 * Returns the stops with at least k routes through them, most routes first,
+	 * e.g. the interchanges for k = 2.
+	 * @param k is the least number of routes
+	 * @return a read-only view of the stops
+	 */
+	public List<Stop> getStopsWithAtLeast(int k) {
+		if (k < 0)
+			throw new IllegalArgumentException("k " + k + " is negative");
+		return Collections.unmodifiableList(Arrays.asList(byRoutes).subList(0, k < atLeast.length ? atLeast[k] : 0));
+	}
+
+	/**
+	 * @param stop is a stop of the Subway Graph
+	 * @return the number of routes through the stop
+	 */
+	public int getNumRoutes(Stop stop) {
+		return routeCount[graph.indexOf(stop)];
+	}
+
+	/**
+	 * @param stop is a stop of the Subway Graph
+	 * @return the routes through the stop, in route order
+	 */
+	public List<Route> getRoutesThrough(Stop stop) {
+		int v = graph.indexOf(stop) * words;
+		List<Route> through = new ArrayList<Route>(routeCount[graph.indexOf(stop)]);
+		for (int w = 0; w < words; w++)
+			for (long bits = routesOf[v + w]; bits != 0; bits &= bits - 1)
+				through.add(routes.get((w << 6) + Long.numberOfTrailingZeros(bits)));
+		return through;
+	}
+
+	/**
+	 * @param a is a stop of the Subway Graph
+	 * @param b is another stop of the Subway Graph
+	 * @return the routes through both stops, in route order
+	 */
+	public List<Route> getSharedRoutes(Stop a, Stop b) {
+		int u = graph.indexOf(a) * words, v = graph.indexOf(b) * words;
+		List<Route> shared = new ArrayList<Route>(2);
+		for (int w = 0; w < words; w++)
+			for (long bits = routesOf[u + w] & routesOf[v + w]; bits != 0; bits &= bits - 1)
+				shared.add(routes.get((w << 6) + Long.numberOfTrailingZeros(bits)));
+		return shared;
+	}
+
+	/**
+	 * @param a is a stop of the Subway Graph
+	 * @param b is another stop of the Subway Graph
+	 * @return true if some route runs through both stops, i.e. no transfer is needed between them
+	 */
+	public boolean shareRoute(Stop a, Stop b) {
+		int u = graph.indexOf(a) * words, v = graph.indexOf(b) * words;
+		for (int w = 0; w < words; w++)
+			if ((routesOf[u + w] & routesOf[v + w]) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @param route is a route of the Subway Graph
+	 * @param stop is a stop of the Subway Graph
+	 * @return true if the route runs through the stop
+	 */
+	public boolean runsThrough(Route route, Stop stop) {
+		Integer i = routeIndex.get(route);
+		return i != null && (routesOf[graph.indexOf(stop) * words + (i >>> 6)] & (1L << i)) != 0;
+	}
+
+	/**
+	 * @return the number of longs in the route bitset of a stop
+	 */
+	int words() {
+		return words;
+	}
+
+	/**
+	 * @param v is the vertex index of a stop
+	 * @param w is a word between 0 and words() - 1
+	 * @return the bits of routes 64w to 64w + 63 through the stop
+	 */
+	long word(int v, int w) {
+		return routesOf[v * words + w];
+	}
+
+	/**
+	 * @return the routes, in the order of the Subway Graph
+	 */
+	public List<Route> getRoutes() {
+		return routes;
+	}
+}
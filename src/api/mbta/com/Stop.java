@@ -13,6 +13,8 @@ public class Stop implements Comparable<Stop> {
 	private String id;
 	private String name;
 	private List<Route> connectsTo;
+	private double latitude = Double.NaN;
+	private double longitude = Double.NaN;
 	private int distance;
 	private Stop prev;
 
@@ -31,6 +33,8 @@ public class Stop implements Comparable<Stop> {
 		this.id = stop.id;
 		this.name = stop.name;
 		this.connectsTo = new ArrayList<Route>(stop.connectsTo);
+		this.latitude = stop.latitude;
+		this.longitude = stop.longitude;
 		this.distance = stop.distance;
 		this.prev = stop.prev;
 	}
@@ -68,6 +72,35 @@ public class Stop implements Comparable<Stop> {
 		return connectsTo;
 	}
 
+	/**
+	 * @return the latitude in degrees (WGS-84) of this subway stop, NaN if unknown
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public void setLatitude(double latitude) {
+		this.latitude = latitude;
+	}
+
+	/**
+	 * @return the longitude in degrees (WGS-84) of this subway stop, NaN if unknown
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public void setLongitude(double longitude) {
+		this.longitude = longitude;
+	}
+
+	/**
+	 * @return true if both latitude and longitude of this subway stop are known
+	 */
+	public boolean hasLocation() {
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+	}
+
 	/**
 	 * @return the distance - keep track of the distance between this subway stop and any other subway stop (e.g. a starting subway stop)
 	 */
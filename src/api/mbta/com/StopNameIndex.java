@@ -0,0 +1,504 @@
+package api.mbta.com;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A search index over the names of subway stops, built once for typeahead
+ * lookups. Names are normalized to lower case letters and digits separated by
+ * single spaces, without accents or punctuation, so that "JFK/UMass" is found
+ * by "jfk umass".
+ *
+ * Every name is indexed from the start of each of its words in a prefix trie,
+ * whose nodes cover contiguous ranges of the sorted words, and by its trigrams
+ * (runs of three characters) in posting lists addressed directly by the code
+ * of the trigram. A query ranks stops by how they match:
+ * <ol>
+ * <li>the whole name,</li>
+ * <li>the start of the name,</li>
+ * <li>the start of a later word,</li>
+ * <li>anywhere in the name,</li>
+ * <li>anywhere in the name with one edit (a character inserted, deleted or
+ * replaced) for queries of 5 characters or more, or two edits for queries of 9
+ * or more, up to 64.</li>
+ * </ol>
+ * Ties go to the shorter name, then the name first in alphabetical order.
+ * Substrings and edits are only considered for the stops sharing enough
+ * trigrams with the query, and only if the better kinds of match did not
+ * already fill the results; queries shorter than a trigram only match the
+ * start of words. Comparisons work on the normalized characters and allocate
+ * nothing; edits are counted bit-parallel, 64 pattern characters at once.
+ *
+ * An index is immutable and safe for concurrent queries; per-query state is
+ * kept per thread.
+ *
+ * @author Ivan Chang
+ */
+public final class StopNameIndex {
+	// How a stop matched a query, best first
+	private static final int EXACT = 0;
+	private static final int PREFIX = 1;
+	private static final int WORD_PREFIX = 2;
+	private static final int SUBSTRING = 3;
+	private static final int FUZZY = 4; // plus the number of edits
+
+	private static final int SYMBOLS = 37; // space, a-z, 0-9
+
+	private final Stop[] stops;
+	private final char[][] names; // normalized, parallel to stops
+
+	// Every word start of every name, i.e. the name from that word on, in sorted order
+	private final int[] entryStop;
+	private final int[] entryStart;
+
+	// Trie over the entries. Node v covers entries lo[v] .. hi[v] - 1; its
+	// children are firstChild[v], nextSibling[firstChild[v]], ... by label.
+	private final char[] label;
+	private final int[] firstChild;
+	private final int[] nextSibling;
+	private final int[] lo;
+	private final int[] hi;
+
+	private final int[][] trigrams; // trigrams[code] = stops whose name contains it, ascending, null if none
+
+	private final ThreadLocal<Scratch> scratch;
+
+	/**
+	 * Builds the index of some stops.
+	 * @param stops is the stops, each one indexed once by its name
+	 */
+	public StopNameIndex(Collection<Stop> stops) {
+		this.stops = stops.toArray(new Stop[0]);
+		int n = this.stops.length;
+		names = new char[n][];
+		int entries = 0;
+		for (int i = 0; i < n; i++) {
+			names[i] = normalize(Objects.toString(this.stops[i].getName(), "")).toCharArray();
+			entries += words(names[i]);
+		}
+
+		// Entries, sorted by the text from their word start on
+		Integer[] order = new Integer[entries];
+		int[] stopOf = new int[entries], startOf = new int[entries];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			char[] name = names[i];
+			for (int j = 0; j < name.length; j++) {
+				if (j == 0 || name[j - 1] == ' ') {
+					stopOf[e] = i;
+					startOf[e] = j;
+					order[e] = e;
+					e++;
+				}
+			}
+		}
+		Arrays.sort(order, (a, b) -> compareFrom(names[stopOf[a]], startOf[a], names[stopOf[b]], startOf[b]));
+		entryStop = new int[entries];
+		entryStart = new int[entries];
+		int chars = 0;
+		for (int k = 0; k < entries; k++) {
+			entryStop[k] = stopOf[order[k]];
+			entryStart[k] = startOf[order[k]];
+			chars += names[entryStop[k]].length - entryStart[k];
+		}
+
+		// Trie, inserting the sorted entries one after another: an entry shares
+		// the path of the previous one up to their common prefix.
+		char[] label = new char[chars + 1];
+		int[] firstChild = new int[chars + 1], nextSibling = new int[chars + 1], lastChild = new int[chars + 1];
+		int[] lo = new int[chars + 1], hi = new int[chars + 1];
+		int nodes = 1; // the root
+		Arrays.fill(firstChild, -1);
+		Arrays.fill(nextSibling, -1);
+		Arrays.fill(lastChild, -1);
+		int[] path = new int[1];
+		int depth = 0;
+		for (int k = 0; k < entries; k++) {
+			char[] name = names[entryStop[k]];
+			int start = entryStart[k], length = name.length - start;
+			if (path.length < length + 1)
+				path = Arrays.copyOf(path, Math.max(2 * path.length, length + 1));
+			int common = 0;
+			if (k > 0) {
+				char[] prev = names[entryStop[k - 1]];
+				int prevStart = entryStart[k - 1];
+				while (common < Math.min(depth, length) && prev[prevStart + common] == name[start + common])
+					common++;
+			}
+			depth = common;
+			for (int d = depth; d < length; d++) {
+				int parent = path[d], child = nodes++;
+				label[child] = name[start + d];
+				lo[child] = k;
+				if (lastChild[parent] == -1)
+					firstChild[parent] = child;
+				else
+					nextSibling[lastChild[parent]] = child;
+				lastChild[parent] = child;
+				path[d + 1] = child;
+			}
+			depth = length;
+			for (int d = 0; d <= depth; d++)
+				hi[path[d]] = k + 1;
+		}
+		this.label = Arrays.copyOf(label, nodes);
+		this.firstChild = Arrays.copyOf(firstChild, nodes);
+		this.nextSibling = Arrays.copyOf(nextSibling, nodes);
+		this.lo = Arrays.copyOf(lo, nodes);
+		this.hi = Arrays.copyOf(hi, nodes);
+
+		trigrams = trigrams(names);
+		scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+	}
+
+	/**
+	 * Builds the trigram posting lists, counting their sizes first.
+	 */
+	private static int[][] trigrams(char[][] names) {
+		int[][] lists = new int[SYMBOLS * SYMBOLS * SYMBOLS][];
+		int[] size = new int[lists.length], last = new int[lists.length];
+		for (int pass = 0; pass < 2; pass++) {
+			Arrays.fill(last, -1);
+			for (int i = 0; i < names.length; i++) {
+				char[] name = names[i];
+				for (int j = 0; j + 3 <= name.length; j++) {
+					int code = trigram(name, j);
+					if (last[code] == i)
+						continue; // already listed
+					last[code] = i;
+					if (pass == 0) {
+						size[code]++;
+					} else {
+						if (lists[code] == null) {
+							lists[code] = new int[size[code]];
+							size[code] = 0;
+						}
+						lists[code][size[code]++] = i;
+					}
+				}
+			}
+		}
+		return lists;
+	}
+
+	/**
+	 * Normalizes a name or query: lower case letters and digits, accents removed,
+	 * apostrophes dropped, and any other run of characters replaced by a single
+	 * space, without leading or trailing spaces.
+	 * @param s is the name or query
+	 * @return the normalized text
+	 */
+	public static String normalize(String s) {
+		String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(decomposed.length());
+		boolean space = true; // no leading space
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+				sb.append(c);
+				space = false;
+			} else if (c == '\'' || c == '\u2019' || Character.getType(c) == Character.NON_SPACING_MARK) {
+				continue;
+			} else if (!space) {
+				sb.append(' ');
+				space = true;
+			}
+		}
+		if (sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ')
+			sb.setLength(sb.length() - 1);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the number of stops in this index
+	 */
+	public int size() {
+		return stops.length;
+	}
+
+	/**
+	 * Returns the stop best matching a query.
+	 * @param query is the whole or partial name of a stop
+	 * @return the best match, <em>null</em> if no stop matches.
+	 */
+	public Stop best(String query) {
+		List<Stop> matches = search(query, 1);
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * Returns the stops best matching a query, best first.
+	 * @param query is the whole or partial name of a stop
+	 * @param k is the most stops to return
+	 * @return up to k stops, empty if none matches.
+	 */
+	public List<Stop> search(String query, int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("k " + k + " is not positive");
+		char[] q = normalize(Objects.toString(query, "")).toCharArray();
+		if (q.length == 0)
+			return Collections.emptyList();
+		Scratch s = scratch.get();
+		s.begin(k);
+
+		// Names and words starting with the query
+		int node = 0;
+		for (int i = 0; i < q.length && node != -1; i++) {
+			int child = firstChild[node];
+			while (child != -1 && label[child] < q[i])
+				child = nextSibling[child];
+			node = child != -1 && label[child] == q[i] ? child : -1;
+		}
+		if (node != -1) {
+			for (int e = lo[node]; e < hi[node]; e++) {
+				int stop = entryStop[e];
+				int rank = entryStart[e] > 0 ? WORD_PREFIX : names[stop].length == q.length ? EXACT : PREFIX;
+				s.offer(stop, rank);
+			}
+		}
+
+		// Names containing the query, exactly or nearly, among those sharing its trigrams
+		if (q.length >= 3 && !(s.size == k && s.rank[k - 1] <= WORD_PREFIX)) {
+			int edits = q.length > 64 ? 0 : q.length >= 9 ? 2 : q.length >= 5 ? 1 : 0;
+			int distinct = s.trigrams(q);
+			int needed = Math.max(1, distinct - 3 * edits); // an edit spoils at most three trigrams
+			int touched = 0;
+			for (int i = 0; i < distinct; i++) {
+				int[] list = trigrams[s.codes[i]];
+				if (list == null)
+					continue;
+				for (int stop : list) {
+					if (s.seen[stop] != s.epoch) {
+						s.seen[stop] = s.epoch;
+						s.count[stop] = 0;
+						s.touched[touched++] = stop;
+					}
+					s.count[stop]++;
+				}
+			}
+			int[] bucket = s.byCount(touched, distinct);
+
+			// Exact substrings share every trigram of the query
+			for (int i = bucket[distinct]; i < bucket[distinct + 1]; i++) {
+				int stop = s.sorted[i];
+				if (contains(names[stop], q))
+					s.offer(stop, SUBSTRING);
+			}
+			// Near ones, most shared trigrams first. Fewer shared trigrams mean more
+			// edits, so stop once those cannot beat the matches found.
+			if (edits > 0)
+				s.pattern(q);
+			for (int c = distinct; edits > 0 && c >= needed; c--) {
+				int fewest = (distinct - c + 2) / 3;
+				if (s.size == k && s.rank[k - 1] < FUZZY + fewest)
+					break;
+				for (int i = bucket[c]; i < bucket[c + 1]; i++) {
+					int stop = s.sorted[i];
+					int d = s.distance(names[stop], q.length);
+					if (d > 0 && d <= edits)
+						s.offer(stop, FUZZY + d);
+				}
+			}
+		}
+
+		List<Stop> matches = new ArrayList<Stop>(s.size);
+		for (int i = 0; i < s.size; i++)
+			matches.add(stops[s.stop[i]]);
+		return matches;
+	}
+
+	/**
+	 * Per-thread query state: the best matches so far and the trigram counts.
+	 */
+	private final class Scratch {
+		int[] stop = new int[16], rank = new int[16]; // best matches so far, best first
+		int size, k;
+		final int[] seen, count, touched; // trigrams shared with the query, per stop
+		final int[] sorted; // touched by count
+		int[] bucket = new int[16];
+		int epoch;
+		int[] codes = new int[16];
+		final long[] peq = new long[SYMBOLS];
+
+		Scratch(int n) {
+			seen = new int[n];
+			count = new int[n];
+			touched = new int[n];
+			sorted = new int[n];
+		}
+
+		void begin(int k) {
+			this.k = k;
+			size = 0;
+			if (stop.length < k) {
+				stop = new int[k];
+				rank = new int[k];
+			}
+			if (++epoch == 0) { // wrapped around, stale entries could look current
+				Arrays.fill(seen, 0);
+				epoch = 1;
+			}
+		}
+
+		/**
+		 * Adds a match, keeping the k best with at most one per stop.
+		 */
+		void offer(int v, int r) {
+			for (int i = 0; i < size; i++) {
+				if (stop[i] == v) {
+					if (rank[i] <= r)
+						return;
+					System.arraycopy(stop, i + 1, stop, i, size - i - 1); // improve it below
+					System.arraycopy(rank, i + 1, rank, i, size - i - 1);
+					size--;
+					break;
+				}
+			}
+			if (size == k && !better(v, r, stop[k - 1], rank[k - 1]))
+				return;
+			int i = Math.min(size, k - 1);
+			while (i > 0 && better(v, r, stop[i - 1], rank[i - 1])) {
+				stop[i] = stop[i - 1];
+				rank[i] = rank[i - 1];
+				i--;
+			}
+			stop[i] = v;
+			rank[i] = r;
+			if (size < k)
+				size++;
+		}
+
+		private boolean better(int v, int r, int w, int t) {
+			if (r != t)
+				return r < t;
+			if (names[v].length != names[w].length)
+				return names[v].length < names[w].length;
+			int c = compareFrom(names[v], 0, names[w], 0);
+			return c != 0 ? c < 0 : v < w;
+		}
+
+		/**
+		 * Sorts the touched stops into sorted by their count of shared trigrams.
+		 * @return where each count starts, stops sharing c trigrams are
+		 *         sorted[bucket[c]] .. sorted[bucket[c + 1] - 1]
+		 */
+		int[] byCount(int touched, int distinct) {
+			if (bucket.length < distinct + 2)
+				bucket = new int[distinct + 2];
+			Arrays.fill(bucket, 0, distinct + 2, 0);
+			for (int i = 0; i < touched; i++)
+				bucket[count[this.touched[i]] + 1]++;
+			for (int c = 0; c <= distinct; c++)
+				bucket[c + 1] += bucket[c];
+			for (int i = 0; i < touched; i++) {
+				int stop = this.touched[i];
+				sorted[bucket[count[stop]]++] = stop;
+			}
+			for (int c = distinct; c > 0; c--) // shifted by the fill, shift back
+				bucket[c] = bucket[c - 1];
+			bucket[0] = 0;
+			return bucket;
+		}
+
+		/**
+		 * Collects the distinct trigrams of a query into codes.
+		 * @return their number
+		 */
+		int trigrams(char[] q) {
+			if (codes.length < q.length)
+				codes = new int[q.length];
+			int distinct = 0;
+			next: for (int j = 0; j + 3 <= q.length; j++) {
+				int code = trigram(q, j);
+				for (int i = 0; i < distinct; i++)
+					if (codes[i] == code)
+						continue next;
+				codes[distinct++] = code;
+			}
+			return distinct;
+		}
+
+		/**
+		 * Prepares distance for a pattern of up to 64 characters: bit i of
+		 * peq[symbol] is set where the pattern holds that symbol at i.
+		 */
+		void pattern(char[] pattern) {
+			Arrays.fill(peq, 0);
+			for (int i = 0; i < pattern.length; i++)
+				peq[symbol(pattern[i])] |= 1L << i;
+		}
+
+		/**
+		 * Returns the fewest edits turning the pattern into some substring of the
+		 * text, with Myers' bit-parallel algorithm: one column of the edit
+		 * distance table is kept as the bits of its vertical differences, and
+		 * advanced by a text character in a few word operations.
+		 * @param m is the length of the pattern given to {@code pattern}
+		 * @return the edits
+		 */
+		int distance(char[] text, int m) {
+			long pv = m == 64 ? -1L : (1L << m) - 1, mv = 0, high = 1L << (m - 1);
+			int score = m, best = m;
+			for (int j = 0; j < text.length && best > 0; j++) {
+				long eq = peq[symbol(text[j])];
+				long xv = eq | mv;
+				long xh = (((eq & pv) + pv) ^ pv) | eq;
+				long ph = mv | ~(xh | pv);
+				long mh = pv & xh;
+				if ((ph & high) != 0)
+					score++;
+				else if ((mh & high) != 0)
+					score--;
+				ph <<= 1; // the top row stays zero, a substring may start anywhere
+				mh <<= 1;
+				pv = mh | ~(xv | ph);
+				mv = ph & xv;
+				best = Math.min(best, score);
+			}
+			return best;
+		}
+	}
+
+	private static int words(char[] name) {
+		int words = 0;
+		for (int j = 0; j < name.length; j++)
+			if (j == 0 || name[j - 1] == ' ')
+				words++;
+		return words;
+	}
+
+	private static int compareFrom(char[] a, int i, char[] b, int j) {
+		while (i < a.length && j < b.length) {
+			if (a[i] != b[j])
+				return a[i] - b[j];
+			i++;
+			j++;
+		}
+		return (a.length - i) - (b.length - j);
+	}
+
+	private static boolean contains(char[] text, char[] pattern) {
+		outer: for (int i = 0; i + pattern.length <= text.length; i++) {
+			for (int j = 0; j < pattern.length; j++)
+				if (text[i + j] != pattern[j])
+					continue outer;
+			return true;
+		}
+		return false;
+	}
+
+	private static int trigram(char[] s, int j) {
+		return (symbol(s[j]) * SYMBOLS + symbol(s[j + 1])) * SYMBOLS + symbol(s[j + 2]);
+	}
+
+	private static int symbol(char c) {
+		return c == ' ' ? 0 : c <= '9' ? 27 + c - '0' : 1 + c - 'a';
+	}
+}
@@ -1,17 +1,20 @@
 package api.mbta.com;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import graph.CompiledGraph;
+import graph.ContractionHierarchy;
+import graph.DistanceTable;
 import graph.G;
-import graph.IndexMinPQ;
+import graph.SearchWorkspace;
+import metrics.Histogram;
+import metrics.Metrics;
 
 /**
  * A Graph such that each vertex represents a unique subway stop
@@ -21,15 +24,66 @@ import graph.IndexMinPQ;
  * @author Ivan Chang
  */
 public class SubwayGraph extends G<Stop> {
+
+	/**
+	 * Search strategies for point-to-point shortest path queries. All of them return
+	 * a shortest path; they differ in how many vertices they settle on the way.
+	 */
+	public enum Strategy {
+		/** Dijkstra's algorithm growing outward from the beginning stop. */
+		DIJKSTRA,
+		/** Dijkstra's algorithm from both ends, meeting in the middle. */
+		BIDIRECTIONAL,
+		/** A* guided by the straight-line distance to the destination stop. */
+		ASTAR,
+		/** Upward searches in a contraction hierarchy, built on first use. */
+		CONTRACTION_HIERARCHY
+	}
+
+	// Recorded only if Metrics.ENABLED
+	private static final Histogram BUILD_TIME = Metrics.histogram("graph.build", "ns");
+	private static final Histogram HIERARCHY_TIME = Metrics.histogram("graph.hierarchy.build", "ns");
+	private static final Histogram QUERY_TIME = Metrics.histogram("query.shortestPath", "ns");
+	private static final Histogram QUERY_SETTLED = Metrics.histogram("query.settled", "vertices");
+	private static final Histogram QUERY_DECREASED = Metrics.histogram("query.decreaseKey", "calls");
+	private static final Histogram JOURNEYS_TIME = Metrics.histogram("query.journeys", "ns");
+
 	private List<Route> routes;
+	private volatile Strategy strategy = Strategy.DIJKSTRA;
+
+	// Per-thread search state, so that queries never share mutable state.
+	private final ThreadLocal<SearchWorkspace> workspaces = new ThreadLocal<SearchWorkspace>();
+	private volatile GeoHeuristic geoHeuristic;
+	private volatile AllPairs allPairs; // null unless precomputed
+	private volatile Hierarchy hierarchy; // null until prepared
+	private volatile Raptor raptor; // built on first journey query
+	private volatile StopNames stopNames; // built on first stop name lookup
+	private volatile RouteStats routeStats; // built on first use
 
 	/**
 	 * Initialize the Subway Graph by loading data from Requests,
 	 * which contains HTTP methods to GET data from MBTA api.
 	 */
 	public SubwayGraph() {
-		Requests requests = new Requests("https://api-v3.mbta.com");
-		routes = requests.mbtaStops(requests.subwayRoutes());
+		this(new Requests("https://api-v3.mbta.com"));
+	}
+
+	/**
+	 * Initialize the Subway Graph by loading data with the given Requests,
+	 * e.g. one that caches responses.
+	 * @param requests is the Requests to GET data from MBTA api with
+	 */
+	public SubwayGraph(Requests requests) {
+		this(requests.mbtaStops(requests.subwayRoutes()));
+	}
+
+	/**
+	 * Initialize the Subway Graph from routes that already include their stops.
+	 * @param routes is a list of valid <em>Route</em> objects including stops
+	 */
+	public SubwayGraph(List<Route> routes) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		this.routes = routes;
 		// Add vertices to graph
 		routes.forEach(route -> {
 			route.getStops().forEach(v -> {
@@ -55,6 +109,56 @@ public class SubwayGraph extends G<Stop> {
 		// any edges.
 		G.EdgeLengthFunc<Stop> edgeLength = (v, w) -> 1;
 		this.setEdgeLength(edgeLength);
+		if (Metrics.ENABLED)
+			BUILD_TIME.record(System.nanoTime() - begin);
+	}
+
+	/**
+	 * Initialize the Subway Graph from a snapshot, see <em>GraphSnapshot</em>.
+	 * @param routes is a list of valid <em>Route</em> objects including stops
+	 * @param stops is every subway stop, in vertex index order
+	 * @param adj is the index-based adjacency lists of the graph the snapshot was taken from
+	 * @param len is the index-based edge lengths, parallel to adj
+	 * @param reverseLen is the index-based reverse edge lengths, parallel to adj
+	 */
+	SubwayGraph(List<Route> routes, Stop[] stops, int[][] adj, int[][] len, int[][] reverseLen) {
+		this(routes, stops, adj, len, reverseLen, null);
+	}
+
+	/**
+	 * Initialize the next version of a Subway Graph with the same connections
+	 * between the same stops by vertex index, e.g. after only route names changed,
+	 * see <em>LiveSubwayGraph</em>. The index arrays, the compiled graph and the
+	 * all-pairs table and contraction hierarchy built on it are shared with the
+	 * previous version instead of being built again.
+	 * @param routes is a list of valid <em>Route</em> objects including stops
+	 * @param stops is every subway stop, in the vertex index order of the previous version
+	 * @param previous is the previous version, frozen
+	 */
+	SubwayGraph(List<Route> routes, Stop[] stops, SubwayGraph previous) {
+		this(routes, stops, previous.adjacencyIndex(), previous.edgeLengthIndex(), previous.reverseEdgeLengthIndex(),
+				previous.compile());
+		allPairs = previous.allPairs;
+		hierarchy = previous.hierarchy;
+	}
+
+	private SubwayGraph(List<Route> routes, Stop[] stops, int[][] adj, int[][] len, int[][] reverseLen,
+			CompiledGraph compiled) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		this.routes = routes;
+		// Edge lengths are those stored, edges added later have length 1.
+		G.EdgeLengthFunc<Stop> edgeLength = (v, w) -> {
+			int i = indexOf(v), j = indexOf(w);
+			if (i < adj.length && j < adj.length)
+				for (int k = 0; k < adj[i].length; k++)
+					if (adj[i][k] == j)
+						return len[i][k];
+			return 1;
+		};
+		this.setEdgeLength(edgeLength);
+		this.restore(Arrays.asList(stops), adj, len, reverseLen, compiled);
+		if (Metrics.ENABLED)
+			BUILD_TIME.record(System.nanoTime() - begin);
 	}
 
 	/**
@@ -89,25 +193,28 @@ public class SubwayGraph extends G<Stop> {
 	}
 
 
+	/**
+	 * Returns the route statistics and interchange index for the current state of
+	 * this graph, building them if needed. Safe for concurrent use.
+	 *
+	 * @return the <em>RouteStats</em> of this graph.
+	 */
+	public RouteStats getRouteStats() {
+		RouteStats stats = routeStats;
+		if (stats == null || !stats.isCurrent(this)) {
+			stats = new RouteStats(this);
+			routeStats = stats;
+		}
+		return stats;
+	}
+
 	/**
 	 * Print a list of route names with least number of stops.
 	 *
 	 */
 	public void printRouteWithLeastStops() {
-		List<Route> routes = sortByNumOfStopsIncreasing();
-		if (!routes.isEmpty()) {
-			String long_name = routes.get(0).getLong_name();
-			int numStops = routes.get(0).getNumStops();
-			StdOut(",", long_name, numStops);
-			int i = 1;
-			while (i < routes.size() - 1) {
-				if (numStops == routes.get(i).getNumStops()) {
-					StdOut(",", routes.get(i).getLong_name(), numStops);
-				} else
-					break;
-				i++;
-			}
-		}
+		for (Route route : getRouteStats().getRoutesWithFewestStops())
+			StdOut(",", route.getLong_name(), route.getNumStops());
 	}
 
 	/**
@@ -115,20 +222,8 @@ public class SubwayGraph extends G<Stop> {
 	 *
 	 */
 	public void printRouteWithMostStops() {
-		List<Route> routes = sortByNumOfStopsDecreasing();
-		if (!routes.isEmpty()) {
-			String long_name = routes.get(0).getLong_name();
-			int numStops = routes.get(0).getNumStops();
-			StdOut(",", long_name, numStops);
-			int i = 1;
-			while (i < routes.size() - 1) {
-				if (numStops == routes.get(i).getNumStops()) {
-					StdOut(",", routes.get(i).getLong_name(), numStops);
-				} else
-					break;
-				i++;
-			}
-		}
+		for (Route route : getRouteStats().getRoutesWithMostStops())
+			StdOut(",", route.getLong_name(), route.getNumStops());
 	}
 
 	/**
@@ -136,148 +231,533 @@ public class SubwayGraph extends G<Stop> {
 	 *
 	 */
 	public void printStopsWithTwoOrMoreConnectedRoutes() {
-		List<Stop> stops = sortByConnectsToDecreasing();
-		if (!stops.isEmpty()) {
-			int i = 0;
-			while (i < stops.size()) {
-				Stop stop = stops.get(i);
-				List<Route> routes = stop.getConnectsTo();
-				if (routes.size() <= 1)
-					break;
-				List<String> long_names = routes.stream().map(route -> route.getLong_name())
-						.collect(Collectors.toList());
-				StdOut(",", stop.getName(), long_names);
-				i++;
-			}
+		RouteStats stats = getRouteStats();
+		for (Stop stop : stats.getStopsWithAtLeast(2)) {
+			List<String> long_names = stats.getRoutesThrough(stop).stream().map(route -> route.getLong_name())
+					.collect(Collectors.toList());
+			StdOut(",", stop.getName(), long_names);
 		}
 	}
 
+	/**
+	 * Helper function that matches the name of a subway stop.
+	 * @param name is the name of subway stop (partial match OK)
+	 * @return the subway <em>Stop</em> object best matching the given input name, see
+	 *         <em>StopNameIndex</em>, or <em>null</em> if none matches.
+	 */
+	public Stop matchStopName(String name) {
+		return stopNameIndex().best(name);
+	}
 
 	/**
-	 * Returns a copy of <em>Route</em> objects sorted by increasing number of stops.
-	 *
-	 * @return a list of <em>Route</em> objects sorted by increasing number of stops.
+	 * Finds the subway stops best matching a whole or partial name, e.g. for typeahead.
+	 * Safe for concurrent use.
+	 * @param query is the whole or partial name of a subway stop, misspelt a little OK
+	 * @param k is the most stops to return
+	 * @return up to k subway stops, best match first, see <em>StopNameIndex</em>.
 	 */
-	private List<Route> sortByNumOfStopsIncreasing() {
-		List<Route> copy = new ArrayList<Route>(routes);
-		Collections.sort(copy, (r1, r2) -> r1.getNumStops() - r2.getNumStops());
-		return copy;
+	public List<Stop> searchStops(String query, int k) {
+		return stopNameIndex().search(query, k);
 	}
 
 	/**
-	 * Returns a copy of <em>Route</em> objects sorted by decreasing number of stops.
-	 *
-	 * @return a list of <em>Route</em> objects sorted by decreasing number of stops.
+	 * Returns the stop name index for the current state of this graph, building it if needed.
 	 */
-	private List<Route> sortByNumOfStopsDecreasing() {
-		List<Route> copy = new ArrayList<Route>(routes);
-		Collections.sort(copy, (r1, r2) -> r2.getNumStops() - r1.getNumStops());
-		return copy;
+	private StopNameIndex stopNameIndex() {
+		StopNames names = stopNames;
+		if (names == null || !names.isCurrent(this)) {
+			names = new StopNames(this);
+			stopNames = names;
+		}
+		return names.index;
 	}
 
 	/**
-	 * Returns a copy of <em>Stop</em> objects sorted by decreasing number of connecting routes.
-	 *
-	 * @return a copy of <em>Stop</em> objects sorted by decreasing number of connecting routes.
+	 * A stop name index together with the compiled graph it was built from.
 	 */
-	private  List<Stop> sortByConnectsToDecreasing() {
-		List<Route> copy = new ArrayList<Route>(routes);
-		Set<Stop> setOfStops = new HashSet<Stop>();
-		for (Route route : copy) {
-			setOfStops.addAll(route.getStops());
+	private static final class StopNames {
+		private final CompiledGraph graph;
+		private final StopNameIndex index;
+
+		StopNames(SubwayGraph g) {
+			graph = g.compile();
+			List<Stop> stops = new ArrayList<Stop>(g.getNumVertices());
+			for (int v = 0; v < g.getNumVertices(); v++)
+				stops.add(g.vertexAt(v));
+			index = new StopNameIndex(stops);
+		}
+
+		boolean isCurrent(SubwayGraph g) {
+			return graph == g.compile();
 		}
-		List<Stop> stops = new ArrayList<Stop>(setOfStops);
-		Collections.sort(stops, (s1, s2) -> s2.getNumOfConnections() - s1.getNumOfConnections());
-		return stops;
 	}
 
 	/**
-	 * Helper function that matches the name of a subway stop.
-	 * @param name is the name of subway stop (partial match OK)
-	 * @return a subway <em>Stop</em> object matching the given input name.
+	 * Finds the shortest path between two subway stops on this Subway Graph using the
+	 * precomputed all-pairs table if there is one, otherwise the current search strategy.
+	 * Neither the graph nor the <em>Stop</em> objects are modified, so any number of
+	 * threads may query the same Subway Graph at the same time.
+	 * @param start is the beginning subway stop
+	 * @param goal is the destination subway stop
+	 * @return an immutable <em>Path</em>, returns a <em>null</em> if path not exists.
 	 */
-	public Stop matchStopName(String name) {
-		name = Objects.toString(name, "");
-		if (name.length() == 0)
-			return null;
-		Iterator<Stop> it = iterator();
-		// int i = 0;
-		while (it.hasNext()) {
-			Stop s = it.next();
-			if (s.getName().toLowerCase().contains(name.toLowerCase())) {
-				// System.out.println(s.getName() + " Key Index " + i);
-				return s;
+	public Path shortestPath(Stop start, Stop goal) {
+		AllPairs allPairs = this.allPairs;
+		if (allPairs == null || !allPairs.isCurrent(this))
+			return shortestPath(start, goal, strategy);
+		if (!Metrics.ENABLED)
+			return lookup(allPairs.table, start, goal);
+		long begin = System.nanoTime();
+		Path path = lookup(allPairs.table, start, goal);
+		QUERY_TIME.record(System.nanoTime() - begin);
+		QUERY_SETTLED.record(0); // a lookup settles no vertices
+		QUERY_DECREASED.record(0);
+		return path;
+	}
+
+	private Path lookup(DistanceTable table, Stop start, Stop goal) {
+		int s = indexOf(start);
+		int t = indexOf(goal);
+		int[] path = table.path(s, t);
+		return path == null ? null : new Path(this, path, table.distance(s, t), 0);
+	}
+
+	/**
+	 * Precomputes the shortest path distances and next hops between all pairs of subway stops,
+	 * running one search per stop in parallel. Afterwards {@code shortestPath(Stop, Stop)} answers
+	 * queries by following next hops in time proportional to the path length, until the graph
+	 * is modified. Meant for small networks, the table takes 8 bytes per pair of stops.
+	 * @throws IllegalArgumentException if the graph has more than <em>DistanceTable.MAX_VERTICES</em> stops
+	 */
+	public void precomputeAllPairs() {
+		allPairs = new AllPairs(this);
+	}
+
+	/**
+	 * @return true if queries are currently answered from a precomputed all-pairs table
+	 */
+	public boolean hasAllPairs() {
+		AllPairs allPairs = this.allPairs;
+		return allPairs != null && allPairs.isCurrent(this);
+	}
+
+	/**
+	 * @return true if a contraction hierarchy for the current state of this graph is prepared
+	 */
+	boolean hasContractionHierarchy() {
+		Hierarchy h = hierarchy;
+		return h != null && h.isCurrent(this);
+	}
+
+	/**
+	 * Builds the contraction hierarchy used by the <em>CONTRACTION_HIERARCHY</em> strategy.
+	 * Preprocessing takes much longer than a single search but makes every later query
+	 * settle only a small fraction of the stops. The hierarchy is rebuilt on the next
+	 * query after the graph is modified.
+	 * @return the contraction hierarchy
+	 */
+	public ContractionHierarchy prepareContractionHierarchy() {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		Hierarchy h = new Hierarchy(this);
+		hierarchy = h;
+		if (Metrics.ENABLED)
+			HIERARCHY_TIME.record(System.nanoTime() - begin);
+		return h.ch;
+	}
+
+	/**
+	 * Returns the contraction hierarchy for the current state of this graph, preparing it if needed.
+	 */
+	private ContractionHierarchy contractionHierarchy() {
+		Hierarchy h = hierarchy;
+		if (h == null || !h.isCurrent(this)) {
+			synchronized (this) {
+				h = hierarchy;
+				if (h == null || !h.isCurrent(this))
+					return prepareContractionHierarchy();
 			}
-			// i++;
 		}
-		return null;
+		return h.ch;
 	}
 
 	/**
-	 * Dijkstra algorithm that finds the shortest path between two subway stops on a given Subway Graph.
+	 * A contraction hierarchy together with the compiled graph it was built from.
+	 */
+	private static final class Hierarchy {
+		private final CompiledGraph graph;
+		private final ContractionHierarchy ch;
+
+		Hierarchy(SubwayGraph g) {
+			graph = g.compile();
+			ch = ContractionHierarchy.build(graph);
+		}
+
+		boolean isCurrent(SubwayGraph g) {
+			return graph == g.compile();
+		}
+	}
+
+	/**
+	 * A distance table together with the compiled graph it was built from.
+	 */
+	private static final class AllPairs {
+		private final CompiledGraph graph;
+		private final DistanceTable table;
+
+		AllPairs(SubwayGraph g) {
+			graph = g.compile();
+			table = DistanceTable.build(graph);
+		}
+
+		boolean isCurrent(SubwayGraph g) {
+			return graph == g.compile();
+		}
+	}
+
+	/**
+	 * Finds the shortest path between two subway stops on this Subway Graph.
+	 * Safe for concurrent use, see {@code shortestPath(Stop, Stop)}.
 	 * @param start is the beginning subway stop
 	 * @param goal is the destination subway stop
-	 * @return a Subway <em>Stop</em> object with <em>prev</em> populated for reconstructing the path through recursive backtracking, returns a <em>null</em> if path not exists.
+	 * @param strategy is the search strategy to use
+	 * @return an immutable <em>Path</em>, returns a <em>null</em> if path not exists.
 	 */
-	public Stop Dijkstra(Stop start, Stop goal) {
-		List<Stop> allStops = new ArrayList<Stop>();
-		iterator().forEachRemaining(s -> {
-			if (s == start) {
-				s.setDistance(0);
-			} else {
-				s.setDistance(Integer.MAX_VALUE / 2);
-			}
-			s.setPrev(null);
-			allStops.add(s);
-		});
+	public Path shortestPath(Stop start, Stop goal, Strategy strategy) {
+		if (!Metrics.ENABLED)
+			return search(start, goal, strategy);
+		long begin = System.nanoTime();
+		Path path = search(start, goal, strategy);
+		QUERY_TIME.record(System.nanoTime() - begin);
+		SearchWorkspace ws = workspace();
+		QUERY_SETTLED.record(ws.settled());
+		QUERY_DECREASED.record(ws.decreased());
+		return path;
+	}
 
-		IndexMinPQ<Stop> pq = new IndexMinPQ<Stop>(getNumVertices());
-		for (int i = 0; i < allStops.size(); i++) {
-			pq.insert(i, allStops.get(i));
+	private Path search(Stop start, Stop goal, Strategy strategy) {
+		int s = indexOf(start);
+		int t = indexOf(goal);
+		CompiledGraph graph = compile();
+		SearchWorkspace ws = workspace();
+		boolean found;
+		switch (strategy) {
+		case BIDIRECTIONAL:
+			found = ws.bidirectional(graph, s, t);
+			break;
+		case ASTAR:
+			GeoHeuristic geo = geoHeuristic();
+			found = ws.astar(graph, s, t, v -> geo.estimate(v, t));
+			break;
+		case CONTRACTION_HIERARCHY:
+			int[] path = contractionHierarchy().shortestPath(ws, s, t);
+			return path == null ? null : new Path(this, path, ws.distance(), ws.settled());
+		default:
+			found = ws.dijkstra(graph, s, t);
 		}
+		if (!found)
+			return null;
+		return new Path(this, ws.path(), ws.distance(), ws.settled());
+	}
+
+	/**
+	 * Finds the journeys between two subway stops that are best for some trade-off
+	 * between stops travelled and transfers between routes, i.e. the Pareto set.
+	 * Unlike {@code shortestPath} this counts the transfers, so a journey never hops
+	 * between routes only to save a stop without accounting for it.
+	 * Safe for concurrent use.
+	 * @param start is the beginning subway stop
+	 * @param goal is the destination subway stop
+	 * @return the journeys ordered by increasing transfers and decreasing stops travelled,
+	 *         empty if no journey exists.
+	 */
+	public List<Journey> journeys(Stop start, Stop goal) {
+		return journeys(start, goal, Integer.MAX_VALUE - 1);
+	}
+
+	/**
+	 * Finds the Pareto set of journeys between two subway stops, see {@code journeys(Stop, Stop)},
+	 * with at most <em>maxTransfers</em> transfers.
+	 * @param start is the beginning subway stop
+	 * @param goal is the destination subway stop
+	 * @param maxTransfers is the largest number of transfers allowed
+	 * @return the journeys ordered by increasing transfers and decreasing stops travelled,
+	 *         empty if no journey exists.
+	 */
+	public List<Journey> journeys(Stop start, Stop goal, int maxTransfers) {
+		if (maxTransfers < 0)
+			throw new IllegalArgumentException("maxTransfers " + maxTransfers + " is negative");
+		int s = indexOf(start);
+		int t = indexOf(goal);
+		if (!Metrics.ENABLED)
+			return raptor().journeys(s, t, maxTransfers);
+		long begin = System.nanoTime();
+		List<Journey> journeys = raptor().journeys(s, t, maxTransfers);
+		JOURNEYS_TIME.record(System.nanoTime() - begin);
+		return journeys;
+	}
 
-		while (!pq.isEmpty()) {
-			int min = pq.delMin();
-			Stop u = allStops.get(min);
-			if (u == goal) {
-				System.out.println("Found path from " + start.getName() + " -> " + goal.getName());
-				return u;
+	private Raptor raptor() {
+		Raptor r = raptor;
+		if (r == null || !r.isCurrent(this)) {
+			synchronized (this) {
+				r = raptor;
+				if (r == null || !r.isCurrent(this))
+					raptor = r = new Raptor(this);
 			}
-			Set<Stop> neighbors = getNeighbors(u);
-			neighbors.forEach(v -> {
-				if (v.getDistance() > u.getDistance() + getEdgeLength().edgeLength(u, v)) {
-					v.setDistance(u.getDistance() + getEdgeLength().edgeLength(u, v));
-					v.setPrev(u);
-					pq.decreaseKey(allStops.indexOf(v), v, true);
-				} else {
+		}
+		return r;
+	}
 
-				}
+	/**
+	 * Finds the distances from one subway stop to many others with a single search that
+	 * stops as soon as every destination is settled. Safe for concurrent use.
+	 * @param origin is the beginning subway stop
+	 * @param destinations is a list of destination subway stops
+	 * @return the distance to each destination, in the same order, -1 where no path exists.
+	 */
+	public int[] distances(Stop origin, List<Stop> destinations) {
+		int s = indexOf(origin);
+		int[] targets = indicesOf(destinations);
+		AllPairs allPairs = this.allPairs;
+		int[] result = new int[targets.length];
+		if (allPairs != null && allPairs.isCurrent(this)) {
+			for (int j = 0; j < targets.length; j++)
+				result[j] = allPairs.table.distance(s, targets[j]);
+		} else {
+			SearchWorkspace ws = workspace();
+			ws.oneToMany(compile(), s, targets);
+			for (int j = 0; j < targets.length; j++)
+				result[j] = ws.dist(targets[j]);
+		}
+		return unreachableAsMinusOne(result);
+	}
+
+	/**
+	 * Finds the shortest paths from one subway stop to many others with a single search that
+	 * stops as soon as every destination is settled. Safe for concurrent use.
+	 * @param origin is the beginning subway stop
+	 * @param destinations is a list of destination subway stops
+	 * @return the path to each destination, in the same order, <em>null</em> where no path exists.
+	 */
+	public List<Path> shortestPaths(Stop origin, List<Stop> destinations) {
+		int s = indexOf(origin);
+		int[] targets = indicesOf(destinations);
+		SearchWorkspace ws = workspace();
+		ws.oneToMany(compile(), s, targets);
+		int settled = ws.settled();
+		List<Path> paths = new ArrayList<Path>(targets.length);
+		for (int t : targets) {
+			int d = ws.dist(t);
+			paths.add(d == SearchWorkspace.INFINITY ? null : new Path(this, ws.pathTo(t), d, settled));
+		}
+		return paths;
+	}
+
+	/**
+	 * Finds the distances between every pair of origin and destination subway stops.
+	 * Uses the all-pairs table if precomputed, otherwise bucket-based many-to-many
+	 * searches in the contraction hierarchy if prepared, otherwise one search per
+	 * origin in parallel. Safe for concurrent use.
+	 * @param origins is a list of beginning subway stops
+	 * @param destinations is a list of destination subway stops
+	 * @return the matrix of distances, [i][j] from origin i to destination j, -1 where no path exists.
+	 */
+	public int[][] distanceMatrix(List<Stop> origins, List<Stop> destinations) {
+		int[] sources = indicesOf(origins);
+		int[] targets = indicesOf(destinations);
+		AllPairs allPairs = this.allPairs;
+		Hierarchy hierarchy = this.hierarchy;
+		int[][] matrix;
+		if (allPairs != null && allPairs.isCurrent(this)) {
+			matrix = new int[sources.length][targets.length];
+			for (int i = 0; i < sources.length; i++)
+				for (int j = 0; j < targets.length; j++)
+					matrix[i][j] = allPairs.table.distance(sources[i], targets[j]);
+		} else if (hierarchy != null && hierarchy.isCurrent(this)) {
+			matrix = hierarchy.ch.manyToMany(workspace(), sources, targets);
+		} else {
+			CompiledGraph graph = compile();
+			int[][] rows = new int[sources.length][];
+			IntStream.range(0, sources.length).parallel().forEach(i -> {
+				SearchWorkspace ws = workspace();
+				ws.oneToMany(graph, sources[i], targets);
+				int[] row = new int[targets.length];
+				for (int j = 0; j < targets.length; j++)
+					row[j] = ws.dist(targets[j]);
+				rows[i] = row;
 			});
+			matrix = rows;
 		}
+		for (int[] row : matrix)
+			unreachableAsMinusOne(row);
+		return matrix;
+	}
+
+	private int[] indicesOf(List<Stop> stops) {
+		int[] indices = new int[stops.size()];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = indexOf(stops.get(i));
+		return indices;
+	}
 
-		System.out.println("Failed to find path from " + start.getName() + " -> " + goal.getName());
-		return null;
+	private static int[] unreachableAsMinusOne(int[] distances) {
+		for (int i = 0; i < distances.length; i++)
+			if (distances[i] >= SearchWorkspace.INFINITY)
+				distances[i] = -1;
+		return distances;
 	}
 
 	/**
-	 * Helper method for printing path.
-	 * @param path is the destination stop with backtracking information.
+	 * @return the search strategy used by {@code shortestPath(Stop, Stop)}
 	 */
-	public void printPath(Stop path) {
-		printPath_aux(path);
-		System.out.println();
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	public void setStrategy(Strategy strategy) {
+		this.strategy = Objects.requireNonNull(strategy);
+	}
+
+	/**
+	 * Returns the search workspace of the calling thread, sized for this graph.
+	 */
+	private SearchWorkspace workspace() {
+		SearchWorkspace ws = workspaces.get();
+		if (ws == null || ws.capacity() != getNumVertices()) {
+			ws = new SearchWorkspace(getNumVertices());
+			workspaces.set(ws);
+		}
+		return ws;
+	}
+
+	/**
+	 * Returns the A* heuristic for the current state of this graph.
+	 */
+	private GeoHeuristic geoHeuristic() {
+		GeoHeuristic geo = geoHeuristic;
+		if (geo == null || !geo.isCurrent(this)) {
+			geo = new GeoHeuristic(this);
+			geoHeuristic = geo;
+		}
+		return geo;
+	}
+
+	/**
+	 * A lower bound on the remaining path length derived from stop coordinates.
+	 * Every stop is mapped to a point in 3D space on the unit sphere. The straight-line
+	 * distance between two points divided by the largest straight-line distance per
+	 * unit of edge length found on any edge can never exceed the remaining path length,
+	 * and by the triangle inequality it is consistent. If any stop has no coordinates
+	 * the estimate is always 0, which makes A* behave like Dijkstra.
+	 */
+	private static final class GeoHeuristic {
+		private final CompiledGraph graph; // this heuristic was built from
+		private final double[] x, y, z;
+		private final double unitsPerChord; // 0 when no usable coordinates
+
+		GeoHeuristic(SubwayGraph g) {
+			graph = g.compile();
+			int n = g.getNumVertices();
+			x = new double[n];
+			y = new double[n];
+			z = new double[n];
+			boolean located = true;
+			for (int v = 0; v < n; v++) {
+				Stop stop = g.vertexAt(v);
+				located &= stop.hasLocation();
+				double lat = Math.toRadians(stop.getLatitude()), lon = Math.toRadians(stop.getLongitude());
+				x[v] = Math.cos(lat) * Math.cos(lon);
+				y[v] = Math.cos(lat) * Math.sin(lon);
+				z[v] = Math.sin(lat);
+			}
+			double maxChordPerUnit = 0;
+			for (int u = 0; located && u < n; u++) {
+				for (int k = graph.begin(u); k < graph.end(u); k++) {
+					double c = chord(u, graph.target(k));
+					int len = graph.weight(k);
+					maxChordPerUnit = Math.max(maxChordPerUnit, len == 0 ? Double.POSITIVE_INFINITY : c / len);
+				}
+			}
+			unitsPerChord = located && maxChordPerUnit > 0 && maxChordPerUnit < Double.POSITIVE_INFINITY
+					? 1 / maxChordPerUnit : 0;
+		}
+
+		boolean isCurrent(SubwayGraph g) {
+			return graph == g.compile();
+		}
+
+		private double chord(int v, int w) {
+			double dx = x[v] - x[w], dy = y[v] - y[w], dz = z[v] - z[w];
+			return Math.sqrt(dx * dx + dy * dy + dz * dz);
+		}
+
+		int estimate(int v, int t) {
+			return unitsPerChord == 0 ? 0 : (int) (chord(v, t) * unitsPerChord);
+		}
+	}
+
+	/**
+	 * Dijkstra algorithm that finds the shortest path between two subway stops on a given Subway Graph.
+	 * @param start is the beginning subway stop
+	 * @param goal is the destination subway stop
+	 * @return a Subway <em>Stop</em> object with <em>prev</em> populated for reconstructing the path through recursive backtracking, returns a <em>null</em> if path not exists.
+	 * @deprecated Writes the result onto the shared <em>Stop</em> objects and is therefore not safe for
+	 * concurrent use. Replaced by {@code shortestPath(Stop, Stop)}.
+	 */
+	@Deprecated
+	public Stop Dijkstra(Stop start, Stop goal) {
+		Path path = shortestPath(start, goal);
+		if (path == null) {
+			System.out.println("Failed to find path from " + start.getName() + " -> " + goal.getName());
+			return null;
+		}
+		System.out.println("Found path from " + start.getName() + " -> " + goal.getName());
+		Stop prev = null;
+		for (Stop stop : path.getStops()) {
+			stop.setDistance(prev == null ? 0 : prev.getDistance() + getEdgeLength().edgeLength(prev, stop));
+			stop.setPrev(prev);
+			prev = stop;
+		}
+		return prev;
+	}
+
+	/**
+	 * Helper method for printing path, naming the route ridden wherever a leg boards.
+	 * @param path is a path returned by <em>shortestPath</em>.
+	 */
+	public void printPath(Path path) {
+		List<Stop> boarding = path.getBoardingStops();
+		List<Route> routes = path.getRoutes();
+		StringBuilder sb = new StringBuilder();
+		int leg = 0;
+		for (Stop stop : path.getStops()) {
+			sb.append(" -> ").append(stop.getName());
+			if (leg < boarding.size() && boarding.get(leg) == stop) {
+				Route route = routes.get(leg++);
+				sb.append(" [").append(route == null ? "no route" : route.getLong_name()).append(']');
+			}
+		}
+		System.out.println(sb);
 	}
 
 	/**
 	 * Helper method for printing path.
 	 * @param path is the destination stop with backtracking information.
+	 * @deprecated Goes with {@code Dijkstra(Stop, Stop)}. Replaced by {@code printPath(Path)}.
 	 */
-	private void printPath_aux(Stop path) {
-		if (path.getPrev() != null) {
-			printPath_aux(path.getPrev());
-		}
-		System.out.print(" -> " + path.getName() + " "
-				+ path.getConnectsTo().stream().map(r -> r.getLong_name()).collect(Collectors.toList()).toString());
+	@Deprecated
+	public void printPath(Stop path) {
+		List<Stop> stops = new ArrayList<Stop>();
+		for (Stop stop = path; stop != null; stop = stop.getPrev())
+			stops.add(stop);
+		for (int i = stops.size() - 1; i >= 0; i--)
+			printStop(stops.get(i));
+		System.out.println();
+	}
+
+	private void printStop(Stop stop) {
+		System.out.print(" -> " + stop.getName() + " " + getRouteStats().getRoutesThrough(stop).stream()
+				.map(r -> r.getLong_name()).collect(Collectors.toList()).toString());
 	}
 
 	private void StdOut(String sep, Object... x) {
@@ -0,0 +1,277 @@
+package api.mbta.com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A <em>Timetable</em> of scheduled subway connections answering earliest arrival
+ * queries with the Connection Scan Algorithm. A connection is one vehicle running
+ * from a stop to the next stop of its trip. Connections are kept in flat arrays
+ * sorted by departure time, so a query is a single forward scan over primitive
+ * arrays that allocates nothing until the itinerary is built.
+ *
+ * Times are seconds after midnight of the service day and may exceed 24 hours
+ * for trips running past midnight, as in GTFS. A Timetable is immutable and
+ * safe for concurrent queries; per-query state is kept per thread.
+ *
+ * @author Ivan Chang
+ */
+public final class Timetable {
+	private static final int NEVER = Integer.MAX_VALUE;
+
+	private final Stop[] stops;
+	private final Map<Stop, Integer> indexOf;
+	private final Route[] tripRoute;
+
+	// Connection c runs trip[c] from depStop[c] at depTime[c] to arrStop[c] at arrTime[c]
+	private final int[] depStop;
+	private final int[] arrStop;
+	private final int[] depTime;
+	private final int[] arrTime;
+	private final int[] trip;
+
+	private final ThreadLocal<State> states = new ThreadLocal<State>();
+
+	private Timetable(Builder b) {
+		this.stops = b.stops.toArray(new Stop[0]);
+		this.indexOf = new HashMap<Stop, Integer>(b.indexOf);
+		this.tripRoute = b.tripRoute.toArray(new Route[0]);
+		int m = b.size;
+
+		// Sort by departure time, keeping insertion order between equal departures
+		// so that the connections of a trip stay in order.
+		long[] keys = new long[m];
+		for (int c = 0; c < m; c++)
+			keys[c] = (long) b.depTime[c] << 32 | c;
+		Arrays.sort(keys);
+		depStop = new int[m];
+		arrStop = new int[m];
+		depTime = new int[m];
+		arrTime = new int[m];
+		trip = new int[m];
+		for (int i = 0; i < m; i++) {
+			int c = (int) keys[i];
+			depStop[i] = b.depStop[c];
+			arrStop[i] = b.arrStop[c];
+			depTime[i] = b.depTime[c];
+			arrTime[i] = b.arrTime[c];
+			trip[i] = b.trip[c];
+		}
+	}
+
+	/**
+	 * @return the number of connections in this Timetable
+	 */
+	public int size() {
+		return depTime.length;
+	}
+
+	/**
+	 * @return the number of trips in this Timetable
+	 */
+	public int getNumTrips() {
+		return tripRoute.length;
+	}
+
+	/**
+	 * @return the subway stops served by this Timetable. The list cannot be modified.
+	 */
+	public List<Stop> getStops() {
+		return Collections.unmodifiableList(Arrays.asList(stops));
+	}
+
+	/**
+	 * Finds the earliest time one can arrive at a subway stop when leaving another
+	 * no earlier than a given time.
+	 * @param from is the beginning subway stop
+	 * @param to is the destination subway stop
+	 * @param departure is the earliest departure, in seconds after midnight
+	 * @return the earliest arrival in seconds after midnight, -1 if the destination cannot be reached.
+	 */
+	public int earliestArrival(Stop from, Stop to, int departure) {
+		Integer s = indexOf.get(from), t = indexOf.get(to);
+		if (s == null || t == null)
+			return from == to ? departure : -1;
+		int arrival = state().scan(s, t, departure);
+		return arrival == NEVER ? -1 : arrival;
+	}
+
+	/**
+	 * Finds the itinerary arriving earliest at a subway stop when leaving another
+	 * no earlier than a given time.
+	 * @param from is the beginning subway stop
+	 * @param to is the destination subway stop
+	 * @param departure is the earliest departure, in seconds after midnight
+	 * @return an immutable <em>Itinerary</em>, returns a <em>null</em> if the destination cannot be reached.
+	 */
+	public Itinerary itinerary(Stop from, Stop to, int departure) {
+		Integer s = indexOf.get(from), t = indexOf.get(to);
+		if (s == null || t == null)
+			return from == to ? new Itinerary(from, departure, Collections.<Itinerary.Leg>emptyList()) : null;
+		State state = state();
+		if (state.scan(s, t, departure) == NEVER)
+			return null;
+		List<Itinerary.Leg> legs = new ArrayList<Itinerary.Leg>();
+		for (int v = t; v != s; ) {
+			int enter = state.enter[v], exit = state.exit[v];
+			legs.add(new Itinerary.Leg(tripRoute[trip[enter]], stops[depStop[enter]], depTime[enter], stops[arrStop[exit]],
+					arrTime[exit]));
+			v = depStop[enter];
+		}
+		Collections.reverse(legs);
+		return new Itinerary(from, departure, legs);
+	}
+
+	private State state() {
+		State state = states.get();
+		if (state == null) {
+			state = new State();
+			states.set(state);
+		}
+		return state;
+	}
+
+	/**
+	 * Per-thread query state.
+	 */
+	private final class State {
+		private final int[] earliest = new int[stops.length]; // earliest arrival at each stop
+		private final int[] enter = new int[stops.length]; // connection boarding the trip reaching each stop
+		private final int[] exit = new int[stops.length]; // connection alighting at each stop
+		private final int[] boarded = new int[tripRoute.length]; // connection boarding each trip, -1 if not reachable
+
+		/**
+		 * Scans the connections departing from <em>departure</em> on until none can
+		 * improve the arrival at <em>t</em>.
+		 * @return the earliest arrival at t, NEVER if not reachable
+		 */
+		int scan(int s, int t, int departure) {
+			Arrays.fill(earliest, NEVER);
+			Arrays.fill(boarded, -1);
+			earliest[s] = departure;
+			if (s == t)
+				return departure;
+
+			int m = depTime.length;
+			for (int c = firstDeparture(departure); c < m; c++) {
+				if (depTime[c] >= earliest[t])
+					break; // no later connection arrives earlier
+				int tr = trip[c];
+				if (boarded[tr] == -1) {
+					if (earliest[depStop[c]] > depTime[c])
+						continue;
+					boarded[tr] = c;
+				}
+				int v = arrStop[c];
+				if (arrTime[c] < earliest[v]) {
+					earliest[v] = arrTime[c];
+					enter[v] = boarded[tr];
+					exit[v] = c;
+				}
+			}
+			return earliest[t];
+		}
+	}
+
+	/**
+	 * @return the first connection departing at or after <em>time</em>
+	 */
+	private int firstDeparture(int time) {
+		int lo = 0, hi = depTime.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (depTime[mid] < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Parses a GTFS time of the form H:MM:SS or HH:MM:SS, possibly past 24:00:00.
+	 * @param time is the time to parse
+	 * @return the number of seconds after midnight.
+	 */
+	public static int parseTime(String time) {
+		String[] parts = time.trim().split(":");
+		if (parts.length != 3)
+			throw new IllegalArgumentException("time " + time + " is not of the form HH:MM:SS");
+		return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60 + Integer.parseInt(parts[2]);
+	}
+
+	/**
+	 * @param seconds is a number of seconds after midnight
+	 * @return the time of the form HH:MM:SS.
+	 */
+	public static String formatTime(int seconds) {
+		return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+
+	/**
+	 * Collects the connections of a Timetable one trip at a time.
+	 */
+	public static final class Builder {
+		private final List<Stop> stops = new ArrayList<Stop>();
+		private final Map<Stop, Integer> indexOf = new HashMap<Stop, Integer>();
+		private final List<Route> tripRoute = new ArrayList<Route>();
+		private int[] depStop = new int[1024], arrStop = new int[1024], depTime = new int[1024], arrTime = new int[1024],
+				trip = new int[1024];
+		private int size;
+
+		/**
+		 * Adds a trip, i.e. one vehicle serving some stops of a route in order.
+		 * @param route is the route of the trip
+		 * @param tripStops is the subway stops served, in order
+		 * @param arrivals is the arrival at each stop, in seconds after midnight
+		 * @param departures is the departure from each stop, in seconds after midnight
+		 * @return this Builder.
+		 */
+		public Builder addTrip(Route route, List<Stop> tripStops, int[] arrivals, int[] departures) {
+			int k = tripStops.size();
+			if (arrivals.length != k || departures.length != k)
+				throw new IllegalArgumentException("a trip needs an arrival and a departure for each of its " + k + " stops");
+			int tr = tripRoute.size();
+			tripRoute.add(route);
+			for (int i = 0; i + 1 < k; i++) {
+				if (arrivals[i + 1] < departures[i])
+					throw new IllegalArgumentException("trip arrives at " + tripStops.get(i + 1).getName()
+							+ " before it departs from " + tripStops.get(i).getName());
+				if (size == depStop.length) {
+					depStop = Arrays.copyOf(depStop, 2 * size);
+					arrStop = Arrays.copyOf(arrStop, 2 * size);
+					depTime = Arrays.copyOf(depTime, 2 * size);
+					arrTime = Arrays.copyOf(arrTime, 2 * size);
+					trip = Arrays.copyOf(trip, 2 * size);
+				}
+				depStop[size] = index(tripStops.get(i));
+				arrStop[size] = index(tripStops.get(i + 1));
+				depTime[size] = departures[i];
+				arrTime[size] = arrivals[i + 1];
+				trip[size++] = tr;
+			}
+			return this;
+		}
+
+		private int index(Stop stop) {
+			Integer i = indexOf.get(stop);
+			if (i == null) {
+				i = stops.size();
+				stops.add(stop);
+				indexOf.put(stop, i);
+			}
+			return i;
+		}
+
+		/**
+		 * @return a Timetable of the trips added so far
+		 */
+		public Timetable build() {
+			return new Timetable(this);
+		}
+	}
+}
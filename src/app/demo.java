@@ -1,7 +1,20 @@
 package app;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import api.mbta.com.GraphSnapshot;
+import api.mbta.com.GtfsLoader;
+import api.mbta.com.Journey;
+import api.mbta.com.Path;
+import api.mbta.com.Requests;
 import api.mbta.com.Stop;
 import api.mbta.com.SubwayGraph;
+import api.mbta.com.Timetable;
+import client.ResponseCache;
+import metrics.Metrics;
 
 /**
  * This is the main demo.
@@ -10,8 +23,22 @@ import api.mbta.com.SubwayGraph;
  */
 public class demo {
 
-	public static void main(String[] args) {
-		SubwayGraph g = new SubwayGraph();
+	public static void main(String[] args) throws IOException {
+		// Load from the live MBTA api, or offline from a GTFS feed if one is given.
+		// With -Dsnapshot=file, the api is only called when the snapshot is over a day old.
+		// With -Dcache=directory, api responses are cached and revalidated.
+		String snapshot = System.getProperty("snapshot");
+		String cache = System.getProperty("cache");
+		Requests requests = new Requests("https://api-v3.mbta.com");
+		if (cache != null)
+			requests.setCache(new ResponseCache(new File(cache), Long.getLong("cache.size", 64L << 20)));
+		SubwayGraph g;
+		if (args.length > 0)
+			g = new SubwayGraph(new GtfsLoader(new File(args[0])).subwayRoutes());
+		else if (snapshot != null)
+			g = GraphSnapshot.load(new File(snapshot), TimeUnit.DAYS.toMillis(1), () -> new SubwayGraph(requests));
+		else
+			g = new SubwayGraph(requests);
 
 		// Question 1: All type 0, 1 "subway" routes.
 		// We use filter[type]=0,1 to limit our search.
@@ -44,34 +71,61 @@ public class demo {
 		System.out.println("We have a sparse graph as |E| ~ |V|!");
 		System.out.println();
 
+		// The subway network is small enough to precompute all shortest paths,
+		// which turns every query below into a table lookup.
+		g.precomputeAllPairs();
+
 		// Question 3: Find a feasible rail path connecting any given two stops.
 		// In this demo, we consider two examples: 
 		// The first example finds a path connecting Davis and Kendall Sq/MIT
 		// The second example finds a path connecting Ashmont and Arlington
 		// We present the full path in the form
-		//    Beginning Subway stop name [a set of connecting routes]
-		// -> Next Subway stop name [a set of connecting routes]
+		//    Beginning Subway stop name [route ridden]
+		// -> Next Subway stop name
+		// -> Transfer Subway stop name [next route ridden]
 		// -> ......
-		// -> Destination Subway stop name [a set of connecting routes]
-		// It is clear we could compute the union of all the intersections between neighboring sets of connecting routes
-		// to obtain the set of valid connection routes.
+		// -> Destination Subway stop name
+		// where the routes come from intersecting the sets of connecting routes of neighboring stops.
 		Stop Davis = g.matchStopName("Davis");
 		Stop Kendall = g.matchStopName("Kendall");
 		Stop Ashmont = g.matchStopName("Ashmont");
 		Stop Arlington = g.matchStopName("Arlington");
 
 		// Run Dijkstra algorithm to find path between Davis and Kendall
-		Stop davis_mit = g.Dijkstra(Davis, Kendall);
-		if (davis_mit != null) {
-			g.printPath(davis_mit);
-		}
+		findPath(g, Davis, Kendall);
 
 		System.out.println();
 		
 		// Run Dijkstra algorithm to find path between Ashmont and Arlington
-		Stop ash_arl = g.Dijkstra(Ashmont, Arlington);
-		if (ash_arl != null) {
-			g.printPath(ash_arl);
+		findPath(g, Ashmont, Arlington);
+
+		// With a GTFS feed, also find the scheduled itineraries arriving earliest
+		// when leaving at 08:00 today.
+		if (args.length > 0) {
+			Timetable timetable = new GtfsLoader(new File(args[0])).subwayTimetable(g.getRoutes(), LocalDate.now());
+			int departure = Timetable.parseTime("08:00:00");
+			System.out.println();
+			System.out.println(timetable.itinerary(Davis, Kendall, departure));
+			System.out.println(timetable.itinerary(Ashmont, Arlington, departure));
+		}
+
+		// With -Dmbta.metrics=true, report what fetching, building and routing took
+		if (Metrics.ENABLED) {
+			System.out.println();
+			System.out.print(Metrics.dump());
+		}
+	}
+
+	private static void findPath(SubwayGraph g, Stop start, Stop goal) {
+		Path path = g.shortestPath(start, goal);
+		if (path != null) {
+			System.out.println("Found path from " + start.getName() + " -> " + goal.getName());
+			g.printPath(path);
+			// Journeys trading stops travelled against transfers between routes
+			for (Journey journey : g.journeys(start, goal))
+				System.out.println(journey.getTransfers() + " transfer(s), " + journey.getStopsTravelled() + " stops: " + journey);
+		} else {
+			System.out.println("Failed to find path from " + start.getName() + " -> " + goal.getName());
 		}
 	}
 
@@ -0,0 +1,145 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import metrics.Metrics;
+
+/**
+ * Load test: many threads fire a mixed workload of queries at one shared
+ * <em>SubwayGraph</em> of a synthetic transit network for a fixed time, then
+ * throughput and latency percentiles are reported per kind of query. Every
+ * thread draws its queries at random, in the proportions of the mix, so that
+ * slow and fast queries interleave as they would in production.
+ *
+ * The mix is 60% shortest paths, 15% journeys with the fewest transfers, 20%
+ * stop name searches for typeahead and 5% distances to 20 destinations.
+ *
+ * With -Dmbta.metrics=true, the metrics recorded during the measured run are
+ * printed too, see <em>Metrics</em>.
+ *
+ * Usage: java bench.LoadDriver [stops] [threads] [seconds] [lines] [branches] [interchanges]
+ *
+ * @author Ivan Chang
+ */
+public class LoadDriver {
+	private static final String[] QUERIES = { "shortestPath", "journeys", "searchStops", "distances" };
+	private static final int[] MIX = { 60, 15, 20, 5 }; // percent of queries
+	private static volatile long sink; // keeps the results of the queries alive
+
+	public static void main(String[] args) throws Exception {
+		int stops = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int lines = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(2, (int) Math.sqrt(stops) / 3);
+		int branches = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+		double interchanges = args.length > 5 ? Double.parseDouble(args[5]) : 0.5;
+
+		long begin = System.nanoTime();
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.transit(stops, lines, branches, interchanges, 1));
+		g.setStrategy(SubwayGraph.Strategy.BIDIRECTIONAL);
+		System.out.printf("%d routes, |V| = %d, |E| = %d, %d stops on two or more routes, built in %.0f ms%n",
+				g.getRoutes().size(), g.getNumVertices(), g.getNumEdges(),
+				g.getRouteStats().getStopsWithAtLeast(2).size(), (System.nanoTime() - begin) / 1e6);
+
+		run(g, threads, Math.max(1, seconds / 5)); // warm up, and build what queries build on first use
+		Metrics.reset();
+		long[][] latencies = run(g, threads, seconds);
+
+		System.out.printf("%d threads, %d s%n", threads, seconds);
+		System.out.printf("%-14s %10s %10s %10s %10s %10s %10s%n", "query", "per sec", "p50 us", "p90 us", "p99 us",
+				"p99.9 us", "max us");
+		long total = 0;
+		for (int q = 0; q < QUERIES.length; q++) {
+			long[] l = latencies[q];
+			total += l.length;
+			if (l.length == 0)
+				continue;
+			System.out.printf("%-14s %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", QUERIES[q], (double) l.length / seconds,
+					percentile(l, 0.5), percentile(l, 0.9), percentile(l, 0.99), percentile(l, 0.999),
+					l[l.length - 1] / 1e3);
+		}
+		System.out.printf("%-14s %10.0f%n", "all", (double) total / seconds);
+		if (Metrics.ENABLED)
+			System.out.print(Metrics.dump());
+	}
+
+	/**
+	 * Runs the mix on a number of threads for a time.
+	 * @return the sorted latencies in ns of every kind of query
+	 */
+	private static long[][] run(SubwayGraph g, int threads, int seconds) throws Exception {
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Callable<long[][]>> tasks = new ArrayList<Callable<long[][]>>();
+		for (int i = 0; i < threads; i++) {
+			long seed = i;
+			tasks.add(() -> drive(g, new Random(seed), deadline));
+		}
+		long[][] latencies = new long[QUERIES.length][0];
+		for (Future<long[][]> f : executor.invokeAll(tasks)) {
+			long[][] mine = f.get();
+			for (int q = 0; q < QUERIES.length; q++) {
+				long[] all = Arrays.copyOf(latencies[q], latencies[q].length + mine[q].length);
+				System.arraycopy(mine[q], 0, all, latencies[q].length, mine[q].length);
+				latencies[q] = all;
+			}
+		}
+		executor.shutdown();
+		for (long[] l : latencies)
+			Arrays.sort(l);
+		return latencies;
+	}
+
+	private static long[][] drive(SubwayGraph g, Random random, long deadline) {
+		int n = g.getNumVertices();
+		long[][] latencies = new long[QUERIES.length][1024];
+		int[] counts = new int[QUERIES.length];
+		List<Stop> destinations = new ArrayList<Stop>(20);
+		long results = 0;
+		long now;
+		while ((now = System.nanoTime()) < deadline) {
+			int pick = random.nextInt(100), q = 0;
+			while (pick >= MIX[q])
+				pick -= MIX[q++];
+			Stop a = g.vertexAt(random.nextInt(n)), b = g.vertexAt(random.nextInt(n));
+			switch (q) {
+			case 0:
+				results += g.shortestPath(a, b) == null ? 0 : 1;
+				break;
+			case 1:
+				results += g.journeys(a, b).size();
+				break;
+			case 2: // what a user has typed so far
+				String name = a.getName();
+				results += g.searchStops(name.substring(0, 1 + random.nextInt(name.length())), 10).size();
+				break;
+			default:
+				destinations.clear();
+				for (int i = 0; i < 20; i++)
+					destinations.add(g.vertexAt(random.nextInt(n)));
+				results += g.distances(a, destinations).length;
+			}
+			long elapsed = System.nanoTime() - now;
+			if (counts[q] == latencies[q].length)
+				latencies[q] = Arrays.copyOf(latencies[q], 2 * counts[q]);
+			latencies[q][counts[q]++] = elapsed;
+		}
+		sink += results;
+		for (int q = 0; q < QUERIES.length; q++)
+			latencies[q] = Arrays.copyOf(latencies[q], counts[q]);
+		return latencies;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e3;
+	}
+}
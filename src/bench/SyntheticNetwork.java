@@ -0,0 +1,267 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+
+/**
+ * Builds synthetic subway networks of arbitrary size for benchmarking: plain
+ * grids, and transit networks with branches and a configurable number of
+ * lines and interchanges, up to millions of stops. Also builds the small
+ * excerpt of the real MBTA subway that the unit tests and benchmarks share.
+ * 
+ * @author Ivan Chang
+ */
+public class SyntheticNetwork {
+	// Networks are laid out around downtown Boston, roughly 500m between stops.
+	static final double LATITUDE = 42.3555;
+	static final double LONGITUDE = -71.0605;
+	static final double SPACING = 0.005;
+
+	/**
+	 * Returns a small excerpt of the MBTA subway network: the Red Line from Davis
+	 * to Ashmont, the Mattapan Trolley and a Green Line branch crossing the Red
+	 * Line at Park Street. Every call returns new objects.
+	 *
+	 * @return a list of <em>Route</em> objects including stops
+	 */
+	public static List<Route> excerpt() {
+		Map<String, Stop> stops = new HashMap<String, Stop>();
+		List<Route> routes = new ArrayList<Route>();
+		routes.add(route(stops, "Red", "Red Line", "Davis", "Porter", "Harvard", "Central", "Kendall/MIT", "Charles/MGH",
+				"Park Street", "Downtown Crossing", "South Station", "Broadway", "Andrew", "JFK/UMass", "Savin Hill",
+				"Fields Corner", "Shawmut", "Ashmont"));
+		routes.add(route(stops, "Mattapan", "Mattapan Trolley", "Ashmont", "Cedar Grove", "Butler", "Milton", "Central Avenue",
+				"Valley Road", "Capen Street", "Mattapan"));
+		routes.add(route(stops, "Green-B", "Green Line B", "Boston College", "Kenmore", "Hynes Convention Center", "Copley",
+				"Arlington", "Boylston", "Park Street", "Government Center"));
+		return routes;
+	}
+
+	/**
+	 * Returns a route through stops of the given names, in order. A stop is taken
+	 * from <em>stops</em> by name if a route built with the same map has it, so
+	 * routes share their interchanges, and is created with the id place-name
+	 * otherwise.
+	 *
+	 * @param stops is the stops by name, shared by the routes of a network
+	 * @param id is the id of the route
+	 * @param longName is the long name of the route
+	 * @param names is the names of the stops
+	 * @return the <em>Route</em> including stops
+	 */
+	public static Route route(Map<String, Stop> stops, String id, String longName, String... names) {
+		Route route = new Route(id, longName);
+		for (String name : names)
+			add(route, stops.computeIfAbsent(name, k -> new Stop("place-" + k.toLowerCase(Locale.ROOT), k)));
+		return route;
+	}
+
+	/**
+	 * Returns a grid of <em>rows</em> east-west and <em>cols</em> north-south
+	 * lines. Every crossing of two lines is an interchange stop, so the resulting
+	 * Subway Graph has <em>rows * cols</em> vertices. Stops are placed on a regular
+	 * latitude/longitude grid.
+	 *
+	 * @param rows is the number of east-west lines
+	 * @param cols is the number of north-south lines
+	 * @return a list of <em>Route</em> objects including stops
+	 */
+	public static List<Route> grid(int rows, int cols) {
+		return grid(rows, cols, 0);
+	}
+
+	/**
+	 * Returns a grid of <em>rows</em> east-west and <em>cols</em> north-south
+	 * lines with <em>stopsBetween</em> ordinary stops between consecutive
+	 * interchanges, which is closer to the shape of a real transit network than a
+	 * plain grid.
+	 *
+	 * @param rows is the number of east-west lines
+	 * @param cols is the number of north-south lines
+	 * @param stopsBetween is the number of stops between two interchanges
+	 * @return a list of <em>Route</em> objects including stops
+	 */
+	public static List<Route> grid(int rows, int cols, int stopsBetween) {
+		int k = stopsBetween + 1; // interchanges are every k-th stop on a line
+		Stop[][] interchanges = new Stop[rows][cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				interchanges[r][c] = stop("stop-" + r + "-" + c, "Stop " + r + "/" + c, r * k, c * k);
+			}
+		}
+
+		List<Route> routes = new ArrayList<Route>();
+		for (int r = 0; r < rows; r++) {
+			Route route = new Route("EW-" + r, "East-West Line " + r);
+			for (int c = 0; c < cols; c++) {
+				if (c > 0) {
+					for (int i = 1; i < k; i++)
+						add(route, stop("stop-ew-" + r + "-" + c + "-" + i, "Stop EW " + r + "/" + c + "." + i, r * k,
+								(c - 1) * k + i));
+				}
+				add(route, interchanges[r][c]);
+			}
+			routes.add(route);
+		}
+		for (int c = 0; c < cols; c++) {
+			Route route = new Route("NS-" + c, "North-South Line " + c);
+			for (int r = 0; r < rows; r++) {
+				if (r > 0) {
+					for (int i = 1; i < k; i++)
+						add(route, stop("stop-ns-" + r + "-" + c + "-" + i, "Stop NS " + r + "." + i + "/" + c,
+								(r - 1) * k + i, c * k));
+				}
+				add(route, interchanges[r][c]);
+			}
+			routes.add(route);
+		}
+		return routes;
+	}
+
+	/**
+	 * Returns a transit network shaped like a real one rather than a grid: lines
+	 * run straight across the network at random bearings through random points
+	 * of its inner half, so they are densest downtown, and every line has
+	 * <em>branches</em> more routes that share part of its trunk and then fork
+	 * off, like the Green Line. Where a stop would lie within half a stop
+	 * spacing of a stop of another line, it is that stop instead with
+	 * probability <em>interchanges</em>, so 0 gives no interchanges at all and
+	 * 1 an interchange at almost every crossing. Lines that cross no other line
+	 * at an interchange are not connected to the rest of the network.
+	 *
+	 * The same arguments always give the same network. The number of stops is
+	 * approximate: a trunk line has stops / (lines * (1 + branches / 3)) stops
+	 * and a branch a third as many, less the stops that became interchanges.
+	 *
+	 * @param stops is the approximate number of stops, e.g. 10^2 to 10^6
+	 * @param lines is the number of trunk lines
+	 * @param branches is the number of branches of every line
+	 * @param interchanges is the probability of an interchange where lines cross, 0 to 1
+	 * @param seed is the seed of the random layout
+	 * @return a list of <em>Route</em> objects including stops
+	 * @throws IllegalArgumentException if a count is out of range
+	 */
+	public static List<Route> transit(int stops, int lines, int branches, double interchanges, long seed) {
+		if (lines < 1 || stops < 2 * lines)
+			throw new IllegalArgumentException("need at least one line and two stops per line");
+		if (branches < 0)
+			throw new IllegalArgumentException("number of branches is negative");
+		if (!(interchanges >= 0 && interchanges <= 1))
+			throw new IllegalArgumentException("interchange probability " + interchanges + " is not between 0 and 1");
+		int trunk = Math.max(2, (int) Math.round(stops / (lines * (1 + branches / 3.0))));
+		int branch = Math.max(1, trunk / 3);
+		double radius = trunk * SPACING / 2;
+		Layout layout = new Layout(new Random(seed), interchanges);
+
+		List<Route> routes = new ArrayList<Route>();
+		for (int i = 0; i < lines; i++) {
+			// Through a random point of the inner half of the network, at a random bearing
+			double r = radius / 2 * Math.sqrt(layout.random.nextDouble());
+			double a = 2 * Math.PI * layout.random.nextDouble(), bearing = Math.PI * layout.random.nextDouble();
+			double y = r * Math.sin(a) - (trunk - 1) / 2.0 * SPACING * Math.sin(bearing);
+			double x = r * Math.cos(a) - (trunk - 1) / 2.0 * SPACING * Math.cos(bearing);
+			Route line = new Route("L-" + i, "Line " + i);
+			Stop[] stations = new Stop[trunk];
+			for (int k = 0; k < trunk; k++)
+				stations[k] = layout.place(line, y + k * SPACING * Math.sin(bearing), x + k * SPACING * Math.cos(bearing));
+			routes.add(line);
+
+			// Branches ride the trunk from its far end, then fork off before its near end
+			for (int b = 0; b < branches; b++) {
+				int fork = 1 + layout.random.nextInt(Math.max(1, trunk / 2));
+				double turn = bearing + Math.PI
+						+ (layout.random.nextBoolean() ? 1 : -1) * (0.3 + 0.5 * layout.random.nextDouble());
+				Route route = new Route("L-" + i + "-" + (b + 1), "Line " + i + " Branch " + (b + 1));
+				for (int k = trunk - 1; k >= fork; k--)
+					add(route, stations[k]);
+				double by = y + fork * SPACING * Math.sin(bearing), bx = x + fork * SPACING * Math.cos(bearing);
+				for (int k = 1; k <= branch; k++)
+					layout.place(route, by + k * SPACING * Math.sin(turn), bx + k * SPACING * Math.cos(turn));
+				routes.add(route);
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * Places the stops of a transit network, finding nearby stops to make
+	 * interchanges of in a hash of cells one stop spacing wide.
+	 */
+	private static final class Layout {
+		private final Random random;
+		private final double interchanges;
+		private final Map<Long, List<Stop>> cells = new HashMap<Long, List<Stop>>();
+		private final Set<Stop> onRoute = new HashSet<Stop>(); // stops of the route being laid out
+		private Route route;
+		private int count;
+
+		Layout(Random random, double interchanges) {
+			this.random = random;
+			this.interchanges = interchanges;
+		}
+
+		/**
+		 * Adds the stop at a position, offset from downtown in degrees, to a route.
+		 * @return the stop, an existing one of another route if it becomes an interchange
+		 */
+		Stop place(Route route, double y, double x) {
+			if (route != this.route) {
+				this.route = route;
+				onRoute.clear();
+				onRoute.addAll(route.getStops());
+			}
+			y += (random.nextDouble() - 0.5) * SPACING / 4; // not quite straight
+			x += (random.nextDouble() - 0.5) * SPACING / 4;
+			long row = (long) Math.floor(y / SPACING), col = (long) Math.floor(x / SPACING);
+
+			Stop nearest = null;
+			double best = SPACING * SPACING / 4;
+			for (long i = row - 1; i <= row + 1; i++) {
+				for (long j = col - 1; j <= col + 1; j++) {
+					List<Stop> cell = cells.get(i << 32 ^ (j & 0xffffffffL));
+					if (cell == null)
+						continue;
+					for (Stop stop : cell) {
+						double dy = stop.getLatitude() - LATITUDE - y, dx = stop.getLongitude() - LONGITUDE - x;
+						if (dy * dy + dx * dx < best && !onRoute.contains(stop)) {
+							best = dy * dy + dx * dx;
+							nearest = stop;
+						}
+					}
+				}
+			}
+			Stop stop = nearest;
+			if (stop == null || random.nextDouble() >= interchanges) {
+				stop = new Stop("stop-" + count, "Stop " + count);
+				count++;
+				stop.setLatitude(LATITUDE + y);
+				stop.setLongitude(LONGITUDE + x);
+				cells.computeIfAbsent(row << 32 ^ (col & 0xffffffffL), k -> new ArrayList<Stop>(2)).add(stop);
+			}
+			add(route, stop);
+			onRoute.add(stop);
+			return stop;
+		}
+	}
+
+	private static Stop stop(String id, String name, int y, int x) {
+		Stop stop = new Stop(id, name);
+		stop.setLatitude(LATITUDE + y * SPACING);
+		stop.setLongitude(LONGITUDE + x * SPACING);
+		return stop;
+	}
+
+	private static void add(Route route, Stop stop) {
+		route.addStop(stop);
+		stop.addConnectsTo(route);
+	}
+}
@@ -2,29 +2,85 @@ package client;
 
 import static java.util.stream.Collectors.joining;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.xml.ws.http.HTTPException;
 
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
 /**
  * A Base Http Client that implements the GET protocol.
- * 
+ * <p>
+ * Responses are requested gzip compressed and read with bulk buffered reads.
+ * Every response body is read to the end and closed, error responses included,
+ * so that the JDK keeps the connection alive and reuses it for the next request
+ * to the same host instead of opening a new TLS connection each time. The number
+ * of requests and of bytes received before and after decompression are counted.
+ * <p>
+ * With a <em>ResponseCache</em>, responses carrying an ETag or Last-Modified are
+ * kept on disk and revalidated with If-None-Match and If-Modified-Since, so an
+ * unchanged response costs an empty 304 and is read back from disk.
+ * <p>
+ * Requests refused with a 429 or 502-504, or that time out before the response
+ * arrives, are retried up to {@code getMaxRetries()} times with jittered
+ * exponential backoff, no earlier than Retry-After or the x-ratelimit-reset of a
+ * 429. A <em>RateLimiter</em> adapts the requests in flight to the rate-limit
+ * headers. A request is never retried once its body has been handed to a reader.
+ * <p>
+ * With metrics enabled, the time every GET takes including retries is recorded
+ * in the http.get histogram, and retries and failed GETs are counted, across all
+ * clients. See <em>Metrics</em>.
+ *
  *  @author Ivan Chang
  */
 public class HttpClient {
 
 	final static String charset = java.nio.charset.StandardCharsets.UTF_8.name();
 	static int timeout = 5000;
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final long BASE_BACKOFF = 250; // milliseconds, doubled every retry
+	private static final long MAX_BACKOFF = 30000;
+	private static final Histogram GET_TIME = Metrics.histogram("http.get", "ns");
+	private static final Counter GET_RETRIES = Metrics.counter("http.get.retries");
+	private static final Counter GET_FAILURES = Metrics.counter("http.get.failures");
 	private String url;
+	private volatile int timeoutMillis = timeout;
+	private volatile int maxRetries;
+	private volatile RateLimiter rateLimiter;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder(); // as transferred, i.e. compressed
+	private final LongAdder bytesDecoded = new LongAdder(); // after decompression
+	private final LongAdder notModified = new LongAdder(); // responses served from the cache on a 304
+	private final LongAdder retries = new LongAdder();
+	private volatile ResponseCache cache;
+
+	/**
+	 * Reads a response body, e.g. straight into a parser.
+	 */
+	@FunctionalInterface
+	public interface BodyReader<R> {
+		R read(Reader body) throws IOException;
+	}
 
 	private String UncheckedURLEncode(String value) {
 		try {
@@ -51,29 +107,299 @@ public class HttpClient {
 	 */
 	public String GET(String path, Map<String, String> qp)
 			throws MalformedURLException, IOException, HTTPException, UnsupportedEncodingException {
+		return GET(path, qp, in -> {
+			StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+			char[] buffer = new char[BUFFER_SIZE];
+			for (int n; (n = in.read(buffer)) >= 0;)
+				sb.append(buffer, 0, n);
+			return sb.toString();
+		});
+	}
+
+	/**
+	 * Sends a HTTP GET request and hands the response body to a reader as a stream,
+	 * so that it can be parsed without first being copied into a string.
+	 *
+	 * @param path is the path relative to root of url
+	 * @param qp   is a Map of key value pairs representing query parameters
+	 * @param body reads the response body
+	 * @return what the body reader returns
+	 * @throws MalformedURLException, IOException, HTTPException
+	 */
+	public <R> R GET(String path, Map<String, String> qp, BodyReader<R> body)
+			throws MalformedURLException, IOException, HTTPException {
+		if (!Metrics.ENABLED)
+			return send(path, qp, body);
+		long begin = System.nanoTime();
+		try {
+			return send(path, qp, body);
+		} catch (IOException | RuntimeException e) {
+			GET_FAILURES.increment();
+			throw e;
+		} finally {
+			GET_TIME.record(System.nanoTime() - begin);
+		}
+	}
+
+	/**
+	 * Sends a HTTP GET request, retrying as many times as allowed.
+	 */
+	private <R> R send(String path, Map<String, String> qp, BodyReader<R> body) throws IOException {
 		String query = qp.entrySet().stream().map(e -> {
 			return UncheckedURLEncode(e.getKey()) + "=" + UncheckedURLEncode(e.getValue());
 		}).collect(joining("&"));
+		String key = path + "?" + query;
+
+		for (int attempt = 0;; attempt++) {
+			long retryAt;
+			try {
+				return exchange(path, key, body);
+			} catch (Retry retry) {
+				if (retry.free) {
+					attempt--;
+					continue;
+				}
+				if (attempt >= maxRetries) {
+					if (retry.getCause() instanceof IOException)
+						throw (IOException) retry.getCause();
+					throw (RuntimeException) retry.getCause();
+				}
+				retries.increment();
+				if (Metrics.ENABLED)
+					GET_RETRIES.increment();
+				long now = System.currentTimeMillis();
+				// Full jitter, so that throttled clients do not all come back at once
+				long backoff = (long) (ThreadLocalRandom.current().nextDouble()
+						* Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 20)));
+				retryAt = Math.max(retry.retryAt, now) + backoff;
+			}
+			sleepUntil(retryAt);
+		}
+	}
+
+	/**
+	 * Sends one GET request, under the rate limiter if any.
+	 * @throws Retry if the request failed in a way that is worth retrying
+	 */
+	private <R> R exchange(String path, String key, BodyReader<R> body) throws IOException, Retry {
+		RateLimiter limiter = this.rateLimiter;
+		if (limiter != null)
+			limiter.acquire();
+		int remaining = -1;
+		long resetAt = 0;
+		boolean throttled = false;
+		try {
+			String separator = path.startsWith("/") ? "" : "/";
+			ResponseCache cache = this.cache;
+			ResponseCache.Entry cached = cache == null ? null : cache.get(key);
+			HttpURLConnection c = (HttpURLConnection) new URL(url + separator + key).openConnection();
+			c.setRequestMethod("GET");
+			c.setRequestProperty("Accept-Charset", charset);
+			c.setRequestProperty("Accept", "application/json");
+			c.setRequestProperty("Accept-Encoding", "gzip");
+			if (cached != null) {
+				if (cached.getETag() != null)
+					c.setRequestProperty("If-None-Match", cached.getETag());
+				if (cached.getLastModified() != null)
+					c.setRequestProperty("If-Modified-Since", cached.getLastModified());
+			}
+			c.setUseCaches(false);
+			c.setAllowUserInteraction(false);
+			c.setConnectTimeout(timeoutMillis);
+			c.setReadTimeout(timeoutMillis);
+			int status;
+			try {
+				c.connect();
+				requests.increment();
+				status = c.getResponseCode();
+			} catch (SocketTimeoutException | ConnectException e) {
+				throw new Retry(e, 0, false);
+			}
+			remaining = c.getHeaderFieldInt("x-ratelimit-remaining", -1);
+			resetAt = 1000 * c.getHeaderFieldLong("x-ratelimit-reset", 0);
+
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				try (InputStream empty = c.getInputStream()) {
+					drain(new CountingInputStream(empty, bytesReceived));
+				}
+				InputStream in;
+				try {
+					in = cached.open();
+				} catch (IOException e) {
+					// Evicted in the meantime, fetch it in full.
+					cache.remove(key);
+					throw new Retry(e, 0, true);
+				}
+				notModified.increment();
+				try {
+					return body.read(new InputStreamReader(in, charset));
+				} finally {
+					in.close();
+				}
+			}
+			if (status != 200) {
+				// Drain the error body so that the connection can be reused.
+				try (InputStream error = c.getErrorStream()) {
+					if (error != null)
+						drain(new CountingInputStream(error, bytesReceived));
+				}
+				HTTPException e = new HTTPException(status);
+				if (status == 429 || status == 502 || status == 503 || status == 504) {
+					throttled = status == 429;
+					long retryAfter = 1000 * c.getHeaderFieldLong("Retry-After", 0);
+					long retryAt = retryAfter > 0 ? System.currentTimeMillis() + retryAfter : throttled ? resetAt : 0;
+					if (limiter != null)
+						limiter.pauseUntil(retryAt);
+					throw new Retry(e, retryAt, false);
+				}
+				throw e;
+			}
+			String eTag = c.getHeaderField("ETag"), lastModified = c.getHeaderField("Last-Modified");
+			ResponseCache.Editor editor = cache != null && (eTag != null || lastModified != null)
+					? cache.edit(key, eTag, lastModified)
+					: null;
+			try (InputStream in = editor == null ? decode(c) : new TeeInputStream(decode(c), editor)) {
+				R result = body.read(new InputStreamReader(in, charset));
+				drain(in); // whatever the reader left, so that the connection can be reused
+				if (editor != null)
+					editor.commit();
+				return result;
+			} finally {
+				if (editor != null)
+					editor.abort();
+			}
+		} finally {
+			if (limiter != null)
+				limiter.release(remaining, resetAt, throttled);
+		}
+	}
+
+	private static void sleepUntil(long time) throws InterruptedIOException {
+		try {
+			for (long now; (now = System.currentTimeMillis()) < time;)
+				Thread.sleep(time - now);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting to retry");
+		}
+	}
+
+	/**
+	 * A failed request that may be retried, no earlier than retryAt. A free retry
+	 * does not count as an attempt.
+	 */
+	private static final class Retry extends Exception {
+		private static final long serialVersionUID = 1L;
+		final long retryAt;
+		final boolean free;
+
+		Retry(Exception cause, long retryAt, boolean free) {
+			super(cause);
+			this.retryAt = retryAt;
+			this.free = free;
+		}
+	}
+
+	private InputStream decode(HttpURLConnection c) throws IOException {
+		InputStream in = new CountingInputStream(c.getInputStream(), bytesReceived);
+		if ("gzip".equalsIgnoreCase(c.getContentEncoding()))
+			in = new GZIPInputStream(in, BUFFER_SIZE);
+		return new CountingInputStream(in, bytesDecoded);
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (in.read(buffer) >= 0)
+			;
+	}
+
+	/**
+	 * @return the number of GET requests sent
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return the number of response body bytes received, as transferred
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	/**
+	 * @return the number of response body bytes received, after decompression
+	 */
+	public long getBytesDecoded() {
+		return bytesDecoded.sum();
+	}
+
+	/**
+	 * @return the number of responses served from the cache after a 304
+	 */
+	public long getNotModifiedCount() {
+		return notModified.sum();
+	}
+
+	/**
+	 * @return the number of requests retried
+	 */
+	public long getRetryCount() {
+		return retries.sum();
+	}
 
-		HttpsURLConnection c = (HttpsURLConnection) new URL(url + "/" + path + "?" + query).openConnection();
-		c.setRequestMethod("GET");
-		c.setRequestProperty("Accept-Charset", charset);
-		c.setRequestProperty("Accept", "application/json");
-		c.setRequestProperty("Content-length", "0");
-		c.setUseCaches(false);
-		c.setAllowUserInteraction(false);
-		c.setConnectTimeout(timeout);
-		c.setReadTimeout(timeout);
-		c.connect();
-		int status = c.getResponseCode();
-		if (status != 200)
-			throw new HTTPException(status);
-		Reader in = new BufferedReader(new InputStreamReader(c.getInputStream(), charset));
-		StringBuilder sb = new StringBuilder();
-		for (int ch; (ch = in.read()) >= 0;)
-			sb.append((char) ch);
-		String response = sb.toString();
-		return response;
+	/**
+	 * @return how many times a failed request is retried, 0 by default
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		if (maxRetries < 0)
+			throw new IllegalArgumentException("retries must not be negative");
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @return the connect and read timeout in milliseconds
+	 */
+	public int getTimeout() {
+		return timeoutMillis;
+	}
+
+	public void setTimeout(int millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("timeout must not be negative");
+		this.timeoutMillis = millis;
+	}
+
+	/**
+	 * @return the rate limiter, <em>null</em> if requests are not limited
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Limits requests by the rate-limit headers of the responses, or stops limiting if <em>null</em>.
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * @return the response cache, <em>null</em> if responses are not cached
+	 */
+	public ResponseCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Caches responses on disk and revalidates them, or stops caching if <em>null</em>.
+	 */
+	public void setCache(ResponseCache cache) {
+		this.cache = cache;
 	}
 
 	public String getUrl() {
@@ -83,4 +409,74 @@ public class HttpClient {
 	public void setUrl(String url) {
 		this.url = url;
 	}
+
+	/**
+	 * Counts the bytes read through it.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+		private final LongAdder count;
+
+		CountingInputStream(InputStream in, LongAdder count) {
+			super(in);
+			this.count = count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count.increment();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count.add(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count.add(skipped);
+			return skipped;
+		}
+	}
+
+	/**
+	 * Copies the bytes read through it to a cache editor.
+	 */
+	private static final class TeeInputStream extends FilterInputStream {
+		private final OutputStream copy;
+
+		TeeInputStream(InputStream in, OutputStream copy) {
+			super(in);
+			this.copy = copy;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				copy.write(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				copy.write(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+			int read = read(buffer, 0, buffer.length);
+			return Math.max(read, 0);
+		}
+	}
 }
@@ -0,0 +1,469 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A streaming, pull-style JSON decoder. Values are read one token at a time
+ * straight from a <em>Reader</em> through a fixed size buffer, so memory stays
+ * bounded by the longest single string rather than by the document size.
+ * Unused values are skipped, and names can be matched with
+ * {@code selectName}, without allocating any strings.
+ *
+ *  @author Ivan Chang
+ */
+public class JsonReader implements Closeable {
+
+	/**
+	 * The kinds of token {@code peek()} can return.
+	 */
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	// Scopes on the stack
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int NONEMPTY_OBJECT = 5;
+	private static final int DANGLING_NAME = 6; // a name was read, its value is next
+
+	private final Reader in;
+	private final char[] buffer = new char[8192];
+	private int pos;
+	private int limit;
+	private long offset; // of buffer[0] in the input, for error messages
+
+	private int[] stack = new int[32];
+	private int depth;
+	private Token peeked;
+
+	private char[] scratch = new char[64]; // the last string, name or number read
+	private int length;
+
+	public JsonReader(Reader in) {
+		this.in = in;
+		stack[depth++] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * @return the kind of the next token, without consuming it
+	 */
+	public Token peek() throws IOException {
+		if (peeked != null)
+			return peeked;
+		switch (stack[depth - 1]) {
+		case EMPTY_DOCUMENT:
+			stack[depth - 1] = NONEMPTY_DOCUMENT;
+			return peeked = value(nextNonWhitespace());
+		case NONEMPTY_DOCUMENT:
+			if (nextNonWhitespace() != -1)
+				throw syntaxError("expected the end of the document");
+			return peeked = Token.END_DOCUMENT;
+		case EMPTY_ARRAY: {
+			stack[depth - 1] = NONEMPTY_ARRAY;
+			int c = nextNonWhitespace();
+			return peeked = c == ']' ? Token.END_ARRAY : value(c);
+		}
+		case NONEMPTY_ARRAY: {
+			int c = nextNonWhitespace();
+			if (c == ']')
+				return peeked = Token.END_ARRAY;
+			if (c != ',')
+				throw syntaxError("expected ',' or ']'");
+			return peeked = value(nextNonWhitespace());
+		}
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT: {
+			int c = nextNonWhitespace();
+			if (c == '}')
+				return peeked = Token.END_OBJECT;
+			if (stack[depth - 1] == NONEMPTY_OBJECT) {
+				if (c != ',')
+					throw syntaxError("expected ',' or '}'");
+				c = nextNonWhitespace();
+			}
+			if (c != '"')
+				throw syntaxError("expected a name");
+			stack[depth - 1] = DANGLING_NAME;
+			return peeked = Token.NAME;
+		}
+		default: // DANGLING_NAME
+			if (nextNonWhitespace() != ':')
+				throw syntaxError("expected ':'");
+			stack[depth - 1] = NONEMPTY_OBJECT;
+			return peeked = value(nextNonWhitespace());
+		}
+	}
+
+	/**
+	 * Classifies the value starting with c. Strings are left after their opening
+	 * quote, other values at their first character.
+	 */
+	private Token value(int c) throws IOException {
+		switch (c) {
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			pos--;
+			return Token.BOOLEAN;
+		case 'n':
+			pos--;
+			return Token.NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				pos--;
+				return Token.NUMBER;
+			}
+			throw syntaxError(c == -1 ? "unexpected end of the document" : "expected a value");
+		}
+	}
+
+	private void expect(Token token) throws IOException {
+		if (peek() != token)
+			throw new IllegalStateException("expected " + token + " but was " + peeked + " at " + (offset + pos));
+		peeked = null;
+	}
+
+	private void push(int scope) {
+		if (depth == stack.length)
+			stack = Arrays.copyOf(stack, 2 * depth);
+		stack[depth++] = scope;
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		depth--;
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		depth--;
+	}
+
+	/**
+	 * @return true if the current object or array has another element
+	 */
+	public boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	/**
+	 * @return the next name in the current object
+	 */
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		readString();
+		return new String(scratch, 0, length);
+	}
+
+	/**
+	 * Consumes the next name and looks it up among some names without allocating it.
+	 * @param names is the names of interest
+	 * @return the index of the name in names, -1 if it is none of them.
+	 */
+	public int selectName(String... names) throws IOException {
+		expect(Token.NAME);
+		readString();
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			if (name.length() != length)
+				continue;
+			int k = 0;
+			while (k < length && name.charAt(k) == scratch[k])
+				k++;
+			if (k == length)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the next string value, or a number value as written
+	 */
+	public String nextString() throws IOException {
+		Token token = peek();
+		if (token == Token.STRING) {
+			peeked = null;
+			readString();
+		} else if (token == Token.NUMBER) {
+			peeked = null;
+			readLiteral();
+		} else {
+			throw new IllegalStateException("expected a string but was " + token + " at " + (offset + pos));
+		}
+		return new String(scratch, 0, length);
+	}
+
+	/**
+	 * @return the next number value, or string value holding a number
+	 */
+	public double nextDouble() throws IOException {
+		Token token = peek();
+		if (token == Token.STRING) {
+			peeked = null;
+			readString();
+		} else {
+			expect(Token.NUMBER);
+			readLiteral();
+		}
+		try {
+			return Double.parseDouble(new String(scratch, 0, length));
+		} catch (NumberFormatException e) {
+			throw syntaxError("expected a number");
+		}
+	}
+
+	/**
+	 * @return the next number value, which must be an int
+	 */
+	public int nextInt() throws IOException {
+		double value = nextDouble();
+		int i = (int) value;
+		if (i != value)
+			throw syntaxError("expected an int");
+		return i;
+	}
+
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+		readLiteral();
+		if (is("true"))
+			return true;
+		if (is("false"))
+			return false;
+		throw syntaxError("expected a boolean");
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+		readLiteral();
+		if (!is("null"))
+			throw syntaxError("expected null");
+	}
+
+	/**
+	 * Skips the next value, including any nested objects and arrays, or the next
+	 * name and its value, without allocating.
+	 */
+	public void skipValue() throws IOException {
+		int nesting = 0;
+		do {
+			if (peek() == Token.NAME) { // skip it along with its value
+				peeked = null;
+				skipString();
+			}
+			switch (peek()) {
+			case BEGIN_OBJECT:
+				beginObject();
+				nesting++;
+				break;
+			case BEGIN_ARRAY:
+				beginArray();
+				nesting++;
+				break;
+			case END_OBJECT:
+				endObject();
+				nesting--;
+				break;
+			case END_ARRAY:
+				endArray();
+				nesting--;
+				break;
+			case STRING:
+				peeked = null;
+				skipString();
+				break;
+			case END_DOCUMENT:
+				throw syntaxError("unexpected end of the document");
+			default:
+				peeked = null;
+				skipLiteral();
+			}
+		} while (nesting > 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		peeked = null;
+		depth = 0;
+		in.close();
+	}
+
+	private boolean is(String literal) {
+		if (literal.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (literal.charAt(i) != scratch[i])
+				return false;
+		return true;
+	}
+
+	private boolean fill() throws IOException {
+		offset += limit;
+		pos = 0;
+		limit = 0;
+		int n;
+		while ((n = in.read(buffer)) == 0)
+			;
+		if (n < 0)
+			return false;
+		limit = n;
+		return true;
+	}
+
+	private int nextChar() throws IOException {
+		if (pos == limit && !fill())
+			return -1;
+		return buffer[pos++];
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		while (true) {
+			if (pos == limit && !fill())
+				return -1;
+			char c = buffer[pos++];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+				return c;
+		}
+	}
+
+	private void append(char c) {
+		if (length == scratch.length)
+			scratch = Arrays.copyOf(scratch, 2 * length);
+		scratch[length++] = c;
+	}
+
+	/**
+	 * Reads a string after its opening quote into scratch, unescaping it.
+	 */
+	private void readString() throws IOException {
+		length = 0;
+		while (true) {
+			// Copy runs of plain characters in bulk
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos];
+				if (c == '"' || c == '\\')
+					break;
+				pos++;
+			}
+			int run = pos - start;
+			if (run > 0) {
+				if (length + run > scratch.length)
+					scratch = Arrays.copyOf(scratch, Math.max(2 * scratch.length, length + run));
+				System.arraycopy(buffer, start, scratch, length, run);
+				length += run;
+			}
+			int c = nextChar();
+			if (c == '"')
+				return;
+			if (c == '\\')
+				append(readEscape());
+			else if (c == -1)
+				throw syntaxError("unterminated string");
+			else
+				pos--; // the buffer was refilled
+		}
+	}
+
+	private void skipString() throws IOException {
+		while (true) {
+			int c = nextChar();
+			if (c == '"')
+				return;
+			if (c == '\\')
+				readEscape();
+			else if (c == -1)
+				throw syntaxError("unterminated string");
+		}
+	}
+
+	private char readEscape() throws IOException {
+		int c = nextChar();
+		switch (c) {
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int h = nextChar();
+				int digit = Character.digit(h, 16);
+				if (h == -1 || digit < 0)
+					throw syntaxError("invalid unicode escape");
+				value = (value << 4) | digit;
+			}
+			return (char) value;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		default:
+			throw syntaxError("invalid escape");
+		}
+	}
+
+	private static boolean isDelimiter(int c) {
+		return c == -1 || c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r'
+				|| c == '\t';
+	}
+
+	/**
+	 * Reads a number, true, false or null into scratch.
+	 */
+	private void readLiteral() throws IOException {
+		length = 0;
+		while (true) {
+			int c = nextChar();
+			if (isDelimiter(c)) {
+				if (c != -1)
+					pos--;
+				return;
+			}
+			append((char) c);
+		}
+	}
+
+	private void skipLiteral() throws IOException {
+		while (true) {
+			int c = nextChar();
+			if (isDelimiter(c)) {
+				if (c != -1)
+					pos--;
+				return;
+			}
+		}
+	}
+
+	private IOException syntaxError(String message) {
+		return new IOException("malformed JSON, " + message + " at " + (offset + pos));
+	}
+}
@@ -0,0 +1,117 @@
+package client;
+
+import java.io.InterruptedIOException;
+
+/**
+ * An adaptive <em>RateLimiter</em> for the requests of an <em>HttpClient</em>,
+ * steered by the rate-limit headers of the responses. It bounds the number of
+ * requests in flight, growing the bound by one after every response that is not
+ * throttled up to a maximum and halving it after a 429. While the server
+ * reports requests remaining in its window, starts are paced evenly over the
+ * time left until the window resets; once none remain, or a request was
+ * throttled, no request starts until the window resets.
+ *
+ * Times are epoch milliseconds, as the MBTA api reports x-ratelimit-reset in
+ * epoch seconds. Safe for concurrent use.
+ *
+ *  @author Ivan Chang
+ */
+public final class RateLimiter {
+	private final int maxConcurrency;
+	private int limit; // requests allowed in flight
+	private int inFlight;
+	private long pausedUntil; // no request starts before
+	private long interval; // between request starts, to spread the remaining requests
+	private long nextStart;
+	private long throttled;
+
+	/**
+	 * @param maxConcurrency is the most requests in flight at once
+	 */
+	public RateLimiter(int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("concurrency must be positive");
+		this.maxConcurrency = maxConcurrency;
+		this.limit = maxConcurrency;
+	}
+
+	/**
+	 * Waits until a request may start.
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	public synchronized void acquire() throws InterruptedIOException {
+		try {
+			while (true) {
+				long now = System.currentTimeMillis();
+				long start = Math.max(pausedUntil, nextStart);
+				if (now < start)
+					wait(start - now);
+				else if (inFlight >= limit)
+					wait();
+				else
+					break;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for the rate limit");
+		}
+		inFlight++;
+		nextStart = System.currentTimeMillis() + interval;
+	}
+
+	/**
+	 * Ends a request started with {@code acquire()}.
+	 * @param remaining is the requests remaining in the rate-limit window, -1 if unknown
+	 * @param resetAt is when the window resets in epoch milliseconds, 0 if unknown
+	 * @param wasThrottled is true if the request was refused with a 429
+	 */
+	public synchronized void release(int remaining, long resetAt, boolean wasThrottled) {
+		inFlight--;
+		long now = System.currentTimeMillis();
+		if (wasThrottled) {
+			throttled++;
+			limit = Math.max(1, limit / 2);
+			if (resetAt > now)
+				pausedUntil = Math.max(pausedUntil, resetAt);
+		} else {
+			limit = Math.min(maxConcurrency, limit + 1);
+		}
+		if (remaining == 0 && resetAt > now)
+			pausedUntil = Math.max(pausedUntil, resetAt);
+		interval = remaining > 0 && resetAt > now ? (resetAt - now) / remaining : 0;
+		notifyAll();
+	}
+
+	/**
+	 * Makes no request start before a time, e.g. one given by Retry-After.
+	 * @param time is in epoch milliseconds
+	 */
+	public synchronized void pauseUntil(long time) {
+		pausedUntil = Math.max(pausedUntil, time);
+	}
+
+	/**
+	 * @return the number of requests currently allowed in flight
+	 */
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return the number of requests in flight
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return the number of requests refused with a 429
+	 */
+	public synchronized long getThrottledCount() {
+		return throttled;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+}
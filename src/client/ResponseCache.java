@@ -0,0 +1,298 @@
+package client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A disk-backed cache of HTTP response bodies for <em>HttpClient</em>, keyed by
+ * path and query. Each response is kept in its own file along with its ETag and
+ * Last-Modified validators, so a later request can be revalidated with
+ * If-None-Match and If-Modified-Since and answered from disk on a 304.
+ *
+ * The cache is bounded by the total size of its files. The least recently used
+ * responses are evicted first; recency survives restarts through the file
+ * modification times. Files are replaced atomically, so a reader never sees a
+ * partly written response. Safe for concurrent use within a process.
+ *
+ *  @author Ivan Chang
+ */
+public final class ResponseCache {
+	private static final int MAGIC = 0x52455350; // "RESP"
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private final File dir;
+	private final long maxBytes;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // in access order
+	private long size;
+
+	/**
+	 * Opens a response cache, keeping the responses already in its directory.
+	 * @param dir is the cache directory, created if it does not exist
+	 * @param maxBytes is the most bytes of responses to keep
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ResponseCache(File dir, long maxBytes) throws IOException {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("cache size must be positive");
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("cannot create cache directory " + dir);
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".resp"));
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				if (in.readInt() != MAGIC)
+					throw new IOException("not a cached response");
+				Entry e = new Entry(file, in.readUTF(), optional(in.readUTF()), optional(in.readUTF()), file.length());
+				entries.put(e.key, e);
+				size += e.length;
+			} catch (IOException e) {
+				file.delete(); // truncated or foreign, fetch it again
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * A cached response.
+	 */
+	public static final class Entry {
+		private final File file;
+		private final String key;
+		private final String eTag;
+		private final String lastModified;
+		private final long length;
+
+		private Entry(File file, String key, String eTag, String lastModified, long length) {
+			this.file = file;
+			this.key = key;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		/**
+		 * @return the ETag validator, <em>null</em> if the response had none
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * @return the Last-Modified validator, <em>null</em> if the response had none
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Opens the cached response body, decoded.
+		 * @throws IOException if it has been evicted since
+		 */
+		public InputStream open() throws IOException {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			try {
+				in.readInt();
+				in.readUTF();
+				in.readUTF();
+				in.readUTF();
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+			return in;
+		}
+	}
+
+	/**
+	 * Writes a response into the cache as it is read. It only replaces the cached
+	 * response once committed, and is discarded if aborted before.
+	 */
+	public final class Editor extends OutputStream {
+		private final String key;
+		private final String eTag;
+		private final String lastModified;
+		private final File tmp;
+		private final DataOutputStream out;
+		private boolean done;
+
+		private Editor(String key, String eTag, String lastModified) throws IOException {
+			this.key = key;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.tmp = File.createTempFile("response", ".tmp", dir);
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE));
+			out.writeInt(MAGIC);
+			out.writeUTF(key);
+			out.writeUTF(eTag == null ? "" : eTag);
+			out.writeUTF(lastModified == null ? "" : lastModified);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		/**
+		 * Makes the response written so far the cached response for its key.
+		 */
+		public void commit() throws IOException {
+			if (done)
+				return;
+			done = true;
+			try {
+				out.close();
+				File file = new File(dir, fileName(key));
+				synchronized (ResponseCache.this) {
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+					Entry e = new Entry(file, key, eTag, lastModified, file.length());
+					Entry old = entries.put(key, e);
+					if (old != null)
+						size -= old.length;
+					size += e.length;
+					evict();
+				}
+			} finally {
+				tmp.delete();
+			}
+		}
+
+		/**
+		 * Discards the response unless it was committed.
+		 */
+		public void abort() {
+			if (done)
+				return;
+			done = true;
+			try {
+				out.close();
+			} catch (IOException e) {
+			}
+			tmp.delete();
+		}
+
+		@Override
+		public void close() {
+			abort();
+		}
+	}
+
+	/**
+	 * @param key is the path and query of a request
+	 * @return the cached response, <em>null</em> if there is none
+	 */
+	public synchronized Entry get(String key) {
+		Entry e = entries.get(key);
+		if (e != null)
+			e.file.setLastModified(System.currentTimeMillis()); // remember the use across restarts
+		return e;
+	}
+
+	/**
+	 * Starts caching a response.
+	 * @param key is the path and query of the request
+	 * @param eTag is the ETag of the response, may be <em>null</em>
+	 * @param lastModified is the Last-Modified of the response, may be <em>null</em>
+	 * @return an Editor to write the decoded response body to
+	 * @throws IOException if the cache directory cannot be written
+	 */
+	public Editor edit(String key, String eTag, String lastModified) throws IOException {
+		return new Editor(key, eTag, lastModified);
+	}
+
+	/**
+	 * Removes a cached response, if any.
+	 */
+	public synchronized void remove(String key) {
+		Entry e = entries.remove(key);
+		if (e != null) {
+			size -= e.length;
+			e.file.delete();
+		}
+	}
+
+	/**
+	 * Removes every cached response.
+	 */
+	public synchronized void clear() {
+		for (Entry e : entries.values())
+			e.file.delete();
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the number of cached responses
+	 */
+	public synchronized int getNumEntries() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the total size of the cached responses in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	// Evicts the least recently used responses until the cache fits
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (size > maxBytes && it.hasNext()) {
+			Entry e = it.next();
+			it.remove();
+			size -= e.length;
+			e.file.delete();
+		}
+	}
+
+	private static String optional(String s) {
+		return s.isEmpty() ? null : s;
+	}
+
+	private static String fileName(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(2 * digest.length + 5);
+			for (byte b : digest)
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			return sb.append(".resp").toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-1
+		}
+	}
+}
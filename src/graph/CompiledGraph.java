@@ -0,0 +1,194 @@
+package graph;
+
+/**
+ * The {@code CompiledGraph} class is an immutable, compact form of a directed
+ * graph over dense vertex indices, for running queries on a graph that is no
+ * longer modified. The edges are stored in compressed sparse row (CSR) form:
+ * the edges leaving vertex {@code v} are the positions {@code begin(v)} to
+ * {@code end(v) - 1} of flat target and weight arrays, so a search scans
+ * contiguous memory and never hashes vertex objects.
+ * <p>
+ * Every compiled graph knows its reverse, the graph with every edge turned
+ * around, for searches that run backwards from a target. A compiled graph never
+ * changes once built and is safe to share across threads; every query uses its
+ * own {@code SearchWorkspace}. See {@code G.compile()}.
+ *
+ * @author Ivan Chang
+ */
+public final class CompiledGraph {
+	// The edges leaving v are targets[offsets[v]] .. targets[offsets[v + 1] - 1]
+	final int[] offsets;
+	final int[] targets;
+	final int[] weights; // parallel to targets
+	private final CompiledGraph reverse;
+
+	private CompiledGraph(int[] offsets, int[] targets, int[] weights, int[] reverseOffsets, int[] reverseTargets,
+			int[] reverseWeights) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.reverse = new CompiledGraph(reverseOffsets, reverseTargets, reverseWeights, this);
+	}
+
+	private CompiledGraph(int[] offsets, int[] targets, int[] weights, CompiledGraph reverse) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Compiles a directed graph given as adjacency lists.
+	 *
+	 * @param adj the index-based adjacency lists, {@code adj[v]} holds the heads
+	 *            of the edges leaving {@code v}
+	 * @param len the edge lengths, parallel to {@code adj}
+	 * @return the compiled graph
+	 * @throws IllegalArgumentException if {@code len} is not parallel to
+	 *                                  {@code adj} or an edge leads to no vertex
+	 */
+	public static CompiledGraph of(int[][] adj, int[][] len) {
+		int n = adj.length;
+		if (len.length != n)
+			throw new IllegalArgumentException("edge lengths do not have " + n + " rows");
+		int[] offsets = flatten(adj, len);
+		int m = offsets[n];
+		int[] targets = new int[m], weights = new int[m];
+		for (int v = 0; v < n; v++) {
+			System.arraycopy(adj[v], 0, targets, offsets[v], adj[v].length);
+			System.arraycopy(len[v], 0, weights, offsets[v], len[v].length);
+		}
+
+		// Transpose by counting the edges entering every vertex.
+		int[] reverseOffsets = new int[n + 1];
+		for (int w : targets) {
+			if (w < 0 || w >= n)
+				throw new IllegalArgumentException("edge to " + w + " leads to no vertex");
+			reverseOffsets[w + 1]++;
+		}
+		for (int v = 0; v < n; v++)
+			reverseOffsets[v + 1] += reverseOffsets[v];
+		int[] fill = new int[n];
+		System.arraycopy(reverseOffsets, 0, fill, 0, n);
+		int[] reverseTargets = new int[m], reverseWeights = new int[m];
+		for (int v = 0; v < n; v++) {
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				int i = fill[targets[k]]++;
+				reverseTargets[i] = v;
+				reverseWeights[i] = weights[k];
+			}
+		}
+		return new CompiledGraph(offsets, targets, weights, reverseOffsets, reverseTargets, reverseWeights);
+	}
+
+	/**
+	 * Compiles a graph whose edges all come in pairs {@code v -> w} and
+	 * {@code w -> v}, such as an undirected {@code G}. The reverse graph then has
+	 * the same adjacency and shares its arrays; only the weights differ.
+	 *
+	 * @param adj    the index-based adjacency lists, see {@code G.adjacencyIndex()}
+	 * @param len    the index-based edge lengths, see {@code G.edgeLengthIndex()}
+	 * @param revLen the index-based reverse edge lengths, see
+	 *               {@code G.reverseEdgeLengthIndex()}
+	 * @return the compiled graph
+	 */
+	static CompiledGraph symmetric(int[][] adj, int[][] len, int[][] revLen) {
+		int[] offsets = flatten(adj, len);
+		flatten(adj, revLen);
+		int m = offsets[adj.length];
+		int[] targets = new int[m], weights = new int[m], reverseWeights = new int[m];
+		for (int v = 0; v < adj.length; v++) {
+			System.arraycopy(adj[v], 0, targets, offsets[v], adj[v].length);
+			System.arraycopy(len[v], 0, weights, offsets[v], len[v].length);
+			System.arraycopy(revLen[v], 0, reverseWeights, offsets[v], revLen[v].length);
+		}
+		return new CompiledGraph(offsets, targets, weights, offsets, targets, reverseWeights);
+	}
+
+	/**
+	 * @return the row offsets of adjacency lists, checking that {@code len} is parallel
+	 */
+	private static int[] flatten(int[][] adj, int[][] len) {
+		int[] offsets = new int[adj.length + 1];
+		for (int v = 0; v < adj.length; v++) {
+			if (len[v].length != adj[v].length)
+				throw new IllegalArgumentException("edge lengths of " + v + " are not parallel to its edges");
+			offsets[v + 1] = offsets[v] + adj[v].length;
+		}
+		return offsets;
+	}
+
+	/**
+	 * Returns the number of vertices in this graph.
+	 *
+	 * @return the number of vertices
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the number of directed edges in this graph; an undirected edge
+	 * counts twice.
+	 *
+	 * @return the number of edges
+	 */
+	public int edges() {
+		return targets.length;
+	}
+
+	/**
+	 * Returns the position of the first edge leaving {@code v}.
+	 *
+	 * @param v the index of a vertex
+	 * @return the position of the first edge
+	 */
+	public int begin(int v) {
+		return offsets[v];
+	}
+
+	/**
+	 * Returns the position after the last edge leaving {@code v}.
+	 *
+	 * @param v the index of a vertex
+	 * @return the position after the last edge
+	 */
+	public int end(int v) {
+		return offsets[v + 1];
+	}
+
+	public int degree(int v) {
+		return offsets[v + 1] - offsets[v];
+	}
+
+	/**
+	 * Returns the head of the edge at position {@code e}.
+	 *
+	 * @param e a position between {@code begin(v)} and {@code end(v) - 1}
+	 * @return the index of the vertex the edge leads to
+	 */
+	public int target(int e) {
+		return targets[e];
+	}
+
+	/**
+	 * Returns the length of the edge at position {@code e}.
+	 *
+	 * @param e a position between {@code begin(v)} and {@code end(v) - 1}
+	 * @return the length of the edge
+	 */
+	public int weight(int e) {
+		return weights[e];
+	}
+
+	/**
+	 * Returns the graph with every edge of this graph turned around, i.e. the
+	 * edges leaving {@code v} in the reverse are the edges entering {@code v}
+	 * here, with the same lengths.
+	 *
+	 * @return the reverse graph, whose reverse is this graph
+	 */
+	public CompiledGraph reverse() {
+		return reverse;
+	}
+}
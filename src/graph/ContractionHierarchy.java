@@ -0,0 +1,484 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * The {@code ContractionHierarchy} class speeds up point-to-point shortest path
+ * queries on large graphs by preprocessing, indexed by the dense vertex indices
+ * of a {@code G}.
+ * <p>
+ * Preprocessing contracts the vertices one at a time in order of importance.
+ * Contracting a vertex {@code v} removes it from the remaining graph and adds a
+ * shortcut {@code u -> w} for every pair of edges {@code u -> v -> w} unless a
+ * local witness search finds a path from {@code u} to {@code w} avoiding
+ * {@code v} that is at least as short. The order is chosen greedily by the edge
+ * difference (shortcuts added minus edges removed) plus the number of already
+ * contracted neighbors, with lazy updates.
+ * <p>
+ * The result is an upward graph holding every edge towards a vertex contracted
+ * later, and a downward graph holding every edge from a vertex contracted
+ * later. A query runs a bidirectional search that only moves upward in both
+ * directions, see {@code SearchWorkspace.upward}, and then unpacks the
+ * shortcuts on the path it finds. A hierarchy is immutable once built and safe
+ * to share across threads; every query uses its own {@code SearchWorkspace}.
+ *
+ * @author Ivan Chang
+ */
+public class ContractionHierarchy {
+	// Witness searches give up after settling this many vertices. This only
+	// costs unnecessary shortcuts, never correctness.
+	private static final int WITNESS_SETTLE_LIMIT = 64;
+
+	private final int[] rank; // rank[v] = position of v in the contraction order
+	private final CompiledGraph up; // edges towards higher ranked vertices
+	private final CompiledGraph down; // edges from higher ranked vertices, turned around
+	private final int[] upMid, downMid; // contracted middle vertex of a shortcut, -1 if none, parallel to the edges
+	private final int shortcuts;
+
+	private ContractionHierarchy(int[] rank, CompiledGraph up, int[] upMid, CompiledGraph down, int[] downMid,
+			int shortcuts) {
+		this.rank = rank;
+		this.up = up;
+		this.upMid = upMid;
+		this.down = down;
+		this.downMid = downMid;
+		this.shortcuts = shortcuts;
+	}
+
+	/**
+	 * Builds the contraction hierarchy of a directed graph.
+	 *
+	 * @param g the compiled graph, see {@code G.compile()}
+	 * @return the contraction hierarchy
+	 */
+	public static ContractionHierarchy build(CompiledGraph g) {
+		return new Builder(g).build();
+	}
+
+	/**
+	 * Returns the number of vertices in this hierarchy.
+	 *
+	 * @return the number of vertices
+	 */
+	public int size() {
+		return rank.length;
+	}
+
+	/**
+	 * Returns the number of shortcuts added during preprocessing.
+	 *
+	 * @return the number of shortcuts
+	 */
+	public int shortcuts() {
+		return shortcuts;
+	}
+
+	/**
+	 * Returns the position of vertex {@code v} in the contraction order.
+	 *
+	 * @param v the index of a vertex
+	 * @return the rank of {@code v}, higher ranked vertices are more important
+	 */
+	public int rank(int v) {
+		return rank[v];
+	}
+
+	/**
+	 * Finds the shortest path from {@code s} to {@code t}. The length of the path
+	 * is {@code ws.distance()} and {@code ws.settled()} counts the vertices
+	 * settled by the query.
+	 *
+	 * @param ws a workspace with capacity for this hierarchy
+	 * @param s  the index of the source vertex
+	 * @param t  the index of the target vertex
+	 * @return the indices of the vertices along the path with all shortcuts
+	 *         unpacked, source first, or {@code null} if {@code t} is not
+	 *         reachable from {@code s}
+	 */
+	public int[] shortestPath(SearchWorkspace ws, int s, int t) {
+		if (!ws.upward(up, down, s, t))
+			return null;
+		return unpack(ws.path());
+	}
+
+	/**
+	 * Computes the shortest path distances from every source to every target with
+	 * the bucket-based many-to-many algorithm. A full backward upward search from
+	 * every target leaves a (target, distance) entry in a bucket at each vertex it
+	 * settles. A full forward upward search from every source then combines its
+	 * distance to each settled vertex with the entries in that vertex's bucket.
+	 * The cost is one upward search per source and per target instead of one
+	 * query per pair.
+	 *
+	 * @param ws      a workspace with capacity for this hierarchy
+	 * @param sources the indices of the source vertices
+	 * @param targets the indices of the target vertices
+	 * @return the matrix of distances, {@code [i][j]} from {@code sources[i]} to
+	 *         {@code targets[j]}, {@code SearchWorkspace.INFINITY} if unreachable
+	 */
+	public int[][] manyToMany(SearchWorkspace ws, int[] sources, int[] targets) {
+		int n = rank.length;
+		// Collect the backward search spaces, then lay out the buckets flat.
+		int[][] spaceVertex = new int[targets.length][];
+		int[][] spaceDist = new int[targets.length][];
+		int[] bucketStart = new int[n + 1];
+		for (int j = 0; j < targets.length; j++) {
+			int settled = ws.oneToMany(down, targets[j], null);
+			spaceVertex[j] = new int[settled];
+			spaceDist[j] = new int[settled];
+			for (int i = 0; i < settled; i++) {
+				int v = ws.settledVertex(i);
+				spaceVertex[j][i] = v;
+				spaceDist[j][i] = ws.dist(v);
+				bucketStart[v + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++)
+			bucketStart[v + 1] += bucketStart[v];
+		int[] bucketTarget = new int[bucketStart[n]];
+		int[] bucketDist = new int[bucketStart[n]];
+		int[] fill = Arrays.copyOf(bucketStart, n);
+		for (int j = 0; j < targets.length; j++) {
+			for (int i = 0; i < spaceVertex[j].length; i++) {
+				int k = fill[spaceVertex[j][i]]++;
+				bucketTarget[k] = j;
+				bucketDist[k] = spaceDist[j][i];
+			}
+		}
+
+		int[][] matrix = new int[sources.length][targets.length];
+		for (int i = 0; i < sources.length; i++) {
+			int[] row = matrix[i];
+			Arrays.fill(row, SearchWorkspace.INFINITY);
+			int settled = ws.oneToMany(up, sources[i], null);
+			for (int k = 0; k < settled; k++) {
+				int v = ws.settledVertex(k);
+				int d = ws.dist(v);
+				for (int b = bucketStart[v]; b < bucketStart[v + 1]; b++) {
+					int j = bucketTarget[b];
+					if (d + bucketDist[b] < row[j])
+						row[j] = d + bucketDist[b];
+				}
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Replaces every shortcut on a path through the hierarchy by the edges it
+	 * represents, using an explicit stack rather than recursion.
+	 */
+	private int[] unpack(int[] path) {
+		int[] out = new int[Math.max(16, path.length)];
+		int size = 0;
+		out[size++] = path[0];
+		int[] stack = new int[16]; // pending edges as (tail, head) pairs
+		for (int i = 1; i < path.length; i++) {
+			int top = 0;
+			stack[top++] = path[i - 1];
+			stack[top++] = path[i];
+			while (top > 0) {
+				int w = stack[--top];
+				int u = stack[--top];
+				int m = middle(u, w);
+				if (m == -1) {
+					if (size == out.length)
+						out = Arrays.copyOf(out, 2 * size);
+					out[size++] = w;
+				} else {
+					if (top + 4 > stack.length)
+						stack = Arrays.copyOf(stack, 2 * stack.length);
+					// push m -> w first so that u -> m is unpacked first
+					stack[top++] = m;
+					stack[top++] = w;
+					stack[top++] = u;
+					stack[top++] = m;
+				}
+			}
+		}
+		return Arrays.copyOf(out, size);
+	}
+
+	/**
+	 * Returns the middle vertex of the hierarchy edge {@code u -> w}, or
+	 * {@code -1} if it is an original edge. Edges towards a higher ranked vertex
+	 * are stored with their tail in the upward graph, all others with their head
+	 * in the downward graph.
+	 */
+	private int middle(int u, int w) {
+		if (rank[u] < rank[w]) {
+			for (int k = up.begin(u); k < up.end(u); k++)
+				if (up.target(k) == w)
+					return upMid[k];
+		} else {
+			for (int k = down.begin(w); k < down.end(w); k++)
+				if (down.target(k) == u)
+					return downMid[k];
+		}
+		throw new IllegalStateException("no hierarchy edge " + u + " -> " + w);
+	}
+
+	/**
+	 * Contracts the vertices of a graph and collects the upward and downward
+	 * edges. The remaining graph is kept as growable per-vertex edge lists in
+	 * both directions; a contracted vertex is removed from its neighbors' lists.
+	 */
+	private static class Builder {
+		private final int n;
+		private final EdgeList[] out, in;
+		private final boolean[] contracted;
+		private final int[] updated; // round in which a neighbor was last re-evaluated
+		private final int[] deletedNeighbors;
+		private final int[][] upAdj, upLen, upMid, downAdj, downLen, downMid;
+		private int shortcuts;
+		private int round; // number of vertices contracted so far
+
+		// witness search state
+		private final int[] dist, epochOf, targetOf;
+		private int epoch;
+		private final IntIndexMinPQ pq;
+
+		Builder(CompiledGraph g) {
+			CompiledGraph rev = g.reverse();
+			n = g.size();
+			out = new EdgeList[n];
+			in = new EdgeList[n];
+			for (int v = 0; v < n; v++) {
+				out[v] = new EdgeList(g.degree(v));
+				in[v] = new EdgeList(rev.degree(v));
+			}
+			for (int u = 0; u < n; u++)
+				for (int k = g.begin(u); k < g.end(u); k++)
+					addEdge(u, g.target(k), g.weight(k), -1);
+			contracted = new boolean[n];
+			updated = new int[n];
+			deletedNeighbors = new int[n];
+			upAdj = new int[n][];
+			upLen = new int[n][];
+			upMid = new int[n][];
+			downAdj = new int[n][];
+			downLen = new int[n][];
+			downMid = new int[n][];
+			dist = new int[n];
+			epochOf = new int[n];
+			targetOf = new int[n];
+			pq = new IntIndexMinPQ(n);
+		}
+
+		ContractionHierarchy build() {
+			IntIndexMinPQ order = new IntIndexMinPQ(n);
+			for (int v = 0; v < n; v++)
+				order.insert(v, priority(v));
+			int[] rank = new int[n];
+			int next = 0;
+			while (!order.isEmpty()) {
+				int v = order.delMin();
+				// Lazy update: the priority may have grown since it was computed.
+				int p = priority(v);
+				if (!order.isEmpty() && p > order.minKey()) {
+					order.insert(v, p);
+					continue;
+				}
+				rank[v] = next++;
+				contract(v);
+				// Drop v from the remaining graph, then re-evaluate its neighbors.
+				for (int i = 0; i < out[v].size; i++)
+					in[out[v].to[i]].remove(v);
+				for (int i = 0; i < in[v].size; i++)
+					out[in[v].to[i]].remove(v);
+				round++;
+				for (int i = 0; i < out[v].size; i++)
+					updateNeighbor(order, out[v].to[i]);
+				for (int i = 0; i < in[v].size; i++)
+					updateNeighbor(order, in[v].to[i]);
+				out[v] = in[v] = null; // no longer needed
+			}
+			return new ContractionHierarchy(rank, CompiledGraph.of(upAdj, upLen), flatten(upMid),
+					CompiledGraph.of(downAdj, downLen), flatten(downMid), shortcuts);
+		}
+
+		// Lays out per-vertex rows back to back, the way CompiledGraph lays out edges
+		private static int[] flatten(int[][] rows) {
+			int size = 0;
+			for (int[] row : rows)
+				size += row.length;
+			int[] flat = new int[size];
+			int i = 0;
+			for (int[] row : rows) {
+				System.arraycopy(row, 0, flat, i, row.length);
+				i += row.length;
+			}
+			return flat;
+		}
+
+		private void updateNeighbor(IntIndexMinPQ order, int w) {
+			if (updated[w] == round)
+				return; // both an in- and an out-neighbor
+			updated[w] = round;
+			deletedNeighbors[w]++;
+			order.changeKey(w, priority(w));
+		}
+
+		private int priority(int v) {
+			int removed = out[v].size + in[v].size;
+			return shortcutsFor(v, false) - removed + deletedNeighbors[v];
+		}
+
+		private void contract(int v) {
+			// Remaining edges of v all lead to vertices contracted later.
+			upAdj[v] = Arrays.copyOf(out[v].to, out[v].size);
+			upLen[v] = Arrays.copyOf(out[v].len, out[v].size);
+			upMid[v] = Arrays.copyOf(out[v].mid, out[v].size);
+			downAdj[v] = Arrays.copyOf(in[v].to, in[v].size);
+			downLen[v] = Arrays.copyOf(in[v].len, in[v].size);
+			downMid[v] = Arrays.copyOf(in[v].mid, in[v].size);
+			shortcutsFor(v, true);
+			contracted[v] = true;
+		}
+
+		/**
+		 * Counts, and if {@code add} is set adds, the shortcuts needed to contract
+		 * {@code v}.
+		 */
+		private int shortcutsFor(int v, boolean add) {
+			EdgeList ins = in[v], outs = out[v];
+			int maxOut = 0;
+			for (int j = 0; j < outs.size; j++)
+				maxOut = Math.max(maxOut, outs.len[j]);
+			int count = 0;
+			for (int i = 0; i < ins.size; i++) {
+				int u = ins.to[i];
+				int lu = ins.len[i];
+				witnessSearch(u, v, lu + maxOut, outs);
+				for (int j = 0; j < outs.size; j++) {
+					int w = outs.to[j];
+					if (w == u)
+						continue;
+					int d = lu + outs.len[j];
+					int witness = epochOf[w] == epoch ? dist[w] : SearchWorkspace.INFINITY;
+					if (witness > d) {
+						count++;
+						if (add && addEdge(u, w, d, v))
+							shortcuts++;
+					}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Runs a bounded Dijkstra search from {@code u} in the remaining graph
+		 * without {@code v}, until all heads of {@code targets} are settled.
+		 */
+		private void witnessSearch(int u, int v, int maxDist, EdgeList targets) {
+			pq.clear();
+			epoch++;
+			int remaining = 0;
+			for (int j = 0; j < targets.size; j++) {
+				int w = targets.to[j];
+				if (w != u && targetOf[w] != epoch) {
+					targetOf[w] = epoch;
+					remaining++;
+				}
+			}
+			epochOf[u] = epoch;
+			dist[u] = 0;
+			pq.insert(u, 0);
+			int settled = 0;
+			while (!pq.isEmpty() && remaining > 0 && settled++ < WITNESS_SETTLE_LIMIT) {
+				if (pq.minKey() > maxDist)
+					break;
+				int x = pq.delMin();
+				if (targetOf[x] == epoch)
+					remaining--;
+				EdgeList edges = out[x];
+				for (int i = 0; i < edges.size; i++) {
+					int y = edges.to[i];
+					if (y == v)
+						continue;
+					int d = dist[x] + edges.len[i];
+					if (d > maxDist)
+						continue;
+					if (epochOf[y] != epoch) {
+						epochOf[y] = epoch;
+						dist[y] = d;
+						pq.insert(y, d);
+					} else if (d < dist[y]) {
+						dist[y] = d;
+						if (pq.contains(y))
+							pq.decreaseKey(y, d);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds edge {@code u -> w}, or shortens it if it already exists.
+		 *
+		 * @return true if a new edge was added
+		 */
+		private boolean addEdge(int u, int w, int length, int mid) {
+			if (u == w)
+				return false;
+			int i = out[u].indexOf(w);
+			if (i >= 0) {
+				if (length < out[u].len[i]) {
+					out[u].set(i, length, mid);
+					in[w].set(in[w].indexOf(u), length, mid);
+				}
+				return false;
+			}
+			out[u].add(w, length, mid);
+			in[w].add(u, length, mid);
+			return true;
+		}
+	}
+
+	/**
+	 * A growable list of edges of one vertex.
+	 */
+	private static class EdgeList {
+		int[] to, len, mid;
+		int size;
+
+		EdgeList(int capacity) {
+			capacity = Math.max(capacity, 2);
+			to = new int[capacity];
+			len = new int[capacity];
+			mid = new int[capacity];
+		}
+
+		int indexOf(int w) {
+			for (int i = 0; i < size; i++)
+				if (to[i] == w)
+					return i;
+			return -1;
+		}
+
+		void set(int i, int length, int middle) {
+			len[i] = length;
+			mid[i] = middle;
+		}
+
+		void remove(int w) {
+			int i = indexOf(w);
+			if (i >= 0) {
+				size--;
+				to[i] = to[size];
+				len[i] = len[size];
+				mid[i] = mid[size];
+			}
+		}
+
+		void add(int w, int length, int middle) {
+			if (size == to.length) {
+				to = Arrays.copyOf(to, 2 * size);
+				len = Arrays.copyOf(len, 2 * size);
+				mid = Arrays.copyOf(mid, 2 * size);
+			}
+			to[size] = w;
+			len[size] = length;
+			mid[size++] = middle;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package graph;
+
+import java.util.stream.IntStream;
+
+/**
+ * The {@code DistanceTable} class holds the shortest path distances and next
+ * hops between all pairs of vertices of a graph, indexed by the dense vertex
+ * indices of a {@code G}. Once built, the distance between two vertices is a
+ * single array lookup and the shortest path between them is found by
+ * following next hops, in time proportional to the length of the path.
+ * <p>
+ * The table is built with one Dijkstra search per source vertex, running in
+ * parallel. It takes {@code 8 * V^2} bytes, so it is meant for small graphs
+ * such as the subway network (about 115 KB for 120 stops). A table is
+ * immutable once built and safe to share across threads.
+ *
+ * @author Ivan Chang
+ */
+public class DistanceTable {
+	public static final int MAX_VERTICES = 8192; // 512 MB
+
+	private final int n;
+	private final int[] dist; // dist[s * n + t] = length of shortest path from s to t
+	private final int[] next; // next[s * n + t] = vertex after s on that path, -1 if none
+
+	private DistanceTable(int n) {
+		this.n = n;
+		this.dist = new int[n * n];
+		this.next = new int[n * n];
+	}
+
+	/**
+	 * Builds the distance table of a graph.
+	 *
+	 * @param g the compiled graph, see {@code G.compile()}
+	 * @return the distance table
+	 * @throws IllegalArgumentException if the graph has more than
+	 *                                  {@code MAX_VERTICES} vertices
+	 */
+	public static DistanceTable build(CompiledGraph g) {
+		int n = g.size();
+		if (n > MAX_VERTICES)
+			throw new IllegalArgumentException("graph too large for a distance table: " + n + " vertices");
+		DistanceTable table = new DistanceTable(n);
+		ThreadLocal<SearchWorkspace> workspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(n));
+		ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[n]);
+		IntStream.range(0, n).parallel().forEach(s -> {
+			SearchWorkspace ws = workspaces.get();
+			ws.dijkstra(g, s, -1);
+			table.fill(s, ws, stacks.get());
+		});
+		return table;
+	}
+
+	/**
+	 * Copies distances and next hops of the shortest path tree rooted at
+	 * {@code s} into row {@code s}. The next hop of {@code t} is the next hop of
+	 * its predecessor, unless the predecessor is {@code s} itself; predecessors
+	 * are resolved first with an explicit stack.
+	 */
+	private void fill(int s, SearchWorkspace ws, int[] stack) {
+		int row = s * n;
+		for (int t = 0; t < n; t++) {
+			dist[row + t] = ws.dist(t);
+			next[row + t] = -2; // not yet resolved
+		}
+		next[row + s] = s;
+		for (int t = 0; t < n; t++) {
+			if (next[row + t] != -2)
+				continue;
+			int top = 0;
+			int v = t;
+			while (next[row + v] == -2) {
+				int p = ws.prev(v);
+				if (p == -1) {
+					next[row + v] = -1; // unreachable
+					break;
+				}
+				if (p == s) {
+					next[row + v] = v;
+					break;
+				}
+				stack[top++] = v;
+				v = p;
+			}
+			while (top > 0) {
+				v = stack[--top];
+				next[row + v] = next[row + ws.prev(v)];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of vertices in this table.
+	 *
+	 * @return the number of vertices
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Returns the length of the shortest path from {@code s} to {@code t}.
+	 *
+	 * @param s the index of the source vertex
+	 * @param t the index of the target vertex
+	 * @return the distance, or {@code SearchWorkspace.INFINITY} if {@code t} is
+	 *         not reachable from {@code s}
+	 */
+	public int distance(int s, int t) {
+		return dist[s * n + t];
+	}
+
+	/**
+	 * Returns the vertex after {@code s} on the shortest path from {@code s} to
+	 * {@code t}.
+	 *
+	 * @param s the index of the source vertex
+	 * @param t the index of the target vertex
+	 * @return the index of the next vertex, {@code s} if {@code s == t}, or
+	 *         {@code -1} if {@code t} is not reachable from {@code s}
+	 */
+	public int nextHop(int s, int t) {
+		return next[s * n + t];
+	}
+
+	/**
+	 * Returns the vertices of the shortest path from {@code s} to {@code t}.
+	 *
+	 * @param s the index of the source vertex
+	 * @param t the index of the target vertex
+	 * @return the indices of the vertices along the path, source first, or
+	 *         {@code null} if {@code t} is not reachable from {@code s}
+	 */
+	public int[] path(int s, int t) {
+		if (next[s * n + t] == -1)
+			return null;
+		int hops = 0;
+		for (int v = s; v != t; v = next[v * n + t])
+			hops++;
+		int[] path = new int[hops + 1];
+		path[0] = s;
+		for (int i = 1, v = s; v != t; i++) {
+			v = next[v * n + t];
+			path[i] = v;
+		}
+		return path;
+	}
+}
@@ -1,8 +1,11 @@
 package graph;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,6 +13,15 @@ import java.util.Set;
  * A generic Graph that represents a sparse graph using adjacency list.
  * It supports the <em>add Vertex</em> and <em>add Edge/em>
  * operations.
+ * <p>
+ * Every vertex is also assigned a dense integer index between {@code 0} and
+ * {@code getNumVertices() - 1} in insertion order, so that algorithms can work
+ * on primitive arrays instead of hashing vertex objects.
+ * <p>
+ * A {@code G} is the builder of a graph. Once it is complete,
+ * {@code compile()} turns it into an immutable {@code CompiledGraph} that
+ * queries run on, and {@code freeze()} also rejects any further modification,
+ * so that the graph can be shared across threads.
  * 
  *  @author Ivan Chang
  */
@@ -19,25 +31,39 @@ public class G<T> implements Iterable<T> {
 		int edgeLength(T v, T w);
 	}
 
-	private Map<T, Set<T>> verticesMap;
+	private volatile Map<T, Set<T>> verticesMap; // null after restore() until needed
+	private Map<T, Integer> indexMap; // vertex -> dense index
+	private List<T> vertices; // dense index -> vertex
 	private int edgesCount;
 	private EdgeLengthFunc<T> edgeLength;
+	// Cached, rebuilt after any modification. Volatile so that concurrent readers
+	// of an unchanging graph always see fully built arrays.
+	private volatile int[][] adjacencyIndex;
+	private volatile int[][] edgeLengthIndex;
+	private volatile int[][] reverseEdgeLengthIndex;
+	private volatile CompiledGraph compiled;
+	private volatile boolean frozen;
 
 	public G() {
 		verticesMap = new HashMap<>();
+		indexMap = new HashMap<>();
+		vertices = new ArrayList<>();
 	}
 
 	public int getNumVertices() {
-		return verticesMap.size();
+		return vertices.size();
 	}
 
 	public int getNumEdges() {
 		return edgesCount;
 	}
 	
+	/**
+	 * @return a read-only view of the neighbors of {@code v}
+	 */
 	public Set<T> getNeighbors(T v) {
 		validateVertex(v);
-		return verticesMap.get(v);
+		return Collections.unmodifiableSet(verticesMap().get(v));
 	}
 
 	private void validateVertex(T v) {
@@ -47,33 +73,267 @@ public class G<T> implements Iterable<T> {
 
 	public int degree(T v) {
 		validateVertex(v);
-		return verticesMap.get(v).size();
+		return verticesMap().get(v).size();
 	}
 
 	public void addEdge(T v, T w) {
+		checkNotFrozen();
 		if (!hasVertex(v))
 			addVertex(v);
 		if (!hasVertex(w))
 			addVertex(w);
 		if (!hasEdge(v, w))
 			edgesCount++;
-		verticesMap.get(v).add(w);
-		verticesMap.get(w).add(v);
+		verticesMap().get(v).add(w);
+		verticesMap().get(w).add(v);
+		invalidateIndex();
 	}
 
 	public void addVertex(T v) {
-		if (!hasVertex(v))
-			verticesMap.put(v, new HashSet<T>());
+		checkNotFrozen();
+		if (!hasVertex(v)) {
+			verticesMap().put(v, new HashSet<T>());
+			indexMap.put(v, vertices.size());
+			vertices.add(v);
+			invalidateIndex();
+		}
+	}
+
+	/**
+	 * Returns the dense index of vertex {@code v}.
+	 *
+	 * @param v a vertex of this graph
+	 * @return an index between {@code 0} and {@code getNumVertices() - 1}
+	 * @throws IllegalArgumentException if {@code v} is not a vertex
+	 */
+	public int indexOf(T v) {
+		validateVertex(v);
+		return indexMap.get(v);
+	}
+
+	/**
+	 * Returns the vertex associated with dense index {@code i}.
+	 *
+	 * @param i an index between {@code 0} and {@code getNumVertices() - 1}
+	 * @return the vertex with index {@code i}
+	 * @throws IndexOutOfBoundsException unless {@code 0 <= i < getNumVertices()}
+	 */
+	public T vertexAt(int i) {
+		return vertices.get(i);
+	}
+
+	/**
+	 * Returns the adjacency lists of this graph in terms of dense indices,
+	 * i.e. {@code adjacencyIndex()[i]} holds the indices of the neighbors of
+	 * {@code vertexAt(i)}. The arrays are built lazily and cached until the
+	 * graph is modified; callers must not modify them. Safe to call from many
+	 * threads as long as the graph itself is no longer modified.
+	 *
+	 * @return the index-based adjacency lists
+	 */
+	public int[][] adjacencyIndex() {
+		int[][] adjacencyIndex = this.adjacencyIndex;
+		if (adjacencyIndex == null) {
+			int[][] adj = new int[vertices.size()][];
+			for (int i = 0; i < adj.length; i++) {
+				Set<T> neighbors = verticesMap().get(vertices.get(i));
+				int[] row = new int[neighbors.size()];
+				int k = 0;
+				for (T w : neighbors)
+					row[k++] = indexMap.get(w);
+				adj[i] = row;
+			}
+			this.adjacencyIndex = adjacencyIndex = adj;
+		}
+		return adjacencyIndex;
+	}
+
+	/**
+	 * Returns the edge lengths of this graph parallel to {@code adjacencyIndex()},
+	 * i.e. {@code edgeLengthIndex()[i][k]} is the length of the edge from
+	 * {@code vertexAt(i)} to {@code vertexAt(adjacencyIndex()[i][k])}. Edges have
+	 * length 1 if no edge length function is set. The arrays are built lazily and
+	 * cached until the graph is modified; callers must not modify them.
+	 *
+	 * @return the index-based edge lengths
+	 */
+	public int[][] edgeLengthIndex() {
+		int[][] edgeLengthIndex = this.edgeLengthIndex;
+		if (edgeLengthIndex == null) {
+			int[][] adj = adjacencyIndex();
+			int[][] len = new int[adj.length][];
+			for (int i = 0; i < adj.length; i++) {
+				T v = vertices.get(i);
+				int[] row = new int[adj[i].length];
+				for (int k = 0; k < row.length; k++)
+					row[k] = edgeLength == null ? 1 : edgeLength.edgeLength(v, vertices.get(adj[i][k]));
+				len[i] = row;
+			}
+			this.edgeLengthIndex = edgeLengthIndex = len;
+		}
+		return edgeLengthIndex;
+	}
+
+	/**
+	 * Returns the lengths of the edges in the opposite direction, parallel to
+	 * {@code adjacencyIndex()}, i.e. {@code reverseEdgeLengthIndex()[i][k]} is the
+	 * length of the edge from {@code vertexAt(adjacencyIndex()[i][k])} to
+	 * {@code vertexAt(i)}. Used by searches that run backwards from a target.
+	 * Cached like {@code edgeLengthIndex()}.
+	 *
+	 * @return the index-based reverse edge lengths
+	 */
+	public int[][] reverseEdgeLengthIndex() {
+		int[][] reverseEdgeLengthIndex = this.reverseEdgeLengthIndex;
+		if (reverseEdgeLengthIndex == null) {
+			int[][] adj = adjacencyIndex();
+			int[][] len = new int[adj.length][];
+			for (int i = 0; i < adj.length; i++) {
+				T v = vertices.get(i);
+				int[] row = new int[adj[i].length];
+				for (int k = 0; k < row.length; k++)
+					row[k] = edgeLength == null ? 1 : edgeLength.edgeLength(vertices.get(adj[i][k]), v);
+				len[i] = row;
+			}
+			this.reverseEdgeLengthIndex = reverseEdgeLengthIndex = len;
+		}
+		return reverseEdgeLengthIndex;
+	}
+
+	/**
+	 * Returns the immutable compiled form of this graph, holding the edges of
+	 * {@code adjacencyIndex()} with their lengths from {@code edgeLengthIndex()},
+	 * and the lengths from {@code reverseEdgeLengthIndex()} in its reverse. It is
+	 * built lazily and cached until the graph is modified, so a compiled graph
+	 * that is still the one returned here reflects the current graph.
+	 *
+	 * @return the compiled graph
+	 */
+	public CompiledGraph compile() {
+		CompiledGraph compiled = this.compiled;
+		if (compiled == null) {
+			compiled = CompiledGraph.symmetric(adjacencyIndex(), edgeLengthIndex(), reverseEdgeLengthIndex());
+			this.compiled = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Compiles this graph and rejects any further modification, including a new
+	 * edge length function.
+	 *
+	 * @return the compiled graph, which stays current from now on
+	 */
+	public CompiledGraph freeze() {
+		frozen = true;
+		return compile();
+	}
+
+	/**
+	 * @return true if {@code freeze()} was called
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new IllegalStateException("graph is frozen");
+	}
+
+	/**
+	 * Restores an empty graph from its index arrays, e.g. read back from a
+	 * snapshot, without building any per-vertex sets. The adjacency sets are
+	 * only built from the arrays once something needs them, so a restored graph
+	 * is ready for index-based searches right away.
+	 *
+	 * @param vertices the vertices in index order
+	 * @param adjacencyIndex the index-based adjacency lists, see {@code adjacencyIndex()}
+	 * @param edgeLengthIndex the index-based edge lengths, see {@code edgeLengthIndex()}
+	 * @param reverseEdgeLengthIndex the index-based reverse edge lengths, see {@code reverseEdgeLengthIndex()}
+	 * @throws IllegalStateException if the graph is not empty
+	 * @throws IllegalArgumentException if the arrays do not have one row per vertex
+	 */
+	protected void restore(List<T> vertices, int[][] adjacencyIndex, int[][] edgeLengthIndex,
+			int[][] reverseEdgeLengthIndex) {
+		restore(vertices, adjacencyIndex, edgeLengthIndex, reverseEdgeLengthIndex, null);
+	}
+
+	/**
+	 * Restores an empty graph from its index arrays like
+	 * {@code restore(List, int[][], int[][], int[][])}, taking the compiled form
+	 * of another graph with the very same index arrays instead of compiling them
+	 * again, so that whatever was built on that compiled graph stays current.
+	 *
+	 * @param compiled the compiled form of the index arrays, compiled on demand if <em>null</em>
+	 * @throws IllegalArgumentException if the compiled graph does not have one vertex per vertex
+	 */
+	protected void restore(List<T> vertices, int[][] adjacencyIndex, int[][] edgeLengthIndex,
+			int[][] reverseEdgeLengthIndex, CompiledGraph compiled) {
+		checkNotFrozen();
+		if (!this.vertices.isEmpty())
+			throw new IllegalStateException("graph is not empty");
+		int n = vertices.size();
+		if (adjacencyIndex.length != n || edgeLengthIndex.length != n || reverseEdgeLengthIndex.length != n)
+			throw new IllegalArgumentException("index arrays do not have " + n + " rows");
+		if (compiled != null && compiled.size() != n)
+			throw new IllegalArgumentException("compiled graph does not have " + n + " vertices");
+		Map<T, Integer> indexMap = new HashMap<>(2 * n);
+		for (int i = 0; i < n; i++)
+			if (indexMap.put(vertices.get(i), i) != null)
+				throw new IllegalArgumentException(vertices.get(i) + " is a duplicate vertex");
+		int entries = 0;
+		for (int[] row : adjacencyIndex)
+			entries += row.length;
+		this.verticesMap = null; // built on demand
+		this.indexMap = indexMap;
+		this.vertices = new ArrayList<>(vertices);
+		this.edgesCount = entries / 2; // every undirected edge is listed from both ends
+		this.adjacencyIndex = adjacencyIndex;
+		this.edgeLengthIndex = edgeLengthIndex;
+		this.reverseEdgeLengthIndex = reverseEdgeLengthIndex;
+		this.compiled = compiled;
+	}
+
+	/**
+	 * @return the adjacency sets, built from the index arrays after {@code restore}
+	 */
+	private Map<T, Set<T>> verticesMap() {
+		Map<T, Set<T>> verticesMap = this.verticesMap;
+		return verticesMap != null ? verticesMap : buildVerticesMap();
+	}
+
+	private synchronized Map<T, Set<T>> buildVerticesMap() {
+		Map<T, Set<T>> verticesMap = this.verticesMap;
+		if (verticesMap == null) {
+			int[][] adj = this.adjacencyIndex;
+			verticesMap = new HashMap<>(2 * vertices.size());
+			for (int i = 0; i < vertices.size(); i++) {
+				Set<T> neighbors = new HashSet<T>(2 * adj[i].length);
+				for (int w : adj[i])
+					neighbors.add(vertices.get(w));
+				verticesMap.put(vertices.get(i), neighbors);
+			}
+			this.verticesMap = verticesMap;
+		}
+		return verticesMap;
+	}
+
+	private void invalidateIndex() {
+		adjacencyIndex = null;
+		edgeLengthIndex = null;
+		reverseEdgeLengthIndex = null;
+		compiled = null;
 	}
 
 	public boolean hasEdge(T v, T w) {
 		validateVertex(v);
 		validateVertex(w);
-		return verticesMap.get(v).contains(w);
+		return verticesMap().get(v).contains(w);
 	}
 
 	public boolean hasVertex(T v) {
-		return verticesMap.containsKey(v);
+		return indexMap.containsKey(v);
 	}
 
 	public EdgeLengthFunc<T> getEdgeLength() {
@@ -81,18 +341,23 @@ public class G<T> implements Iterable<T> {
 	}
 
 	public void setEdgeLength(EdgeLengthFunc<T> edgeLength) {
+		checkNotFrozen();
 		this.edgeLength = edgeLength;
+		edgeLengthIndex = null;
+		reverseEdgeLengthIndex = null;
+		compiled = null;
 	}
 
 	@Override
 	public Iterator<T> iterator() {
-		return verticesMap.keySet().iterator();
+		return verticesMap().keySet().iterator();
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 
+		Map<T, Set<T>> verticesMap = verticesMap();
 		for (T v : verticesMap.keySet()) {
 			builder.append(v.toString() + ": ");
 			for (T w : verticesMap.get(v)) {
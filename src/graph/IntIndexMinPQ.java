@@ -0,0 +1,329 @@
+package graph;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The {@code IntIndexMinPQ} class represents an indexed priority queue of
+ * primitive {@code int} keys. It supports the same operations as
+ * {@code IndexMinPQ}, but stores the keys in an {@code int[]} array and compares
+ * them directly instead of boxing them and calling {@code compareTo}.
+ * <p>
+ * This implementation uses a d-ary heap (4-ary by default) along with an array
+ * to associate keys with integers in the given range. A wider heap is shallower,
+ * which makes <em>insert</em> and <em>decrease-key</em> cheaper, and the
+ * children of a node sit next to each other in memory. The <em>insert</em>,
+ * <em>delete-the-minimum</em>, <em>delete</em>, <em>change-key</em>,
+ * <em>decrease-key</em>, and <em>increase-key</em> operations take logarithmic
+ * time. The <em>is-empty</em>, <em>size</em>, <em>min-index</em>,
+ * <em>min-key</em>, <em>contains</em>, and <em>key-of</em> operations take
+ * constant time. Construction takes time proportional to the specified
+ * capacity.
+ *
+ * @author Ivan Chang
+ */
+public class IntIndexMinPQ {
+	public static final int DEFAULT_ARITY = 4;
+
+	private final int maxN; // maximum number of elements on PQ
+	private final int d; // number of children per heap node
+	private int n; // number of elements on PQ
+	private final int[] pq; // d-ary heap using 0-based indexing
+	private final int[] qp; // inverse of pq - qp[pq[i]] = pq[qp[i]] = i
+	private final int[] keys; // keys[i] = priority of i
+
+	/**
+	 * Initializes an empty 4-ary indexed priority queue with indices between
+	 * {@code 0} and {@code maxN - 1}.
+	 *
+	 * @param maxN the keys on this priority queue are index from {@code 0}
+	 *             {@code maxN - 1}
+	 * @throws IllegalArgumentException if {@code maxN < 0}
+	 */
+	public IntIndexMinPQ(int maxN) {
+		this(maxN, DEFAULT_ARITY);
+	}
+
+	/**
+	 * Initializes an empty d-ary indexed priority queue with indices between
+	 * {@code 0} and {@code maxN - 1}.
+	 *
+	 * @param maxN  the keys on this priority queue are index from {@code 0}
+	 *              {@code maxN - 1}
+	 * @param arity the number of children per heap node
+	 * @throws IllegalArgumentException if {@code maxN < 0} or {@code arity < 2}
+	 */
+	public IntIndexMinPQ(int maxN, int arity) {
+		if (maxN < 0)
+			throw new IllegalArgumentException();
+		if (arity < 2)
+			throw new IllegalArgumentException("arity must be at least 2");
+		this.maxN = maxN;
+		this.d = arity;
+		n = 0;
+		keys = new int[maxN];
+		pq = new int[maxN];
+		qp = new int[maxN];
+		for (int i = 0; i < maxN; i++)
+			qp[i] = -1;
+	}
+
+	/**
+	 * Returns true if this priority queue is empty.
+	 *
+	 * @return {@code true} if this priority queue is empty; {@code false} otherwise
+	 */
+	public boolean isEmpty() {
+		return n == 0;
+	}
+
+	/**
+	 * Is {@code i} an index on this priority queue?
+	 *
+	 * @param i an index
+	 * @return {@code true} if {@code i} is an index on this priority queue;
+	 *         {@code false} otherwise
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 */
+	public boolean contains(int i) {
+		if (i < 0 || i >= maxN)
+			throw new IllegalArgumentException();
+		return qp[i] != -1;
+	}
+
+	/**
+	 * Returns the number of keys on this priority queue.
+	 *
+	 * @return the number of keys on this priority queue
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Returns the number of children per heap node.
+	 *
+	 * @return the arity of the heap
+	 */
+	public int arity() {
+		return d;
+	}
+
+	/**
+	 * Associates key with index {@code i}.
+	 *
+	 * @param i   an index
+	 * @param key the key to associate with index {@code i}
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 * @throws IllegalArgumentException if there already is an item associated with
+	 *                                  index {@code i}
+	 */
+	public void insert(int i, int key) {
+		if (contains(i))
+			throw new IllegalArgumentException("index is already in the priority queue");
+		qp[i] = n;
+		pq[n] = i;
+		keys[i] = key;
+		swim(n++);
+	}
+
+	/**
+	 * Returns an index associated with a minimum key.
+	 *
+	 * @return an index associated with a minimum key
+	 * @throws NoSuchElementException if this priority queue is empty
+	 */
+	public int minIndex() {
+		if (n == 0)
+			throw new NoSuchElementException("Priority queue underflow");
+		return pq[0];
+	}
+
+	/**
+	 * Returns a minimum key.
+	 *
+	 * @return a minimum key
+	 * @throws NoSuchElementException if this priority queue is empty
+	 */
+	public int minKey() {
+		if (n == 0)
+			throw new NoSuchElementException("Priority queue underflow");
+		return keys[pq[0]];
+	}
+
+	/**
+	 * Removes a minimum key and returns its associated index.
+	 * 
+	 * @return an index associated with a minimum key
+	 * @throws NoSuchElementException if this priority queue is empty
+	 */
+	public int delMin() {
+		if (n == 0)
+			throw new NoSuchElementException("Priority queue underflow");
+		int min = pq[0];
+		exch(0, --n);
+		sink(0);
+		qp[min] = -1; // delete
+		pq[n] = -1; // not needed
+		return min;
+	}
+
+	/**
+	 * Returns the key associated with index {@code i}.
+	 *
+	 * @param i the index of the key to return
+	 * @return the key associated with index {@code i}
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 * @throws NoSuchElementException   no key is associated with index {@code i}
+	 */
+	public int keyOf(int i) {
+		if (!contains(i))
+			throw new NoSuchElementException("index is not in the priority queue");
+		return keys[i];
+	}
+
+	/**
+	 * Change the key associated with index {@code i} to the specified value.
+	 *
+	 * @param i   the index of the key to change
+	 * @param key change the key associated with index {@code i} to this key
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 * @throws NoSuchElementException   no key is associated with index {@code i}
+	 */
+	public void changeKey(int i, int key) {
+		if (!contains(i))
+			throw new NoSuchElementException("index is not in the priority queue");
+		keys[i] = key;
+		swim(qp[i]);
+		sink(qp[i]);
+	}
+
+	/**
+	 * Decrease the key associated with index {@code i} to the specified value.
+	 *
+	 * @param i   the index of the key to decrease
+	 * @param key decrease the key associated with index {@code i} to this key
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 * @throws IllegalArgumentException if {@code key > keyOf(i)}
+	 * @throws NoSuchElementException   no key is associated with index {@code i}
+	 */
+	public void decreaseKey(int i, int key) {
+		if (!contains(i))
+			throw new NoSuchElementException("index is not in the priority queue");
+		if (keys[i] < key)
+			throw new IllegalArgumentException(
+					"Calling decreaseKey() with given argument would increase the key");
+		keys[i] = key;
+		swim(qp[i]);
+	}
+
+	/**
+	 * Increase the key associated with index {@code i} to the specified value.
+	 *
+	 * @param i   the index of the key to increase
+	 * @param key increase the key associated with index {@code i} to this key
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 * @throws IllegalArgumentException if {@code key < keyOf(i)}
+	 * @throws NoSuchElementException   no key is associated with index {@code i}
+	 */
+	public void increaseKey(int i, int key) {
+		if (!contains(i))
+			throw new NoSuchElementException("index is not in the priority queue");
+		if (keys[i] > key)
+			throw new IllegalArgumentException(
+					"Calling increaseKey() with given argument would decrease the key");
+		keys[i] = key;
+		sink(qp[i]);
+	}
+
+	/**
+	 * Remove the key associated with index {@code i}.
+	 *
+	 * @param i the index of the key to remove
+	 * @throws IllegalArgumentException unless {@code 0 <= i < maxN}
+	 * @throws NoSuchElementException   no key is associated with index {@code i}
+	 */
+	public void delete(int i) {
+		if (!contains(i))
+			throw new NoSuchElementException("index is not in the priority queue");
+		int index = qp[i];
+		exch(index, --n);
+		if (index < n) {
+			swim(index);
+			sink(index);
+		}
+		qp[i] = -1;
+		pq[n] = -1;
+	}
+
+	/**
+	 * Removes all keys from this priority queue. Takes time proportional to the
+	 * number of keys on the priority queue rather than its capacity.
+	 */
+	public void clear() {
+		for (int k = 0; k < n; k++) {
+			qp[pq[k]] = -1;
+			pq[k] = -1;
+		}
+		n = 0;
+	}
+
+	/***************************************************************************
+	 * General helper functions.
+	 ***************************************************************************/
+	private void exch(int i, int j) {
+		int swap = pq[i];
+		pq[i] = pq[j];
+		pq[j] = swap;
+		qp[pq[i]] = i;
+		qp[pq[j]] = j;
+	}
+
+	/***************************************************************************
+	 * Heap helper functions. The children of node k are d*k+1 ... d*k+d.
+	 ***************************************************************************/
+	private void swim(int k) {
+		int i = pq[k];
+		int key = keys[i];
+		while (k > 0) {
+			int parent = (k - 1) / d;
+			int p = pq[parent];
+			if (keys[p] <= key)
+				break;
+			pq[k] = p;
+			qp[p] = k;
+			k = parent;
+		}
+		pq[k] = i;
+		qp[i] = k;
+	}
+
+	private void sink(int k) {
+		if (k >= n)
+			return;
+		int i = pq[k];
+		int key = keys[i];
+		while (true) {
+			int first = d * k + 1;
+			if (first >= n)
+				break;
+			int last = Math.min(first + d, n);
+			int child = first;
+			int childKey = keys[pq[first]];
+			for (int j = first + 1; j < last; j++) {
+				int jKey = keys[pq[j]];
+				if (jKey < childKey) {
+					child = j;
+					childKey = jKey;
+				}
+			}
+			if (key <= childKey)
+				break;
+			int c = pq[child];
+			pq[k] = c;
+			qp[c] = k;
+			k = child;
+		}
+		pq[k] = i;
+		qp[i] = k;
+	}
+}
@@ -0,0 +1,422 @@
+package graph;
+
+import java.util.Arrays;
+
+import metrics.Metrics;
+
+/**
+ * The {@code SearchWorkspace} class holds the per-query state of a shortest
+ * path search over the dense vertex indices of a {@code CompiledGraph}:
+ * tentative distances, predecessors and the priority queue. It supports plain
+ * Dijkstra, A*, bidirectional Dijkstra and contraction hierarchy searches.
+ * <p>
+ * A workspace is not safe for concurrent use, but it can be reused for any
+ * number of consecutive searches. Every search starts a new epoch, so
+ * resetting a workspace takes constant time rather than time proportional to
+ * the number of vertices. Concurrent queries on one graph each use their own
+ * workspace.
+ *
+ * @author Ivan Chang
+ */
+public class SearchWorkspace {
+	public static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	/**
+	 * A lower bound on the distance from a vertex to the target of an A* search.
+	 * It must be consistent, i.e. never decrease by more than the length of an
+	 * edge when moving along that edge, and zero at the target.
+	 */
+	public interface Heuristic {
+		int estimate(int v);
+	}
+
+	private final int[] dist; // dist[v] = length of shortest known path to v
+	private final int[] prev; // prev[v] = previous vertex on that path
+	private final int[] epochOf; // dist[v] and prev[v] are valid iff epochOf[v] == epoch
+	private final int[] order; // order[i] = i-th vertex settled by a one-to-all or one-to-many search
+	private final int[] targetOf; // targetOf[v] == epoch iff v is a target of a one-to-many search
+	private final IntIndexMinPQ pq;
+	private int epoch;
+	private int settled; // number of vertices removed from the queue
+	private int decreased; // number of keys decreased, counted only if Metrics.ENABLED
+
+	// Result of the last point-to-point search.
+	private int target = -1;
+	private int meet = -1; // vertex where the searches met, -1 if they did not
+	private int distance = INFINITY;
+	private SearchWorkspace backward; // created on first bidirectional search
+	private boolean twoSided; // the last search also ran backward, found a path or not
+
+	/**
+	 * Initializes a workspace for graphs with up to {@code n} vertices.
+	 *
+	 * @param n the number of vertices
+	 */
+	public SearchWorkspace(int n) {
+		dist = new int[n];
+		prev = new int[n];
+		epochOf = new int[n];
+		order = new int[n];
+		targetOf = new int[n];
+		pq = new IntIndexMinPQ(n);
+	}
+
+	/**
+	 * Returns the number of vertices this workspace can handle.
+	 *
+	 * @return the number of vertices
+	 */
+	public int capacity() {
+		return dist.length;
+	}
+
+	/**
+	 * Discards the state of the previous search.
+	 */
+	public void reset() {
+		pq.clear();
+		settled = 0;
+		decreased = 0;
+		target = -1;
+		meet = -1;
+		twoSided = false;
+		distance = INFINITY;
+		if (++epoch == 0) {
+			// Wrapped around after 2^32 searches, stale entries could look valid.
+			Arrays.fill(epochOf, 0);
+			Arrays.fill(targetOf, 0);
+			epoch = 1;
+		}
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from {@code s} until {@code t} is settled, or until
+	 * every reachable vertex is settled if {@code t} is {@code -1}.
+	 *
+	 * @param g the compiled graph, see {@code G.compile()}
+	 * @param s the index of the source vertex
+	 * @param t the index of the target vertex, or {@code -1}
+	 * @return {@code true} if {@code t} is reachable from {@code s}
+	 */
+	public boolean dijkstra(CompiledGraph g, int s, int t) {
+		int[] offsets = g.offsets, targets = g.targets, weights = g.weights;
+		reset();
+		target = t;
+		relax(s, 0, -1, 0);
+		while (!pq.isEmpty()) {
+			int u = pq.delMin();
+			settled++;
+			if (u == t) {
+				distance = dist[t];
+				return true;
+			}
+			int du = dist[u];
+			for (int k = offsets[u], end = offsets[u + 1]; k < end; k++)
+				relax(targets[k], du + weights[k], u, 0);
+		}
+		return t == -1;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from {@code s} until all of {@code targets} are
+	 * settled, so that one search answers the distances to many targets. Afterwards
+	 * {@code dist(t)} and {@code pathTo(t)} hold the result for each target, and
+	 * {@code settledVertex} lists the vertices in the order they were settled.
+	 *
+	 * @param g       the compiled graph, see {@code G.compile()}
+	 * @param s       the index of the source vertex
+	 * @param targets the indices of the target vertices, or {@code null} to
+	 *                settle every vertex reachable from {@code s}
+	 * @return the number of distinct targets reached, or the number of vertices
+	 *         settled if {@code targets} is {@code null}
+	 */
+	public int oneToMany(CompiledGraph g, int s, int[] targets) {
+		int[] offsets = g.offsets, heads = g.targets, weights = g.weights;
+		reset();
+		int remaining = Integer.MAX_VALUE;
+		if (targets != null) {
+			remaining = 0;
+			for (int t : targets) {
+				if (targetOf[t] != epoch) {
+					targetOf[t] = epoch;
+					remaining++;
+				}
+			}
+		}
+		int reached = 0;
+		relax(s, 0, -1, 0);
+		while (remaining > 0 && !pq.isEmpty()) {
+			int u = pq.delMin();
+			order[settled++] = u;
+			if (targetOf[u] == epoch) {
+				remaining--;
+				reached++;
+			}
+			int du = dist[u];
+			for (int k = offsets[u], end = offsets[u + 1]; k < end; k++)
+				relax(heads[k], du + weights[k], u, 0);
+		}
+		return targets == null ? settled : reached;
+	}
+
+	/**
+	 * Returns the {@code i}-th vertex settled by the last one-to-many search.
+	 *
+	 * @param i a position between {@code 0} and {@code settled() - 1}
+	 * @return the index of the settled vertex
+	 */
+	public int settledVertex(int i) {
+		return order[i];
+	}
+
+	/**
+	 * Runs the A* algorithm from {@code s} until {@code t} is settled. Vertices
+	 * are settled in order of their distance from {@code s} plus the estimated
+	 * distance to {@code t}, which steers the search towards the target.
+	 *
+	 * @param g the compiled graph, see {@code G.compile()}
+	 * @param s the index of the source vertex
+	 * @param t the index of the target vertex
+	 * @param h a consistent lower bound on the distance to {@code t}
+	 * @return {@code true} if {@code t} is reachable from {@code s}
+	 */
+	public boolean astar(CompiledGraph g, int s, int t, Heuristic h) {
+		int[] offsets = g.offsets, targets = g.targets, weights = g.weights;
+		reset();
+		target = t;
+		relax(s, 0, -1, h.estimate(s));
+		while (!pq.isEmpty()) {
+			int u = pq.delMin();
+			settled++;
+			if (u == t) {
+				distance = dist[t];
+				return true;
+			}
+			int du = dist[u];
+			for (int k = offsets[u], end = offsets[u + 1]; k < end; k++) {
+				int v = targets[k];
+				int d = du + weights[k];
+				if (epochOf[v] != epoch || d < dist[v])
+					relax(v, d, u, h.estimate(v));
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm forward from {@code s} and backward from
+	 * {@code t} at the same time, always advancing the side with the smaller
+	 * queue. The search stops once the smallest keys of both queues add up to at
+	 * least the shortest path seen so far through a vertex reached by both sides;
+	 * no shorter path can exist past that point. The backward search runs on
+	 * {@code g.reverse()}.
+	 *
+	 * @param g the compiled graph, see {@code G.compile()}
+	 * @param s the index of the source vertex
+	 * @param t the index of the target vertex
+	 * @return {@code true} if {@code t} is reachable from {@code s}
+	 */
+	public boolean bidirectional(CompiledGraph g, int s, int t) {
+		CompiledGraph reverse = g.reverse();
+		if (backward == null)
+			backward = new SearchWorkspace(capacity());
+		SearchWorkspace fwd = this, bwd = backward;
+		fwd.reset();
+		bwd.reset();
+		twoSided = true;
+		target = t;
+		fwd.relax(s, 0, -1, 0);
+		bwd.relax(t, 0, -1, 0);
+		if (s == t) {
+			meet = s;
+			distance = 0;
+			return true;
+		}
+		while (!fwd.pq.isEmpty() && !bwd.pq.isEmpty()) {
+			if (fwd.pq.minKey() + bwd.pq.minKey() >= distance)
+				break;
+			if (fwd.pq.size() <= bwd.pq.size())
+				step(fwd, bwd, g);
+			else
+				step(bwd, fwd, reverse);
+		}
+		return distance < INFINITY;
+	}
+
+	/**
+	 * Runs the bidirectional query of a contraction hierarchy: a forward search
+	 * from {@code s} over edges to higher ranked vertices and a backward search
+	 * from {@code t} over edges from higher ranked vertices. Unlike
+	 * {@code bidirectional}, each side only stops once its own smallest key
+	 * reaches the shortest path seen so far, because the two searches do not
+	 * cover the same graph. The path found may contain shortcuts.
+	 *
+	 * @param up   the upward edges, the edges leaving {@code v} lead to higher
+	 *             ranked heads
+	 * @param down the downward edges, the edges leaving {@code v} lead to the
+	 *             higher ranked tails of edges entering {@code v}
+	 * @param s    the index of the source vertex
+	 * @param t    the index of the target vertex
+	 * @return {@code true} if {@code t} is reachable from {@code s}
+	 */
+	public boolean upward(CompiledGraph up, CompiledGraph down, int s, int t) {
+		if (backward == null)
+			backward = new SearchWorkspace(capacity());
+		SearchWorkspace fwd = this, bwd = backward;
+		fwd.reset();
+		bwd.reset();
+		twoSided = true;
+		target = t;
+		fwd.relax(s, 0, -1, 0);
+		bwd.relax(t, 0, -1, 0);
+		if (s == t) {
+			meet = s;
+			distance = 0;
+			return true;
+		}
+		while (true) {
+			boolean fwdDone = fwd.pq.isEmpty() || fwd.pq.minKey() >= distance;
+			boolean bwdDone = bwd.pq.isEmpty() || bwd.pq.minKey() >= distance;
+			if (fwdDone && bwdDone)
+				break;
+			if (!fwdDone && (bwdDone || fwd.pq.size() <= bwd.pq.size()))
+				step(fwd, bwd, up);
+			else
+				step(bwd, fwd, down);
+		}
+		return distance < INFINITY;
+	}
+
+	/**
+	 * Settles the next vertex of search {@code a} and records any shorter path
+	 * through a vertex already reached by the opposite search {@code b}.
+	 */
+	private void step(SearchWorkspace a, SearchWorkspace b, CompiledGraph g) {
+		int[] targets = g.targets, weights = g.weights;
+		int u = a.pq.delMin();
+		a.settled++;
+		int du = a.dist[u];
+		for (int k = g.offsets[u], end = g.offsets[u + 1]; k < end; k++) {
+			int v = targets[k];
+			a.relax(v, du + weights[k], u, 0);
+			if (b.epochOf[v] == b.epoch) {
+				int d = a.dist[v] + b.dist[v];
+				if (d < distance) {
+					distance = d;
+					meet = v;
+				}
+			}
+		}
+	}
+
+	private void relax(int v, int d, int u, int estimate) {
+		if (epochOf[v] != epoch) {
+			epochOf[v] = epoch;
+			dist[v] = d;
+			prev[v] = u;
+			pq.insert(v, d + estimate);
+		} else if (dist[v] > d) {
+			dist[v] = d;
+			prev[v] = u;
+			if (pq.contains(v)) {
+				if (Metrics.ENABLED)
+					decreased++;
+				pq.decreaseKey(v, d + estimate);
+			} else
+				pq.insert(v, d + estimate); // reopened, only with an inconsistent heuristic
+		}
+	}
+
+	/**
+	 * Returns the length of the shortest known path to {@code v} in the last
+	 * search.
+	 *
+	 * @param v the index of a vertex
+	 * @return the distance, or {@code INFINITY} if {@code v} was not reached
+	 */
+	public int dist(int v) {
+		return epochOf[v] == epoch ? dist[v] : INFINITY;
+	}
+
+	/**
+	 * Returns the vertex before {@code v} on the shortest known path to {@code v}
+	 * in the last search.
+	 *
+	 * @param v the index of a vertex
+	 * @return the index of the previous vertex, or {@code -1} if {@code v} is the
+	 *         source or was not reached
+	 */
+	public int prev(int v) {
+		return epochOf[v] == epoch ? prev[v] : -1;
+	}
+
+	/**
+	 * Returns the number of vertices settled by the last search, counting both
+	 * directions of a bidirectional search, also one that found no path.
+	 *
+	 * @return the number of settled vertices
+	 */
+	public int settled() {
+		return twoSided ? settled + backward.settled : settled;
+	}
+
+	/**
+	 * Returns the number of keys decreased in the queue by the last search, like
+	 * {@code settled()}. Only counted while metrics are enabled, see
+	 * {@code Metrics.ENABLED}, and 0 otherwise.
+	 *
+	 * @return the number of decrease-key operations
+	 */
+	public int decreased() {
+		return twoSided ? decreased + backward.decreased : decreased;
+	}
+
+	/**
+	 * Returns the length of the path found by the last point-to-point search.
+	 *
+	 * @return the distance, or {@code INFINITY} if no path was found
+	 */
+	public int distance() {
+		return distance;
+	}
+
+	/**
+	 * Returns the vertices of the path found by the last point-to-point search.
+	 *
+	 * @return the indices of the vertices along the path, source first
+	 * @throws IllegalStateException if the last search found no path
+	 */
+	public int[] path() {
+		if (distance == INFINITY)
+			throw new IllegalStateException("no path found");
+		if (meet == -1)
+			return pathTo(target);
+		// Forward half up to the meeting vertex, then follow the backward
+		// search's predecessors, which point towards the target.
+		int[] head = pathTo(meet);
+		int tail = 0;
+		for (int v = meet; backward.prev(v) != -1; v = backward.prev(v))
+			tail++;
+		int[] path = Arrays.copyOf(head, head.length + tail);
+		for (int v = backward.prev(meet), i = head.length; v != -1; v = backward.prev(v), i++)
+			path[i] = v;
+		return path;
+	}
+
+	/**
+	 * Returns the vertices of the shortest path from the source of the last
+	 * search to {@code t}.
+	 *
+	 * @param t the index of a vertex reached by the last search
+	 * @return the indices of the vertices along the path, source first
+	 */
+	public int[] pathTo(int t) {
+		int hops = 0;
+		for (int v = t; prev(v) != -1; v = prev(v))
+			hops++;
+		int[] path = new int[hops + 1];
+		for (int v = t, i = hops; i >= 0; v = prev(v), i--)
+			path[i] = v;
+		return path;
+	}
+}
@@ -0,0 +1,49 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <em>Counter</em> counts events, e.g. failed requests. Counting is lock-free
+ * and spreads over cells under contention, so that threads counting at the
+ * same time do not slow each other down. See <em>Metrics</em>.
+ *
+ * @author Ivan Chang
+ */
+public final class Counter implements CounterMBean {
+	private final String name;
+	private final LongAdder count = new LongAdder();
+
+	Counter(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	/**
+	 * @param n is the number of events
+	 */
+	public void add(long n) {
+		count.add(n);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public void reset() {
+		count.reset();
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + getCount();
+	}
+}
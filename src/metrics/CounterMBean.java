@@ -0,0 +1,19 @@
+package metrics;
+
+/**
+ * The JMX view of a <em>Counter</em>.
+ *
+ * @author Ivan Chang
+ */
+public interface CounterMBean {
+
+	/**
+	 * @return the count
+	 */
+	long getCount();
+
+	/**
+	 * Sets the count back to zero.
+	 */
+	void reset();
+}
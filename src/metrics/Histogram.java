@@ -0,0 +1,158 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <em>Histogram</em> of non-negative values, e.g. latencies in ns, with
+ * buckets laid out like an HDR histogram: values below 32 have a bucket each,
+ * and every larger power of two is split into 16 buckets, so every value is
+ * counted in a bucket within 1/16 of it and the whole range of a long fits in
+ * 960 buckets. Recording a value is lock-free and takes a few atomic adds;
+ * percentiles are computed from the buckets when asked for.
+ *
+ * Percentiles report the highest value of their bucket, so they are never
+ * below the true percentile and at most 1/16 above it. Values recorded while
+ * percentiles are being computed may or may not be counted. See <em>Metrics</em>.
+ *
+ * @author Ivan Chang
+ */
+public final class Histogram implements HistogramMBean {
+	private static final int SUB_BITS = 5; // values below 2^SUB_BITS are exact
+	private static final int HALF = 1 << (SUB_BITS - 1); // buckets per power of two
+	static final int BUCKETS = (64 - SUB_BITS + 1) * HALF;
+
+	private final String name;
+	private final String unit;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	Histogram(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Records a value, negative values as 0.
+	 * @param value is the value, e.g. the nanoseconds an operation took
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		buckets.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		long m = max.get();
+		while (value > m && !max.compareAndSet(m, value))
+			m = max.get();
+	}
+
+	/**
+	 * @return the index of the bucket counting a non-negative value
+	 */
+	static int bucket(long value) {
+		if (value < 2 * HALF)
+			return (int) value;
+		int e = 63 - Long.numberOfLeadingZeros(value); // top bit, at least SUB_BITS
+		int top = (int) (value >>> (e - SUB_BITS + 1)); // the top SUB_BITS bits, HALF to 2 * HALF - 1
+		return (e - SUB_BITS + 2) * HALF + top - HALF;
+	}
+
+	/**
+	 * @return the highest value counted in a bucket
+	 */
+	static long highest(int bucket) {
+		if (bucket < 2 * HALF)
+			return bucket;
+		int shift = bucket / HALF - 1; // e - SUB_BITS + 1
+		long lowest = (long) (HALF + bucket % HALF) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	@Override
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the value below or at which a fraction of the values recorded lie.
+	 * @param p is the fraction, between 0 and 1
+	 * @return the percentile, 0 if no value was recorded
+	 * @throws IllegalArgumentException unless 0 &lt;= p &lt;= 1
+	 */
+	public long percentile(double p) {
+		if (!(p >= 0 && p <= 1))
+			throw new IllegalArgumentException("fraction " + p + " is not between 0 and 1");
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += counts[i] = buckets.get(i);
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(p * total)), seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getP50() {
+		return percentile(0.5);
+	}
+
+	@Override
+	public long getP90() {
+		return percentile(0.9);
+	}
+
+	@Override
+	public long getP99() {
+		return percentile(0.99);
+	}
+
+	@Override
+	public long getP999() {
+		return percentile(0.999);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s count %d mean %.1f p50 %d p90 %d p99 %d p99.9 %d max %d %s", name, getCount(),
+				getMean(), getP50(), getP90(), getP99(), getP999(), getMax(), unit);
+	}
+}
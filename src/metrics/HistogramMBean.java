@@ -0,0 +1,37 @@
+package metrics;
+
+/**
+ * The JMX view of a <em>Histogram</em>. Percentiles are in the unit of the
+ * histogram, to within its precision.
+ *
+ * @author Ivan Chang
+ */
+public interface HistogramMBean {
+
+	/**
+	 * @return what the values measure, e.g. ns
+	 */
+	String getUnit();
+
+	/**
+	 * @return the number of values recorded
+	 */
+	long getCount();
+
+	double getMean();
+
+	long getMax();
+
+	long getP50();
+
+	long getP90();
+
+	long getP99();
+
+	long getP999();
+
+	/**
+	 * Discards every value recorded.
+	 */
+	void reset();
+}
@@ -0,0 +1,140 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The runtime metrics of the application: named <em>Counter</em>s and
+ * <em>Histogram</em>s, exposed as JMX MBeans under the domain
+ * {@code mbta.metrics} and as a plain-text dump.
+ * <p>
+ * Metrics are enabled with {@code -Dmbta.metrics=true}. Code records metrics
+ * only under {@code if (Metrics.ENABLED)}. The flag is static final, so the
+ * JIT compiler treats it as a constant: when it is false, the recording and
+ * any {@code System.nanoTime()} calls it needs are removed, and metrics cost
+ * nothing. Metric objects are still created, so that they can be kept in
+ * static final fields.
+ * <p>
+ * When enabled, every metric is registered with the platform MBean server as
+ * it is created, e.g. {@code mbta.metrics:type=Histogram,name=http.get}.
+ * Otherwise {@code registerMBeans()} registers them on demand.
+ *
+ * @author Ivan Chang
+ */
+public final class Metrics {
+	/** True if metrics are recorded, i.e. -Dmbta.metrics=true. */
+	public static final boolean ENABLED = Boolean.getBoolean("mbta.metrics");
+	static final String DOMAIN = "mbta.metrics";
+
+	private static final Map<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+	private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+	private static volatile boolean registered = ENABLED;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the counter of a name, creating it on first use.
+	 * @param name is a dotted name, e.g. http.get.failures
+	 * @return the counter.
+	 */
+	public static Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			synchronized (Metrics.class) {
+				counter = counters.get(name);
+				if (counter == null) {
+					counter = new Counter(name);
+					counters.put(name, counter);
+					if (registered)
+						register("Counter", name, counter);
+				}
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Returns the histogram of a name, creating it on first use.
+	 * @param name is a dotted name, e.g. http.get
+	 * @param unit is what the values measure, e.g. ns
+	 * @return the histogram.
+	 * @throws IllegalArgumentException if the histogram exists with another unit
+	 */
+	public static Histogram histogram(String name, String unit) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			synchronized (Metrics.class) {
+				histogram = histograms.get(name);
+				if (histogram == null) {
+					histogram = new Histogram(name, unit);
+					histograms.put(name, histogram);
+					if (registered)
+						register("Histogram", name, histogram);
+				}
+			}
+		}
+		if (!histogram.getUnit().equals(unit))
+			throw new IllegalArgumentException("histogram " + name + " is in " + histogram.getUnit() + ", not " + unit);
+		return histogram;
+	}
+
+	/**
+	 * Registers every metric with the platform MBean server, and every metric
+	 * created later as it is created. Does nothing if already done.
+	 */
+	public static synchronized void registerMBeans() {
+		if (registered)
+			return;
+		registered = true;
+		for (Counter counter : counters.values())
+			register("Counter", counter.getName(), counter);
+		for (Histogram histogram : histograms.values())
+			register("Histogram", histogram.getName(), histogram);
+	}
+
+	private static void register(String type, String name, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			if (!server.isRegistered(objectName))
+				server.registerMBean(mbean, objectName);
+		} catch (JMException e) {
+			// Metrics are still recorded and dumped, only not visible over JMX
+		}
+	}
+
+	/**
+	 * Returns every metric as plain text, one per line in order of name: the
+	 * counters, then the histograms with their count, mean, percentiles and
+	 * maximum.
+	 * @return the text.
+	 */
+	public static String dump() {
+		StringBuilder sb = new StringBuilder();
+		for (Counter counter : counters.values())
+			sb.append(String.format("%-28s %12d%n", counter.getName(), counter.getCount()));
+		if (!histograms.isEmpty())
+			sb.append(String.format("%-28s %10s %12s %10s %10s %10s %10s %12s  %s%n", "histogram", "count", "mean",
+					"p50", "p90", "p99", "p99.9", "max", "unit"));
+		for (Histogram h : histograms.values())
+			sb.append(String.format("%-28s %10d %12.1f %10d %10d %10d %10d %12d  %s%n", h.getName(), h.getCount(),
+					h.getMean(), h.getP50(), h.getP90(), h.getP99(), h.getP999(), h.getMax(), h.getUnit()));
+		return sb.toString();
+	}
+
+	/**
+	 * Sets every counter back to zero and empties every histogram.
+	 */
+	public static void reset() {
+		for (Counter counter : counters.values())
+			counter.reset();
+		for (Histogram histogram : histograms.values())
+			histogram.reset();
+	}
+}
@@ -0,0 +1,105 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import graph.CompiledGraph;
+import graph.ContractionHierarchy;
+import graph.SearchWorkspace;
+
+/**
+ * Unit tests the {@code ContractionHierarchy} data type against plain Dijkstra
+ * on random directed graphs with edge lengths.
+ *
+ * @author Ivan Chang
+ */
+class TestContractionHierarchy {
+
+	@Test
+	void testRandomGraphs() {
+		for (int seed = 0; seed < 5; seed++) {
+			Random random = new Random(seed);
+			int n = 200;
+			int[][][] g = randomGraph(random, n, 3 * n);
+			int[][] adj = g[0], len = g[1];
+			CompiledGraph compiled = CompiledGraph.of(adj, len);
+
+			ContractionHierarchy ch = ContractionHierarchy.build(compiled);
+			assertEquals(n, ch.size());
+
+			SearchWorkspace expected = new SearchWorkspace(n);
+			SearchWorkspace ws = new SearchWorkspace(n);
+			for (int s = 0; s < n; s += 7) {
+				expected.dijkstra(compiled, s, -1);
+				for (int t = 0; t < n; t++) {
+					int[] path = ch.shortestPath(ws, s, t);
+					if (expected.dist(t) == SearchWorkspace.INFINITY) {
+						assertNull(path);
+						continue;
+					}
+					assertEquals(expected.dist(t), ws.distance());
+					assertEquals(s, path[0]);
+					assertEquals(t, path[path.length - 1]);
+					// the unpacked path consists of original edges adding up to the distance
+					int length = 0;
+					for (int i = 1; i < path.length; i++)
+						length += length(adj, len, path[i - 1], path[i]);
+					assertEquals(expected.dist(t), length);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testSettledWithoutPath() {
+		// A star around 0 and the edge 4 - 5, apart from each other, and 6 alone
+		int[][] adj = { { 1, 2, 3 }, { 0 }, { 0 }, { 0 }, { 5 }, { 4 }, {} };
+		int[][] len = { { 1, 1, 1 }, { 1 }, { 1 }, { 1 }, { 1 }, { 1 }, {} };
+		CompiledGraph g = CompiledGraph.of(adj, len);
+		SearchWorkspace ws = new SearchWorkspace(adj.length);
+
+		// Forward settles 0, then the larger forward queue lets the backward side settle 4 and 5
+		assertFalse(ws.bidirectional(g, 0, 4));
+		assertEquals(3, ws.settled());
+
+		// Both sides settle at least their own source
+		assertNull(ContractionHierarchy.build(g).shortestPath(ws, 6, 0));
+		assertTrue(ws.settled() >= 2);
+		ws.dijkstra(g, 6, 0);
+		assertEquals(1, ws.settled());
+	}
+
+	private static int length(int[][] adj, int[][] len, int u, int w) {
+		int best = Integer.MAX_VALUE;
+		for (int k = 0; k < adj[u].length; k++)
+			if (adj[u][k] == w)
+				best = Math.min(best, len[u][k]);
+		assertNotEquals(Integer.MAX_VALUE, best, "no edge " + u + " -> " + w);
+		return best;
+	}
+
+	/**
+	 * Returns adjacency lists and lengths of a random directed graph.
+	 */
+	private static int[][][] randomGraph(Random random, int n, int m) {
+		List<List<int[]>> out = new ArrayList<List<int[]>>();
+		for (int v = 0; v < n; v++)
+			out.add(new ArrayList<int[]>());
+		for (int e = 0; e < m; e++) {
+			int u = random.nextInt(n), w = random.nextInt(n), l = 1 + random.nextInt(20);
+			out.get(u).add(new int[] { w, l });
+		}
+		int[][][] g = new int[2][n][];
+		for (int v = 0; v < n; v++) {
+			g[0][v] = out.get(v).stream().mapToInt(a -> a[0]).toArray();
+			g[1][v] = out.get(v).stream().mapToInt(a -> a[1]).toArray();
+		}
+		return g;
+	}
+
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.Test;
 
+import graph.CompiledGraph;
 import graph.G;
 
 /**
@@ -40,4 +41,83 @@ class TestGraph {
 		assertEquals(6, g.getNumEdges());
 	}
 
+	@Test
+	void testIndex() {
+		G<String> g = new G<>();
+
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		g.addVertex("D");
+
+		assertEquals(0, g.indexOf("A"));
+		assertEquals(1, g.indexOf("B"));
+		assertEquals(2, g.indexOf("C"));
+		assertEquals(3, g.indexOf("D"));
+		assertEquals("C", g.vertexAt(2));
+		assertThrows(IllegalArgumentException.class, () -> g.indexOf("E"));
+
+		int[][] adj = g.adjacencyIndex();
+		assertEquals(1, adj[0].length);
+		assertEquals(2, adj[1].length);
+		assertEquals(0, adj[3].length);
+		assertEquals(1, g.edgeLengthIndex()[1][0]);
+
+		// The index is rebuilt after the graph is modified.
+		g.addEdge("C", "D");
+		assertEquals(1, g.adjacencyIndex()[3].length);
+		assertEquals(2, g.adjacencyIndex()[3][0]);
+	}
+
+	@Test
+	void testCompile() {
+		G<String> g = new G<>();
+		g.addEdge("A", "B");
+		g.addEdge("B", "C");
+		g.addVertex("D");
+		g.setEdgeLength((v, w) -> v.compareTo(w) < 0 ? 1 : 5); // 1 forward, 5 backward
+
+		CompiledGraph c = g.compile();
+		assertSame(c, g.compile());
+		assertEquals(4, c.size());
+		assertEquals(4, c.edges());
+		assertEquals(2, c.degree(1));
+		assertEquals(0, c.degree(3));
+		for (int v = 0; v < c.size(); v++) {
+			int[] adj = g.adjacencyIndex()[v];
+			assertEquals(adj.length, c.end(v) - c.begin(v));
+			for (int k = 0; k < adj.length; k++) {
+				int e = c.begin(v) + k;
+				assertEquals(adj[k], c.target(e));
+				assertEquals(g.edgeLengthIndex()[v][k], c.weight(e));
+				assertEquals(g.reverseEdgeLengthIndex()[v][k], c.reverse().weight(e));
+			}
+		}
+		assertSame(c, c.reverse().reverse());
+
+		// A modification compiles anew, freezing rejects any further one.
+		g.addEdge("C", "D");
+		assertNotSame(c, g.compile());
+		c = g.freeze();
+		assertTrue(g.isFrozen());
+		assertSame(c, g.compile());
+		assertThrows(IllegalStateException.class, () -> g.addEdge("A", "D"));
+		assertThrows(IllegalStateException.class, () -> g.addVertex("E"));
+		assertThrows(IllegalStateException.class, () -> g.setEdgeLength(null));
+		assertThrows(UnsupportedOperationException.class, () -> g.getNeighbors("A").add("C"));
+	}
+
+	@Test
+	void testCompileDirected() {
+		// 0 -> 1 -> 2, 0 -> 2
+		CompiledGraph c = CompiledGraph.of(new int[][] { { 1, 2 }, { 2 }, {} }, new int[][] { { 1, 7 }, { 2 }, {} });
+		assertEquals(3, c.edges());
+		CompiledGraph r = c.reverse();
+		assertEquals(0, r.degree(0));
+		assertEquals(2, r.degree(2));
+		assertEquals(0, r.target(r.begin(2)));
+		assertEquals(7, r.weight(r.begin(2)));
+		assertEquals(1, r.target(r.begin(2) + 1));
+		assertThrows(IllegalArgumentException.class, () -> CompiledGraph.of(new int[][] { { 3 } }, new int[][] { { 1 } }));
+	}
+
 }
@@ -0,0 +1,139 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import api.mbta.com.GraphSnapshot;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import bench.SyntheticNetwork;
+
+/**
+ * Unit tests the {@code GraphSnapshot} data type.
+ *
+ * @author Ivan Chang
+ */
+class TestGraphSnapshot {
+
+	@TempDir
+	File dir;
+
+	@Test
+	void testRoundTrip() throws IOException {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+		File file = new File(dir, "mbta.snapshot");
+		GraphSnapshot.write(g, file);
+		SubwayGraph h = GraphSnapshot.read(file);
+
+		assertEquals(g.getNumVertices(), h.getNumVertices());
+		assertEquals(g.getNumEdges(), h.getNumEdges());
+		for (int v = 0; v < g.getNumVertices(); v++) {
+			Stop a = g.vertexAt(v), b = h.vertexAt(v);
+			assertEquals(a.getId(), b.getId());
+			assertEquals(a.getName(), b.getName());
+			assertEquals(a.getNumOfConnections(), b.getNumOfConnections());
+			for (int k = 0; k < a.getNumOfConnections(); k++)
+				assertEquals(a.getConnectsTo().get(k).getId(), b.getConnectsTo().get(k).getId());
+		}
+		List<Route> routes = h.getRoutes();
+		assertEquals(g.getRouteLongNames(), h.getRouteLongNames());
+		for (int i = 0; i < routes.size(); i++)
+			assertEquals(g.getRoutes().get(i).getNumStops(), routes.get(i).getNumStops());
+		assertSame(h.matchStopName("Park Street"), routes.get(0).getStops().get(6));
+		assertEquals(g.shortestPath(g.matchStopName("Davis"), g.matchStopName("Mattapan")).getDistance(),
+				h.shortestPath(h.matchStopName("Davis"), h.matchStopName("Mattapan")).getDistance());
+
+		// Locations and every search strategy on a larger network
+		g = new SubwayGraph(SyntheticNetwork.grid(10, 10, 2));
+		GraphSnapshot.write(g, file);
+		h = GraphSnapshot.read(file);
+		assertEquals(g.vertexAt(17).getLatitude(), h.vertexAt(17).getLatitude());
+		assertEquals(g.vertexAt(17).getLongitude(), h.vertexAt(17).getLongitude());
+		for (SubwayGraph.Strategy strategy : SubwayGraph.Strategy.values())
+			assertEquals(g.shortestPath(g.vertexAt(3), g.vertexAt(250)).getDistance(),
+					h.shortestPath(h.vertexAt(3), h.vertexAt(250), strategy).getDistance());
+
+		// The restored graph can still be modified
+		Stop lonely = new Stop("place-lonely", "Lonely");
+		h.addEdge(lonely, h.vertexAt(0));
+		assertEquals(2, h.shortestPath(lonely, h.vertexAt(1)).getDistance());
+	}
+
+	@Test
+	void testFallback() throws IOException {
+		File file = new File(dir, "mbta.snapshot");
+		AtomicInteger rebuilds = new AtomicInteger();
+		SubwayGraph g = GraphSnapshot.load(file, 60_000, () -> {
+			rebuilds.incrementAndGet();
+			return new SubwayGraph(SyntheticNetwork.excerpt());
+		});
+		assertEquals(1, rebuilds.get());
+		assertTrue(file.isFile());
+
+		SubwayGraph h = GraphSnapshot.load(file, 60_000, () -> {
+			rebuilds.incrementAndGet();
+			return new SubwayGraph(SyntheticNetwork.excerpt());
+		});
+		assertEquals(1, rebuilds.get());
+		assertEquals(g.getNumVertices(), h.getNumVertices());
+
+		// Corrupt a byte of the payload
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(raf.length() - 3);
+			int b = raf.read();
+			raf.seek(raf.length() - 3);
+			raf.write(b ^ 0x5a);
+		}
+		assertThrows(IOException.class, () -> GraphSnapshot.read(file));
+		h = GraphSnapshot.load(file, 60_000, () -> {
+			rebuilds.incrementAndGet();
+			return new SubwayGraph(SyntheticNetwork.excerpt());
+		});
+		assertEquals(2, rebuilds.get());
+		GraphSnapshot.read(file); // rewritten
+
+		// A stale snapshot is rebuilt, unless the rebuild comes back empty
+		h = GraphSnapshot.load(file, -1, () -> {
+			rebuilds.incrementAndGet();
+			return new SubwayGraph(new ArrayList<Route>());
+		});
+		assertEquals(3, rebuilds.get());
+		assertEquals(g.getNumVertices(), h.getNumVertices());
+
+		// or fails
+		h = GraphSnapshot.load(file, -1, () -> {
+			rebuilds.incrementAndGet();
+			throw new UncheckedIOException(new IOException("api is down"));
+		});
+		assertEquals(4, rebuilds.get());
+		assertEquals(g.getNumVertices(), h.getNumVertices());
+		assertThrows(UncheckedIOException.class, () -> GraphSnapshot.load(new File(dir, "missing"), -1, () -> {
+			throw new UncheckedIOException(new IOException("api is down"));
+		}));
+
+		// A snapshot that cannot be written does not lose the rebuilt graph
+		h = GraphSnapshot.load(new File(new File(dir, "missing"), "mbta.snapshot"), 60_000, () -> {
+			rebuilds.incrementAndGet();
+			return new SubwayGraph(SyntheticNetwork.excerpt());
+		});
+		assertEquals(5, rebuilds.get());
+		assertEquals(g.getNumVertices(), h.getNumVertices());
+
+		// Truncated
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() / 2);
+		}
+		assertThrows(IOException.class, () -> GraphSnapshot.read(file));
+	}
+}
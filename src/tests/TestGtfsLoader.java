@@ -0,0 +1,143 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import api.mbta.com.GtfsLoader;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import api.mbta.com.Timetable;
+
+/**
+ * Unit tests the {@code GtfsLoader} data type on a small GTFS feed.
+ *
+ * @author Ivan Chang
+ */
+class TestGtfsLoader {
+
+	static final String[][] FEED = {
+			{ "routes.txt", "\uFEFFroute_id,route_long_name,route_type\n" + "Red,Red Line,1\n"
+					+ "Green-B,\"Green Line B\",0\n" + "1,Bus 1,3\n" },
+			{ "stops.txt", "stop_id,stop_name,stop_lat,stop_lon,location_type,parent_station\n"
+					+ "place-alfcl,Alewife,42.3954,-71.1425,1,\n" + "70061,Alewife,42.3954,-71.1425,0,place-alfcl\n"
+					+ "place-pktrm,\"Park Street, Boston\",42.3564,-71.0624,1,\n"
+					+ "70075,Park Street,42.3564,-71.0624,0,place-pktrm\n"
+					+ "70200,Park Street,42.3564,-71.0624,0,place-pktrm\n" + "place-jfk,JFK/UMass,42.3206,-71.0524,1,\n"
+					+ "70085,JFK/UMass,42.3206,-71.0524,0,place-jfk\n" + "place-asmnl,Ashmont,42.2844,-71.0637,1,\n"
+					+ "70094,Ashmont,42.2844,-71.0637,0,place-asmnl\n" + "place-brntn,Braintree,42.2074,-71.0011,1,\n"
+					+ "70105,Braintree,42.2074,-71.0011,0,place-brntn\n" + "place-boyls,Boylston,42.3529,-71.0647,1,\n"
+					+ "70159,Boylston,42.3529,-71.0647,0,place-boyls\n" + "64,Bus Stop,42.3,-71.1,0,\n" },
+			{ "trips.txt", "route_id,service_id,trip_id,direction_id\n" + "Red,weekday,t1,0\n" + "Red,weekday,t2,0\n"
+					+ "Red,weekday,t3,0\n" + "Red,weekday,t4,1\n" + "Green-B,weekday,t5,0\n" + "1,weekday,t6,0\n" },
+			{ "stop_times.txt", "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+					+ "t1,05:00:00,05:00:00,70061,1\n" + "t1,05:10:00,05:10:00,70075,2\n"
+					+ "t6,05:00:00,05:00:00,64,1\n" // trips need not be consecutive
+					+ "t1,05:20:00,05:20:00,70085,3\n" + "t1,05:30:00,05:30:00,70094,4\n"
+					+ "t2,06:30:00,06:30:00,70094,40\n" + "t2,06:00:00,06:00:00,70061,10\n" // nor ordered
+					+ "t2,06:20:00,06:20:00,70085,30\n" + "t2,06:10:00,06:10:00,70075,20\n"
+					+ "t3,07:00:00,07:00:00,70061,1\n" + "t3,07:10:00,07:10:00,70075,2\n"
+					+ "t3,07:20:00,07:20:00,70085,3\n" + "t3,07:40:00,07:40:00,70105,4\n"
+					+ "t4,08:00:00,08:00:00,70105,1\n" + "t4,08:10:00,08:10:00,70061,2\n"
+					+ "t5,09:00:00,09:00:00,70159,1\n" + "t5,09:05:00,09:05:00,70200,2\n" },
+			{ "calendar.txt", "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\n"
+					+ "weekday,1,1,1,1,1,0,0,20260101,20261231\n" },
+			{ "calendar_dates.txt", "service_id,date,exception_type\n" + "weekday,20261019,2\n" } };
+
+	@TempDir
+	File dir;
+
+	@Test
+	void testZip() throws IOException {
+		File zip = new File(dir, "gtfs.zip");
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+			for (String[] file : FEED) {
+				out.putNextEntry(new ZipEntry(file[0]));
+				out.write(file[1].getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+		check(new GtfsLoader(zip).subwayRoutes());
+	}
+
+	@Test
+	void testDirectory() throws IOException {
+		for (String[] file : FEED)
+			Files.write(new File(dir, file[0]).toPath(), file[1].getBytes(StandardCharsets.UTF_8));
+		check(new GtfsLoader(dir).subwayRoutes());
+
+		new File(dir, "stop_times.txt").delete();
+		assertThrows(IOException.class, () -> new GtfsLoader(dir).subwayRoutes());
+	}
+
+	@Test
+	void testTimetable() throws IOException {
+		for (String[] file : FEED)
+			Files.write(new File(dir, file[0]).toPath(), file[1].getBytes(StandardCharsets.UTF_8));
+		GtfsLoader loader = new GtfsLoader(dir);
+		List<Route> routes = loader.subwayRoutes();
+		Stop alewife = routes.get(0).getStops().get(0), braintree = routes.get(0).getStops().get(4);
+		Stop boylston = routes.get(1).getStops().get(0);
+
+		Timetable timetable = loader.subwayTimetable(routes, LocalDate.of(2026, 10, 20));
+		assertEquals(5, timetable.getNumTrips());
+		assertEquals(3 * 3 + 1 + 1, timetable.size());
+		assertEquals(Timetable.parseTime("05:10:00"), timetable.earliestArrival(alewife, routes.get(0).getStops().get(1),
+				Timetable.parseTime("05:00:00")));
+		assertEquals(Timetable.parseTime("07:40:00"),
+				timetable.earliestArrival(alewife, braintree, Timetable.parseTime("05:00:00")));
+		assertEquals(Timetable.parseTime("08:10:00"),
+				timetable.earliestArrival(braintree, alewife, Timetable.parseTime("08:00:00")));
+		assertEquals(-1, timetable.earliestArrival(boylston, alewife, Timetable.parseTime("05:00:00")));
+
+		// Removed on Monday, no service at weekends
+		assertEquals(0, loader.subwayTimetable(routes, LocalDate.of(2026, 10, 19)).size());
+		assertEquals(0, loader.subwayTimetable(routes, LocalDate.of(2026, 10, 24)).size());
+
+		// The friday column is found whatever the default locale
+		Locale locale = Locale.getDefault();
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+			assertEquals(5, loader.subwayTimetable(routes, LocalDate.of(2026, 10, 23)).getNumTrips());
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	private static void check(List<Route> routes) {
+		assertEquals(2, routes.size());
+		Route red = routes.get(0), green = routes.get(1);
+		assertEquals("Red Line", red.getLong_name());
+		assertEquals("Green Line B", green.getLong_name());
+
+		// The most frequent pattern comes first, then the Braintree branch.
+		String[] ids = red.getStops().stream().map(Stop::getId).toArray(String[]::new);
+		assertArrayEquals(new String[] { "place-alfcl", "place-pktrm", "place-jfk", "place-asmnl", "place-brntn" }, ids);
+		ids = green.getStops().stream().map(Stop::getId).toArray(String[]::new);
+		assertArrayEquals(new String[] { "place-boyls", "place-pktrm" }, ids);
+
+		Stop park = red.getStops().get(1);
+		assertSame(park, green.getStops().get(1));
+		assertEquals("Park Street, Boston", park.getName());
+		assertEquals(2, park.getNumOfConnections());
+		assertEquals(42.3564, park.getLatitude(), 1e-9);
+		assertEquals(-71.0624, park.getLongitude(), 1e-9);
+
+		SubwayGraph g = new SubwayGraph(routes);
+		assertEquals(6, g.getNumVertices());
+		assertEquals(3, g.shortestPath(g.matchStopName("Boylston"), g.matchStopName("Ashmont")).getDistance());
+	}
+}
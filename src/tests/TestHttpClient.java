@@ -0,0 +1,96 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.ws.http.HTTPException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import client.HttpClient;
+
+/**
+ * Unit tests the {@code HttpClient} data type against a local server.
+ *
+ * @author Ivan Chang
+ */
+class TestHttpClient {
+	static final String BODY;
+	static {
+		StringBuilder sb = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < 500; i++)
+			sb.append(i > 0 ? "," : "").append("{\"id\":\"place-").append(i).append("\",\"type\":\"stop\"}");
+		BODY = sb.append("]}").toString();
+	}
+
+	private HttpServer server;
+	private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+		int status = exchange.getRequestURI().getPath().endsWith("/stops") ? 200 : 404;
+		String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (accept != null && accept.contains("gzip")) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+				gzip.write(body);
+			}
+			body = bytes.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	@Test
+	void testGet() throws IOException {
+		HttpClient client = new HttpClient("http://localhost:" + server.getAddress().getPort());
+		for (int i = 0; i < 5; i++)
+			assertEquals(BODY, client.GET("/stops", Collections.singletonMap("filter[route]", "Red")));
+		assertEquals(5, client.getRequestCount());
+		assertEquals(5L * BODY.length(), client.getBytesDecoded());
+		assertTrue(client.getBytesReceived() < client.getBytesDecoded() / 5);
+
+		// An error response is consumed so that the connection is still reused.
+		HTTPException e = assertThrows(HTTPException.class,
+				() -> client.GET("/missing", Collections.<String, String>emptyMap()));
+		assertEquals(404, e.getStatusCode());
+		int length = client.GET("/stops", Collections.<String, String>emptyMap(), in -> {
+			int n = 0;
+			while (in.read() >= 0)
+				n++;
+			return n;
+		});
+		assertEquals(BODY.length(), length);
+		assertEquals(1, clientPorts.size(), "requests should share one kept alive connection");
+	}
+}
@@ -0,0 +1,137 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import client.JsonReader;
+import client.JsonReader.Token;
+
+/**
+ * Unit tests the {@code JsonReader} data type.
+ *
+ * @author Ivan Chang
+ */
+class TestJsonReader {
+
+	// Hands out one char per read, so every token straddles a buffer refill
+	private static Reader trickle(String s) {
+		return new StringReader(s) {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				return super.read(cbuf, off, Math.min(len, 1));
+			}
+		};
+	}
+
+	@Test
+	void testValues() throws IOException {
+		String doc = " {\"a\": [1, -2.5e3, true, false, null, \"x\\\"\\u00e9\\n\"], \"b\" : {}, \"c\":[]} ";
+		for (Reader in : new Reader[] { new StringReader(doc), trickle(doc) }) {
+			JsonReader json = new JsonReader(in);
+			json.beginObject();
+			assertEquals("a", json.nextName());
+			json.beginArray();
+			assertEquals(Token.NUMBER, json.peek());
+			assertEquals(1, json.nextInt());
+			assertEquals(-2500.0, json.nextDouble());
+			assertTrue(json.nextBoolean());
+			assertFalse(json.nextBoolean());
+			assertEquals(Token.NULL, json.peek());
+			json.nextNull();
+			assertEquals("x\"\u00e9\n", json.nextString());
+			assertFalse(json.hasNext());
+			json.endArray();
+			assertEquals(1, json.selectName("a", "b"));
+			json.beginObject();
+			json.endObject();
+			assertEquals(-1, json.selectName("a", "b"));
+			json.beginArray();
+			assertFalse(json.hasNext());
+			json.endArray();
+			json.endObject();
+			assertEquals(Token.END_DOCUMENT, json.peek());
+		}
+	}
+
+	@Test
+	void testSkipValue() throws IOException {
+		StringBuilder sb = new StringBuilder("{\"skip\":{\"links\":[1,{\"x\":\"]}\"},[[]]],\"n\":null,\"s\":\"");
+		for (int i = 0; i < 10000; i++)
+			sb.append("long \\\"escaped\\\" text ");
+		sb.append("\"},\"keep\":42}");
+		for (Reader in : new Reader[] { new StringReader(sb.toString()), trickle(sb.toString()) }) {
+			JsonReader json = new JsonReader(in);
+			json.beginObject();
+			json.skipValue(); // the name "skip" and its value
+			assertEquals(0, json.selectName("keep"));
+			assertEquals(42, json.nextInt());
+			json.endObject();
+		}
+	}
+
+	@Test
+	void testMbtaStops() throws IOException {
+		String doc = "{\"data\":[{\"attributes\":{\"address\":null,\"latitude\":42.395428,\"longitude\":-71.142483,"
+				+ "\"name\":\"Alewife\",\"wheelchair_boarding\":1},\"id\":\"place-alfcl\",\"links\":{\"self\":\"/stops/place-alfcl\"},"
+				+ "\"relationships\":{\"parent_station\":{\"data\":null}},\"type\":\"stop\"}],\"jsonapi\":{\"version\":\"1.0\"}}";
+		JsonReader json = new JsonReader(new StringReader(doc));
+		String id = null, name = null;
+		double latitude = Double.NaN;
+		json.beginObject();
+		assertEquals(0, json.selectName("data"));
+		json.beginArray();
+		json.beginObject();
+		while (json.hasNext()) {
+			switch (json.selectName("id", "attributes")) {
+			case 0:
+				id = json.nextString();
+				break;
+			case 1:
+				json.beginObject();
+				while (json.hasNext()) {
+					switch (json.selectName("name", "latitude")) {
+					case 0:
+						name = json.nextString();
+						break;
+					case 1:
+						latitude = json.nextDouble();
+						break;
+					default:
+						json.skipValue();
+					}
+				}
+				json.endObject();
+				break;
+			default:
+				json.skipValue();
+			}
+		}
+		json.endObject();
+		json.endArray();
+		json.skipValue();
+		json.endObject();
+		assertEquals("place-alfcl", id);
+		assertEquals("Alewife", name);
+		assertEquals(42.395428, latitude);
+	}
+
+	@Test
+	void testMalformed() throws IOException {
+		for (String doc : new String[] { "{\"a\" 1}", "{\"a\":1,}", "[1 2]", "{\"a\":\"open", "[1]]", "" }) {
+			assertThrows(IOException.class, () -> {
+				JsonReader json = new JsonReader(new StringReader(doc));
+				json.skipValue();
+				json.peek();
+			}, doc);
+		}
+		JsonReader json = new JsonReader(new StringReader("[\"a\"]"));
+		json.beginArray();
+		assertThrows(IllegalStateException.class, () -> json.nextBoolean());
+		assertThrows(IOException.class, () -> json.nextDouble());
+	}
+}
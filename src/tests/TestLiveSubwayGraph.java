@@ -0,0 +1,196 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import api.mbta.com.LiveSubwayGraph;
+import api.mbta.com.Path;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import bench.SyntheticNetwork;
+
+/**
+ * Unit tests the {@code LiveSubwayGraph} data type.
+ *
+ * @author Ivan Chang
+ */
+class TestLiveSubwayGraph {
+	private volatile boolean blueToRevere; // Blue Line extended by a stop
+	private volatile boolean greenToBostonCollege; // Green Line B extended by a stop
+	private volatile String mattapanName = "Mattapan Trolley";
+
+	// Fresh objects on every call, like a fetch from the api
+	private List<Route> fetch() {
+		Map<String, Stop> stops = new HashMap<String, Stop>();
+		List<Route> routes = new ArrayList<Route>();
+		routes.add(SyntheticNetwork.route(stops, "Red", "Red Line", "Davis", "Porter", "Harvard", "Park Street", "Downtown Crossing",
+				"Ashmont"));
+		routes.add(SyntheticNetwork.route(stops, "Mattapan", mattapanName, "Ashmont", "Cedar Grove", "Mattapan"));
+		if (greenToBostonCollege)
+			routes.add(SyntheticNetwork.route(stops, "Green-B", "Green Line B", "Boston College", "Kenmore", "Copley", "Park Street",
+					"Government Center"));
+		else
+			routes.add(SyntheticNetwork.route(stops, "Green-B", "Green Line B", "Kenmore", "Copley", "Park Street", "Government Center"));
+		List<String> blue = new ArrayList<String>();
+		if (blueToRevere)
+			blue.add("Revere Beach");
+		for (String name : new String[] { "Wonderland", "Airport", "Maverick", "Aquarium", "Bowdoin" })
+			blue.add(name);
+		routes.add(SyntheticNetwork.route(stops, "Blue", "Blue Line", blue.toArray(new String[0])));
+		return routes;
+	}
+
+	@Test
+	void testRefresh() {
+		LiveSubwayGraph live = new LiveSubwayGraph(this::fetch);
+		SubwayGraph v0 = live.current();
+		assertTrue(v0.isFrozen());
+		assertThrows(IllegalStateException.class, () -> v0.addVertex(new Stop("place-lonely", "Lonely")));
+		v0.precomputeAllPairs();
+
+		// Nothing changed
+		LiveSubwayGraph.Diff diff = live.refresh();
+		assertTrue(diff.isEmpty());
+		assertSame(v0, live.current());
+		assertEquals(0, live.getVersion());
+
+		// A Blue Line change shares the rest of the network
+		blueToRevere = true;
+		diff = live.refresh();
+		assertEquals("[Blue]", diff.getChanged().toString());
+		assertEquals(3, diff.getShared());
+		SubwayGraph v1 = live.current();
+		assertNotSame(v0, v1);
+		assertEquals(1, live.getVersion());
+		assertTrue(v1.hasAllPairs());
+		for (int i = 0; i < 3; i++)
+			assertSame(v0.getRoutes().get(i), v1.getRoutes().get(i));
+		assertNotSame(v0.getRoutes().get(3), v1.getRoutes().get(3));
+		assertNull(v0.matchStopName("Revere Beach"));
+		assertEquals(6, v1.shortestPath(v1.matchStopName("Revere Beach"), v1.matchStopName("Bowdoin")).getStops().size());
+
+		// Renaming Mattapan shares the stops and every other route, and as no
+		// connection changed, the compiled graph and the all-pairs table too
+		mattapanName = "Mattapan Line";
+		diff = live.refresh();
+		assertEquals("[Mattapan]", diff.getChanged().toString());
+		assertEquals(3, diff.getShared());
+		SubwayGraph v2 = live.current();
+		assertSame(v1.getRoutes().get(0), v2.getRoutes().get(0));
+		assertNotSame(v1.getRoutes().get(1), v2.getRoutes().get(1));
+		Stop ashmont = v2.matchStopName("Ashmont");
+		assertSame(v1.matchStopName("Ashmont"), ashmont);
+		assertSame(v1.compile(), v2.compile());
+		assertTrue(v2.hasAllPairs());
+		List<Route> through = v2.getRouteStats().getRoutesThrough(ashmont);
+		assertEquals(2, through.size());
+		assertTrue(v2.getRoutes().containsAll(through));
+		assertEquals("Mattapan Line", through.get(1).getLong_name());
+		assertEquals(8, v2.shortestPath(v2.matchStopName("Davis"), v2.matchStopName("Mattapan")).getStops().size());
+
+		// The old versions are untouched
+		assertEquals(4, v0.getRoutes().size());
+		assertEquals("Mattapan Trolley", v1.getRoutes().get(1).getLong_name());
+		assertEquals(5, v0.getRoutes().get(3).getNumStops());
+	}
+
+	@Test
+	void testRefreshConnected() {
+		LiveSubwayGraph live = new LiveSubwayGraph(this::fetch);
+		SubwayGraph v0 = live.current();
+
+		// Red, Mattapan and Green-B are one connected network, through Ashmont
+		// and Park Street. A Green-B change leaves Red and Mattapan as they were.
+		greenToBostonCollege = true;
+		LiveSubwayGraph.Diff diff = live.refresh();
+		assertEquals("[Green-B]", diff.getChanged().toString());
+		assertEquals(3, diff.getShared());
+		SubwayGraph v1 = live.current();
+		assertSame(v0.getRoutes().get(0), v1.getRoutes().get(0));
+		assertSame(v0.getRoutes().get(1), v1.getRoutes().get(1));
+		assertNotSame(v0.getRoutes().get(2), v1.getRoutes().get(2));
+		for (String name : new String[] { "Davis", "Park Street", "Ashmont", "Kenmore" }) {
+			Stop stop = v0.matchStopName(name);
+			assertSame(stop, v1.matchStopName(name), name);
+			assertEquals(v0.indexOf(stop), v1.indexOf(stop), name);
+		}
+		assertNull(v0.matchStopName("Boston College"));
+		assertNotSame(v0.compile(), v1.compile());
+		assertSameConnections(new SubwayGraph(fetch()), v1);
+		assertEquals(5, v1.shortestPath(v1.matchStopName("Boston College"), v1.matchStopName("Harvard")).getStops().size());
+
+		// and back, with the stop gone
+		greenToBostonCollege = false;
+		live.refresh();
+		SubwayGraph v2 = live.current();
+		assertEquals(v0.getNumVertices(), v2.getNumVertices());
+		assertSameConnections(v0, v2);
+		assertEquals(4, v0.getRoutes().get(2).getNumStops());
+		assertEquals(5, v1.getRoutes().get(2).getNumStops());
+	}
+
+	// The same stops, by id, with the same neighbors
+	private static void assertSameConnections(SubwayGraph expected, SubwayGraph actual) {
+		assertEquals(expected.getNumVertices(), actual.getNumVertices());
+		assertEquals(expected.getNumEdges(), actual.getNumEdges());
+		Map<String, Stop> byId = new HashMap<String, Stop>();
+		for (int v = 0; v < actual.getNumVertices(); v++)
+			byId.put(actual.vertexAt(v).getId(), actual.vertexAt(v));
+		for (int v = 0; v < expected.getNumVertices(); v++) {
+			Stop stop = expected.vertexAt(v);
+			Set<String> want = new HashSet<String>(), got = new HashSet<String>();
+			for (Stop w : expected.getNeighbors(stop))
+				want.add(w.getId());
+			for (Stop w : actual.getNeighbors(byId.get(stop.getId())))
+				got.add(w.getId());
+			assertEquals(want, got, stop.getName());
+		}
+	}
+
+	@Test
+	void testConcurrentQueries() throws InterruptedException {
+		LiveSubwayGraph live = new LiveSubwayGraph(this::fetch);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		AtomicInteger queries = new AtomicInteger();
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int t = 0; t < 3; t++) {
+			Thread reader = new Thread(() -> {
+				try {
+					while (!done.get()) {
+						SubwayGraph g = live.current();
+						Path path = g.shortestPath(g.matchStopName("Davis"), g.matchStopName("Mattapan"));
+						assertEquals(8, path.getStops().size());
+						queries.incrementAndGet();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			reader.start();
+			readers.add(reader);
+		}
+		for (int i = 0; i < 50; i++) {
+			blueToRevere = !blueToRevere;
+			live.refresh();
+		}
+		done.set(true);
+		for (Thread reader : readers)
+			reader.join();
+		assertNull(failure.get());
+		assertEquals(50, live.getVersion());
+		assertTrue(queries.get() > 0);
+	}
+}
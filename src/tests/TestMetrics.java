@@ -0,0 +1,101 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+/**
+ * Unit tests the {@code Counter}, {@code Histogram} and {@code Metrics} data types.
+ *
+ * @author Ivan Chang
+ */
+class TestMetrics {
+
+	@Test
+	void testCounter() throws Exception {
+		Counter counter = Metrics.counter("test.counter");
+		assertSame(counter, Metrics.counter("test.counter"));
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int k = 0; k < 10000; k++)
+					counter.increment();
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		counter.add(5);
+		assertEquals(40005, counter.getCount());
+		counter.reset();
+		assertEquals(0, counter.getCount());
+	}
+
+	@Test
+	void testHistogram() {
+		Histogram h = Metrics.histogram("test.histogram", "ns");
+		assertSame(h, Metrics.histogram("test.histogram", "ns"));
+		assertThrows(IllegalArgumentException.class, () -> Metrics.histogram("test.histogram", "ms"));
+		assertEquals(0, h.getP99());
+
+		// Small values are exact
+		for (int v = 1; v <= 10; v++)
+			h.record(v);
+		assertEquals(10, h.getCount());
+		assertEquals(5.5, h.getMean(), 1e-9);
+		assertEquals(5, h.getP50());
+		assertEquals(10, h.getP99());
+		assertEquals(1, h.percentile(0));
+		assertThrows(IllegalArgumentException.class, () -> h.percentile(1.5));
+
+		// Large values are within 1/16, never below
+		h.reset();
+		assertEquals(0, h.getCount());
+		Random random = new Random(9);
+		long[] values = new long[20000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.exp(random.nextDouble() * 40);
+			h.record(values[i]);
+		}
+		Arrays.sort(values);
+		for (double p : new double[] { 0.01, 0.5, 0.9, 0.99, 0.999 }) {
+			long exact = values[(int) Math.ceil(p * values.length) - 1];
+			long estimate = h.percentile(p);
+			assertTrue(estimate >= exact && estimate <= exact + exact / 16, p + ": " + estimate + " vs " + exact);
+		}
+		assertEquals(values[values.length - 1], h.getMax());
+		assertEquals(values[values.length - 1], h.percentile(1));
+		h.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, h.percentile(1));
+	}
+
+	@Test
+	void testMBeansAndDump() throws Exception {
+		Metrics.counter("test.dumped").add(3);
+		Metrics.histogram("test.dumped.time", "ns").record(1000);
+		Metrics.registerMBeans();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(3L, server.getAttribute(new ObjectName("mbta.metrics:type=Counter,name=\"test.dumped\""), "Count"));
+		ObjectName histogram = new ObjectName("mbta.metrics:type=Histogram,name=\"test.dumped.time\"");
+		assertEquals("ns", server.getAttribute(histogram, "Unit"));
+		assertTrue((Long) server.getAttribute(histogram, "P50") >= 1000);
+		// Created after registering
+		Metrics.counter("test.later").increment();
+		assertTrue(server.isRegistered(new ObjectName("mbta.metrics:type=Counter,name=\"test.later\"")));
+
+		String dump = Metrics.dump();
+		assertTrue(dump.matches("(?s).*test\\.dumped +3\\R.*"), dump);
+		assertTrue(dump.matches("(?s).*test\\.dumped\\.time +1 .*ns\\R.*"), dump);
+	}
+}
@@ -0,0 +1,105 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import graph.DoubleIndexMinPQ;
+import graph.IntIndexMinPQ;
+
+/**
+ * Unit tests the {@code IntIndexMinPQ} and {@code DoubleIndexMinPQ} data types.
+ *
+ * @author Ivan Chang
+ */
+class TestPrimitivePQ {
+
+	@Test
+	void testIntPQ() {
+		for (int arity = 2; arity <= 8; arity++) {
+			Random random = new Random(arity);
+			int n = 1000;
+			int[] keys = new int[n];
+			IntIndexMinPQ pq = new IntIndexMinPQ(n, arity);
+			for (int i = 0; i < n; i++) {
+				keys[i] = random.nextInt(10000);
+				pq.insert(i, keys[i]);
+			}
+			assertEquals(n, pq.size());
+
+			// decrease, increase and delete some keys
+			for (int i = 0; i < n; i += 3) {
+				keys[i] -= random.nextInt(100);
+				pq.decreaseKey(i, keys[i]);
+			}
+			for (int i = 1; i < n; i += 7) {
+				keys[i] += random.nextInt(100);
+				pq.increaseKey(i, keys[i]);
+			}
+			for (int i = 2; i < n; i += 11) {
+				pq.delete(i);
+				keys[i] = Integer.MAX_VALUE;
+			}
+			assertEquals(keys[0], pq.keyOf(0));
+			assertThrows(IllegalArgumentException.class, () -> pq.decreaseKey(0, Integer.MAX_VALUE));
+
+			int[] sorted = keys.clone();
+			Arrays.sort(sorted);
+			int it = 0;
+			while (!pq.isEmpty()) {
+				int key = pq.minKey();
+				int i = pq.delMin();
+				assertEquals(sorted[it++], key);
+				assertEquals(keys[i], key);
+				assertFalse(pq.contains(i));
+			}
+			assertEquals(n - (n + 8) / 11, it);
+		}
+	}
+
+	@Test
+	void testIntPQClear() {
+		IntIndexMinPQ pq = new IntIndexMinPQ(10);
+		for (int i = 0; i < 10; i++)
+			pq.insert(i, 10 - i);
+		assertEquals(9, pq.minIndex());
+		pq.clear();
+		assertTrue(pq.isEmpty());
+		assertFalse(pq.contains(9));
+		pq.insert(9, 5);
+		pq.insert(3, 1);
+		assertEquals(3, pq.delMin());
+		assertEquals(9, pq.delMin());
+		assertThrows(IllegalArgumentException.class, () -> new IntIndexMinPQ(10, 1));
+	}
+
+	@Test
+	void testDoublePQ() {
+		Random random = new Random(42);
+		int n = 500;
+		double[] keys = new double[n];
+		DoubleIndexMinPQ pq = new DoubleIndexMinPQ(n);
+		assertEquals(DoubleIndexMinPQ.DEFAULT_ARITY, pq.arity());
+		for (int i = 0; i < n; i++) {
+			keys[i] = random.nextDouble();
+			pq.insert(i, keys[i]);
+		}
+		for (int i = 0; i < n; i += 2) {
+			keys[i] /= 2;
+			pq.changeKey(i, keys[i]);
+		}
+
+		double[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		int it = 0;
+		while (!pq.isEmpty()) {
+			int i = pq.delMin();
+			assertEquals(sorted[it++], keys[i]);
+		}
+		assertEquals(n, it);
+	}
+
+}
@@ -0,0 +1,160 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.ws.http.HTTPException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import api.mbta.com.Requests;
+import api.mbta.com.Route;
+import client.HttpClient;
+import client.RateLimiter;
+
+/**
+ * Unit tests the {@code RateLimiter} data type and the retries of
+ * {@code HttpClient} against a local server that throttles.
+ *
+ * @author Ivan Chang
+ */
+class TestRateLimiter {
+	static final String STOPS = "{\"data\":[{\"id\":\"place-pktrm\",\"attributes\":{\"name\":\"Park Street\"}}]}";
+
+	private HttpServer server;
+	private ExecutorService handlers;
+	private final AtomicInteger requests = new AtomicInteger();
+	private volatile int refuse; // the first requests refused
+	private volatile int status = 429;
+	private volatile boolean reset; // send x-ratelimit headers
+
+	@BeforeEach
+	void start() throws IOException {
+		handlers = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(handlers);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop(0);
+		handlers.shutdown();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		boolean refused = requests.incrementAndGet() <= refuse;
+		if (reset) {
+			exchange.getResponseHeaders().set("x-ratelimit-remaining", refused ? "0" : "100");
+			exchange.getResponseHeaders().set("x-ratelimit-reset", "" + (System.currentTimeMillis() / 1000 + 1));
+		}
+		byte[] body = (refused ? "{\"errors\":[{\"status\":\"" + status + "\"}]}" : STOPS).getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(refused ? status : 200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private HttpClient client() {
+		return new HttpClient("http://localhost:" + server.getAddress().getPort());
+	}
+
+	@Test
+	void testRetry() throws IOException {
+		HttpClient client = client();
+		client.setMaxRetries(3);
+		refuse = 2;
+		assertEquals(STOPS, client.GET("/stops", Collections.emptyMap()));
+		assertEquals(3, requests.get());
+		assertEquals(2, client.getRetryCount());
+
+		// Gives up after the last retry
+		requests.set(0);
+		status = 503;
+		refuse = 10;
+		HTTPException e = assertThrows(HTTPException.class, () -> client.GET("/stops", Collections.emptyMap()));
+		assertEquals(503, e.getStatusCode());
+		assertEquals(4, requests.get());
+
+		// Other errors are not retried
+		requests.set(0);
+		status = 404;
+		assertThrows(HTTPException.class, () -> client.GET("/stops", Collections.emptyMap()));
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void testRateLimitHeaders() throws IOException {
+		HttpClient client = client();
+		RateLimiter limiter = new RateLimiter(8);
+		client.setRateLimiter(limiter);
+		client.setMaxRetries(1);
+		reset = true;
+		refuse = 1;
+		long start = System.currentTimeMillis();
+		assertEquals(STOPS, client.GET("/stops", Collections.emptyMap()));
+		// Waited for the window to reset, at the start of the next second
+		assertTrue(System.currentTimeMillis() >= start / 1000 * 1000 + 1000);
+		assertEquals(1, limiter.getThrottledCount());
+		assertEquals(0, limiter.getInFlight());
+		assertEquals(5, limiter.getLimit()); // halved, then grew by one
+	}
+
+	@Test
+	void testLimit() throws IOException, InterruptedException {
+		RateLimiter limiter = new RateLimiter(4);
+		for (int i = 0; i < 4; i++) {
+			limiter.acquire();
+			limiter.release(-1, 0, true);
+		}
+		assertEquals(1, limiter.getLimit());
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire();
+			limiter.release(-1, 0, false);
+		}
+		assertEquals(4, limiter.getLimit());
+
+		// A fifth request waits for one of four in flight
+		for (int i = 0; i < 4; i++)
+			limiter.acquire();
+		Thread waiter = new Thread(() -> assertDoesNotThrow(limiter::acquire));
+		waiter.start();
+		waiter.join(200);
+		assertTrue(waiter.isAlive());
+		limiter.release(-1, 0, false);
+		waiter.join(5000);
+		assertFalse(waiter.isAlive());
+		assertEquals(4, limiter.getInFlight());
+	}
+
+	@Test
+	void testNoRouteLost() {
+		Requests requests = new Requests("http://localhost:" + server.getAddress().getPort(), 4);
+		status = 503;
+		refuse = 3;
+		Route route = requests.mbtaStopsAsync(new Route("Red", "Red Line")).join();
+		assertEquals(1, route.getNumStops());
+
+		requests.setMaxRetries(0);
+		this.requests.set(0);
+		CompletionException e = assertThrows(CompletionException.class,
+				() -> requests.mbtaStopsAsync(Collections.singletonList(new Route("Blue", "Blue Line"))).join());
+		assertTrue(e.getCause() instanceof UncheckedIOException || e.getCause() instanceof HTTPException);
+	}
+}
@@ -0,0 +1,198 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import api.mbta.com.Requests;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+
+/**
+ * Unit tests the {@code Requests} data type against a local MBTA-like server.
+ *
+ * @author Ivan Chang
+ */
+class TestRequests {
+	static final String ROUTES = "{\"data\":[{\"attributes\":{\"color\":\"DA291C\",\"long_name\":\"Red Line\"},\"id\":\"Red\"},"
+			+ "{\"id\":\"Orange\",\"attributes\":{\"long_name\":\"Orange Line\",\"type\":1}},"
+			+ "{\"id\":\"Blue\",\"attributes\":{\"long_name\":\"Blue Line\"}}],\"jsonapi\":{\"version\":\"1.0\"}}";
+
+	private HttpServer server;
+	private ExecutorService handlers;
+	private final CountDownLatch inFlight = new CountDownLatch(3);
+	private final List<String> batches = new CopyOnWriteArrayList<String>();
+	private volatile boolean dtxOnRedOnly; // the api attaches Downtown Crossing to the Red Line only
+	private volatile boolean orangeLine; // the Orange Line on its own is answered with its real stops
+
+	@BeforeEach
+	void start() throws IOException {
+		handlers = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(handlers);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop(0);
+		handlers.shutdown();
+	}
+
+	private static String stop(String id, String name) {
+		return "{\"attributes\":{\"latitude\":42.35,\"longitude\":-71.06,\"name\":" + name
+				+ ",\"wheelchair_boarding\":1},\"id\":\"" + id + "\",\"links\":{\"self\":\"/stops/" + id + "\"}}";
+	}
+
+	private static String stop(String id, String name, String routes) {
+		return "{\"attributes\":{\"name\":\"" + name + "\"},\"id\":\"" + id
+				+ "\",\"relationships\":{\"parent_station\":{\"data\":null},\"route\":{\"data\":" + routes + "}}}";
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String body;
+		String query = exchange.getRequestURI().getQuery();
+		batches.add(query);
+		if (exchange.getRequestURI().getPath().endsWith("/routes")) {
+			body = ROUTES;
+		} else if (query.contains("include=route")) {
+			// Red and Orange share Downtown Crossing, listed once with both routes where
+			// the Red Line has it. On the Orange Line it is between State and Chinatown.
+			String red = "{\"id\":\"Red\",\"type\":\"route\"}", orange = "{\"id\":\"Orange\",\"type\":\"route\"}";
+			String dtx = dtxOnRedOnly ? red : "[" + red + "," + orange + "]";
+			body = "{\"data\":[" + stop("place-pktrm", "Park Street", "[" + red + "]") + ","
+					+ stop("place-dwnxg", "Downtown Crossing", dtx) + ","
+					+ stop("place-sstat", "South Station", "[" + red + "]") + ","
+					+ stop("place-state", "State", "[" + orange + "]") + ","
+					+ stop("place-chncl", "Chinatown", "[" + orange + "]") + "],"
+					+ "\"included\":[{\"attributes\":{\"long_name\":\"Red Line\"},\"id\":\"Red\",\"type\":\"route\"}]}";
+		} else {
+			// Answer only once all three routes are being fetched at the same time
+			inFlight.countDown();
+			try {
+				inFlight.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			String route = exchange.getRequestURI().getQuery().replace("filter[route]=", "");
+			if (route.equals("Orange") && orangeLine)
+				body = "{\"data\":[" + stop("place-state", "\"State\"") + "," + stop("place-dwnxg", "\"Downtown Crossing\"")
+						+ "," + stop("place-chncl", "\"Chinatown\"") + "]}";
+			else
+				body = "{\"data\":[" + stop("place-" + route, "\"" + route + " End\"") + ","
+						+ stop("place-dwnxg", "\"Downtown Crossing\"") + "," + stop("place-" + route + "-x", "null") + "]}";
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	@Test
+	void testLoad() {
+		Requests requests = new Requests("http://localhost:" + server.getAddress().getPort(), 3);
+		requests.setBatchSize(1);
+		List<Route> routes = requests.subwayRoutes();
+		assertEquals(3, routes.size());
+		assertEquals("Red", routes.get(0).getId());
+		assertEquals("Orange Line", routes.get(1).getLong_name());
+
+		routes = requests.mbtaStopsAsync(routes).join();
+		assertEquals(0, inFlight.getCount());
+		assertEquals("Blue", routes.get(2).getId());
+		for (Route route : routes) {
+			assertEquals(3, route.getNumStops());
+			assertEquals(route.getId() + " End", route.getStops().get(0).getName());
+			assertEquals("", route.getStops().get(2).getName());
+			assertEquals(42.35, route.getStops().get(0).getLatitude());
+		}
+		Stop shared = routes.get(0).getStops().get(1);
+		assertSame(shared, routes.get(1).getStops().get(1));
+		assertSame(shared, routes.get(2).getStops().get(1));
+		assertEquals(3, shared.getConnectsTo().size());
+		assertTrue(shared.getConnectsTo().containsAll(routes));
+	}
+
+	@Test
+	void testBatch() {
+		orangeLine = true;
+		Requests requests = new Requests("http://localhost:" + server.getAddress().getPort(), 3);
+		List<Route> routes = requests.subwayRoutes();
+		batches.clear();
+		inFlight.countDown(); // Orange and Blue are fetched on their own, one after the other
+		inFlight.countDown();
+		routes = requests.mbtaStops(routes);
+		// Red is one run of the response with Downtown Crossing inside it. Orange is
+		// not, so the batch cannot tell where Downtown Crossing goes, and Blue has
+		// no stops in it.
+		assertEquals(3, batches.size(), batches.toString());
+		assertTrue(batches.contains("include=route&filter[route]=Red,Orange,Blue")
+				|| batches.contains("filter[route]=Red,Orange,Blue&include=route"), batches.toString());
+		assertTrue(batches.contains("filter[route]=Orange"));
+		assertTrue(batches.contains("filter[route]=Blue"));
+
+		Route red = routes.get(0), orange = routes.get(1), blue = routes.get(2);
+		assertEquals("[Park Street, Downtown Crossing, South Station]",
+				red.getStops().stream().map(Stop::getName).collect(Collectors.toList()).toString());
+		assertEquals("[State, Downtown Crossing, Chinatown]",
+				orange.getStops().stream().map(Stop::getName).collect(Collectors.toList()).toString());
+		assertEquals(3, blue.getNumStops());
+		Stop dtx = red.getStops().get(1);
+		assertSame(dtx, orange.getStops().get(1));
+		assertSame(dtx, blue.getStops().get(1));
+		assertEquals(3, dtx.getConnectsTo().size());
+		assertEquals(1, red.getStops().get(0).getConnectsTo().size());
+		assertEquals(1, orange.getStops().get(0).getConnectsTo().size());
+	}
+
+	@Test
+	void testBatchSharedStopOnOneRoute() {
+		dtxOnRedOnly = true;
+		Requests requests = new Requests("http://localhost:" + server.getAddress().getPort(), 3);
+		List<Route> routes = requests.subwayRoutes();
+		batches.clear();
+		inFlight.countDown(); // every route is fetched on its own, one after the other
+		inFlight.countDown();
+		routes = requests.mbtaStops(routes);
+		// Any route may be missing Downtown Crossing, so none is taken from the batch
+		assertEquals(4, batches.size(), batches.toString());
+		for (Route route : routes)
+			assertTrue(batches.contains("filter[route]=" + route.getId()), batches.toString());
+
+		Route red = routes.get(0), orange = routes.get(1), blue = routes.get(2);
+		assertEquals("[Red End, Downtown Crossing, ]",
+				red.getStops().stream().map(Stop::getName).collect(Collectors.toList()).toString());
+		assertEquals("[Orange End, Downtown Crossing, ]",
+				orange.getStops().stream().map(Stop::getName).collect(Collectors.toList()).toString());
+		Stop dtx = red.getStops().get(1);
+		assertSame(dtx, orange.getStops().get(1));
+		assertSame(dtx, blue.getStops().get(1));
+		assertEquals(3, dtx.getConnectsTo().size());
+		assertEquals(1, orange.getStops().get(0).getConnectsTo().size());
+
+		// and as the api does not list every route of a stop, later loads do not batch
+		batches.clear();
+		requests.mbtaStops(requests.subwayRoutes());
+		assertEquals(4, batches.size(), batches.toString());
+		assertFalse(batches.stream().anyMatch(query -> query.contains("include=route")), batches.toString());
+	}
+}
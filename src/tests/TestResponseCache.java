@@ -0,0 +1,127 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import client.HttpClient;
+import client.ResponseCache;
+
+/**
+ * Unit tests the {@code ResponseCache} data type with an {@code HttpClient}
+ * against a local server that honors If-None-Match.
+ *
+ * @author Ivan Chang
+ */
+class TestResponseCache {
+	@TempDir
+	File dir;
+
+	private HttpServer server;
+	private volatile int version = 1;
+	private final AtomicInteger full = new AtomicInteger(), notModified = new AtomicInteger();
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop(0);
+	}
+
+	private static String body(String query, int version) {
+		StringBuilder sb = new StringBuilder("{\"query\":\"" + query + "\",\"version\":" + version + ",\"data\":[");
+		for (int i = 0; i < 100; i++)
+			sb.append(i > 0 ? "," : "").append("{\"id\":\"place-").append(i).append("\"}");
+		return sb.append("]}").toString();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String eTag = "\"v" + version + "\"";
+		exchange.getResponseHeaders().set("ETag", eTag);
+		if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			notModified.incrementAndGet();
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		full.incrementAndGet();
+		byte[] body = body(exchange.getRequestURI().getQuery(), version).getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private String get(HttpClient client, String route) throws IOException {
+		return client.GET("/stops", Collections.singletonMap("filter[route]", route));
+	}
+
+	@Test
+	void testRevalidate() throws IOException {
+		HttpClient client = new HttpClient("http://localhost:" + server.getAddress().getPort());
+		client.setCache(new ResponseCache(dir, 1 << 20));
+		assertEquals(body("filter[route]=Red", 1), get(client, "Red"));
+		for (int i = 0; i < 3; i++)
+			assertEquals(body("filter[route]=Red", 1), get(client, "Red"));
+		assertEquals(1, full.get());
+		assertEquals(3, notModified.get());
+		assertEquals(3, client.getNotModifiedCount());
+
+		// A changed response replaces the cached one
+		version = 2;
+		assertEquals(body("filter[route]=Red", 2), get(client, "Red"));
+		assertEquals(body("filter[route]=Red", 2), get(client, "Red"));
+		assertEquals(2, full.get());
+		assertEquals(4, notModified.get());
+		assertEquals(1, client.getCache().getNumEntries());
+
+		// The cache survives a restart
+		HttpClient restarted = new HttpClient(client.getUrl());
+		restarted.setCache(new ResponseCache(dir, 1 << 20));
+		assertEquals(body("filter[route]=Red", 2), get(restarted, "Red"));
+		assertEquals(2, full.get());
+		assertEquals(1, restarted.getNotModifiedCount());
+	}
+
+	@Test
+	void testEvict() throws IOException {
+		HttpClient client = new HttpClient("http://localhost:" + server.getAddress().getPort());
+		int size = body("filter[route]=Red", 1).length() + 100;
+		ResponseCache cache = new ResponseCache(dir, 2 * size);
+		client.setCache(cache);
+		get(client, "Red");
+		get(client, "Blue");
+		get(client, "Red"); // Blue is now the least recently used
+		get(client, "Orange");
+		assertEquals(2, cache.getNumEntries());
+		assertTrue(cache.getSize() <= cache.getMaxBytes());
+		assertEquals(2, dir.listFiles((d, name) -> name.endsWith(".resp")).length);
+		assertNotNull(cache.get("/stops?filter%5Broute%5D=Red"));
+		assertNull(cache.get("/stops?filter%5Broute%5D=Blue"));
+
+		// An evicted response is fetched in full again
+		full.set(0);
+		get(client, "Blue");
+		assertEquals(1, full.get());
+		assertEquals(0, dir.listFiles((d, name) -> name.endsWith(".tmp")).length);
+	}
+}
@@ -0,0 +1,96 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import api.mbta.com.Route;
+import api.mbta.com.RouteStats;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import bench.SyntheticNetwork;
+
+/**
+ * Unit tests the {@code RouteStats} data type.
+ *
+ * @author Ivan Chang
+ */
+class TestRouteStats {
+
+	@Test
+	void testRouteStats() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+		RouteStats stats = g.getRouteStats();
+		assertSame(stats, g.getRouteStats());
+
+		assertEquals(Arrays.asList("Mattapan Trolley", "Green Line B"), names(stats.getRoutesWithFewestStops()));
+		assertEquals(Arrays.asList("Red Line"), names(stats.getRoutesWithMostStops()));
+
+		Stop davis = g.matchStopName("Davis"), park = g.matchStopName("Park Street"),
+				ashmont = g.matchStopName("Ashmont"), kenmore = g.matchStopName("Kenmore");
+		List<Stop> interchanges = stats.getStopsWithAtLeast(2);
+		assertEquals(2, interchanges.size());
+		assertTrue(interchanges.contains(park) && interchanges.contains(ashmont));
+		assertEquals(30, stats.getStopsWithAtLeast(0).size());
+		assertEquals(30, stats.getStopsWithAtLeast(1).size());
+		assertTrue(stats.getStopsWithAtLeast(3).isEmpty());
+		assertTrue(stats.getStopsWithAtLeast(100).isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> stats.getStopsWithAtLeast(-1));
+
+		assertEquals(Arrays.asList("Red Line", "Mattapan Trolley"), names(stats.getRoutesThrough(ashmont)));
+		assertEquals(2, stats.getNumRoutes(park));
+		assertEquals(1, stats.getNumRoutes(davis));
+		assertEquals(Arrays.asList("Red Line"), names(stats.getSharedRoutes(davis, park)));
+		assertTrue(stats.getSharedRoutes(kenmore, davis).isEmpty());
+		assertTrue(stats.shareRoute(kenmore, park));
+		assertFalse(stats.shareRoute(kenmore, ashmont));
+		assertTrue(stats.runsThrough(g.getRoutes().get(2), kenmore));
+		assertFalse(stats.runsThrough(g.getRoutes().get(0), kenmore));
+
+		// The statistics follow changes of the routes.
+		List<Route> routes = new ArrayList<Route>(g.getRoutes());
+		routes.remove(0);
+		g.setRoutes(routes);
+		assertNotSame(stats, g.getRouteStats());
+		assertEquals(Arrays.asList("Mattapan Trolley", "Green Line B"), names(g.getRouteStats().getRoutesWithMostStops()));
+		assertTrue(g.getRouteStats().getStopsWithAtLeast(2).isEmpty());
+	}
+
+	@Test
+	void againstScan() {
+		// More than 64 routes, so that every stop takes several words
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.grid(30, 50, 1));
+		RouteStats stats = g.getRouteStats();
+		Random random = new Random(5);
+		for (int i = 0; i < 2000; i++) {
+			Stop a = g.vertexAt(random.nextInt(g.getNumVertices()));
+			Stop b = g.vertexAt(random.nextInt(g.getNumVertices()));
+			List<Route> through = new ArrayList<Route>(), shared = new ArrayList<Route>();
+			for (Route route : g.getRoutes()) {
+				if (route.getStops().contains(a)) {
+					through.add(route);
+					if (route.getStops().contains(b))
+						shared.add(route);
+				}
+			}
+			assertEquals(through, stats.getRoutesThrough(a));
+			assertEquals(shared, stats.getSharedRoutes(a, b));
+			assertEquals(!shared.isEmpty(), stats.shareRoute(a, b));
+		}
+		assertEquals(30 * 50, stats.getStopsWithAtLeast(2).size());
+		for (Stop stop : stats.getStopsWithAtLeast(2))
+			assertEquals(2, stats.getNumRoutes(stop));
+	}
+
+	private static List<String> names(List<Route> routes) {
+		List<String> names = new ArrayList<String>();
+		for (Route route : routes)
+			names.add(route.getLong_name());
+		return names;
+	}
+}
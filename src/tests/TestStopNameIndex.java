@@ -0,0 +1,107 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import api.mbta.com.Stop;
+import api.mbta.com.StopNameIndex;
+import api.mbta.com.SubwayGraph;
+import bench.SyntheticNetwork;
+
+/**
+ * Unit tests the {@code StopNameIndex} data type.
+ *
+ * @author Ivan Chang
+ */
+class TestStopNameIndex {
+
+	@Test
+	void testNormalize() {
+		assertEquals("jfk umass", StopNameIndex.normalize("JFK/UMass"));
+		assertEquals("childrens hospital", StopNameIndex.normalize("  Children's   Hospital "));
+		assertEquals("cafe", StopNameIndex.normalize("Caf\u00e9"));
+		assertEquals("", StopNameIndex.normalize(" - "));
+	}
+
+	@Test
+	void testRanking() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+
+		// whole name before start of name
+		assertEquals(names("Central", "Central Avenue"), names(g.searchStops("central", 5)));
+		// start of a later word, shorter names first
+		assertEquals(names("Park Street", "Capen Street"), names(g.searchStops("street", 5)));
+		// start of the name before start of a later word
+		assertEquals(names("Central", "Cedar Grove", "Central Avenue", "Government Center", "Hynes Convention Center"),
+				names(g.searchStops("ce", 10)));
+		// anywhere in the name
+		assertEquals("Arlington", g.matchStopName("ngton").getName());
+		// punctuation and case do not matter
+		assertEquals("JFK/UMass", g.matchStopName("jfk umass").getName());
+		assertEquals("Kendall/MIT", g.matchStopName("kendall mit").getName());
+		// misspelt
+		assertEquals("Harvard", g.matchStopName("Harvrd").getName());
+		assertEquals("Government Center", g.matchStopName("Goverment Centre").getName());
+		// nothing close enough
+		assertNull(g.matchStopName("Revere Beach"));
+		assertNull(g.matchStopName(""));
+		assertNull(g.matchStopName(null));
+		assertEquals(1, g.searchStops("a", 1).size());
+		assertThrows(IllegalArgumentException.class, () -> g.searchStops("a", 0));
+
+		// The index follows modifications of the graph.
+		Stop lonely = new Stop("place-lonely", "Lonely");
+		g.addVertex(lonely);
+		assertSame(lonely, g.matchStopName("lonely"));
+	}
+
+	@Test
+	void testAgainstScan() {
+		String[] words = { "Main", "Street", "Washington", "Ave", "Center", "Square", "Park", "Hill", "Road", "Station",
+				"Harbor", "Common" };
+		Random random = new Random(7);
+		List<Stop> stops = new ArrayList<Stop>();
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder name = new StringBuilder();
+			for (int w = 0, n = 1 + random.nextInt(4); w < n; w++)
+				name.append(w == 0 ? "" : " ").append(words[random.nextInt(words.length)]);
+			stops.add(new Stop("stop-" + i, name.append(' ').append(i).toString()));
+		}
+		StopNameIndex index = new StopNameIndex(stops);
+		assertEquals(stops.size(), index.size());
+		for (String query : new String[] { "wash", "ington ave", "hill road 1", "ter squ", "142", "n st" }) {
+			int expected = 0;
+			for (Stop stop : stops)
+				if (stop.getName().toLowerCase().contains(query))
+					expected++;
+			List<Stop> found = index.search(query, stops.size());
+			int contained = 0;
+			for (Stop stop : found)
+				if (stop.getName().toLowerCase().contains(query))
+					contained++;
+			assertEquals(expected, contained, query);
+			// exact matches rank first, and no stop is listed twice
+			assertEquals(found.size(), found.stream().distinct().count());
+			for (int i = 1; i < found.size(); i++)
+				if (!found.get(i - 1).getName().toLowerCase().contains(query))
+					assertFalse(found.get(i).getName().toLowerCase().contains(query), query);
+		}
+	}
+
+	private static List<String> names(String... names) {
+		return Arrays.asList(names);
+	}
+
+	private static List<String> names(List<Stop> stops) {
+		List<String> names = new ArrayList<String>();
+		for (Stop stop : stops)
+			names.add(stop.getName());
+		return names;
+	}
+}
@@ -0,0 +1,321 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import api.mbta.com.Journey;
+import api.mbta.com.Path;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.SubwayGraph;
+import bench.SyntheticNetwork;
+
+/**
+ * Unit tests the {@code SubwayGraph} data type on a small offline network.
+ *
+ * @author Ivan Chang
+ */
+class TestSubwayGraph {
+
+	@Test
+	@SuppressWarnings("deprecation") // tests the compatibility wrapper
+	void testDijkstra() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+
+		assertEquals(30, g.getNumVertices());
+		assertEquals(29, g.getNumEdges());
+
+		Stop davis = g.matchStopName("Davis");
+		Stop kendall = g.matchStopName("Kendall");
+		Stop path = g.Dijkstra(davis, kendall);
+		assertNotNull(path);
+		assertSame(kendall, path);
+		assertEquals(4, path.getDistance());
+		String[] expected = { "Kendall/MIT", "Central", "Harvard", "Porter", "Davis" };
+		Stop s = path;
+		for (String name : expected) {
+			assertEquals(name, s.getName());
+			s = s.getPrev();
+		}
+		assertNull(s);
+
+		Stop ashmont = g.matchStopName("Ashmont");
+		Stop arlington = g.matchStopName("Arlington");
+		path = g.Dijkstra(ashmont, arlington);
+		assertNotNull(path);
+		assertEquals(11, path.getDistance());
+
+		// A stop is a path to itself.
+		path = g.Dijkstra(davis, davis);
+		assertSame(davis, path);
+		assertNull(path.getPrev());
+	}
+
+	@Test
+	void testShortestPath() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+
+		Stop davis = g.matchStopName("Davis");
+		Stop kendall = g.matchStopName("Kendall");
+		Path path = g.shortestPath(davis, kendall);
+		assertNotNull(path);
+		assertEquals(4, path.getDistance());
+		assertEquals(5, path.size());
+		assertSame(davis, path.getStart());
+		assertSame(kendall, path.getGoal());
+		assertEquals("Davis -> Porter -> Harvard -> Central -> Kendall/MIT", path.toString());
+		assertThrows(UnsupportedOperationException.class, () -> path.getStops().set(0, kendall));
+
+		// Queries do not write onto the shared Stop objects.
+		assertNull(kendall.getPrev());
+		assertEquals(0, kendall.getDistance());
+
+		// Disconnected stops have no path.
+		Stop lonely = new Stop("place-lonely", "Lonely");
+		g.addVertex(lonely);
+		assertNull(g.shortestPath(davis, lonely));
+	}
+
+	@Test
+	void testPathLegs() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+		Stop davis = g.matchStopName("Davis"), park = g.matchStopName("Park Street");
+		Path path = g.shortestPath(davis, g.matchStopName("Arlington"));
+		assertEquals(9, path.size());
+		assertEquals(1, path.getTransfers());
+		assertEquals("[Red Line, Green Line B]", path.getRoutes().stream().map(r -> r.getLong_name())
+				.collect(Collectors.toList()).toString());
+		assertSame(davis, path.getBoardingStops().get(0));
+		assertSame(park, path.getBoardingStops().get(1));
+
+		JSONObject json = new JSONObject(path.toJson());
+		assertEquals(8, json.getInt("distance"));
+		JSONArray stops = json.getJSONArray("stops");
+		assertEquals(9, stops.length());
+		assertEquals("place-davis", stops.getJSONObject(0).getString("id"));
+		assertEquals("Arlington", stops.getJSONObject(8).getString("name"));
+		JSONArray legs = json.getJSONArray("legs");
+		assertEquals(2, legs.length());
+		assertEquals("Red", legs.getJSONObject(0).getString("route"));
+		assertEquals(0, legs.getJSONObject(0).getInt("board"));
+		assertEquals(6, legs.getJSONObject(0).getInt("alight"));
+		assertEquals("Green Line B", legs.getJSONObject(1).getString("name"));
+		assertEquals(8, legs.getJSONObject(1).getInt("alight"));
+
+		// A stop is a path to itself, with no legs.
+		path = g.shortestPath(davis, davis);
+		assertTrue(path.getRoutes().isEmpty());
+		assertEquals(0, new JSONObject(path.toJson()).getJSONArray("legs").length());
+
+		// A hop no route serves is a leg of its own.
+		Stop lonely = new Stop("place-lonely", "Lonely \"Stop\"");
+		g.addVertex(lonely);
+		g.addEdge(davis, lonely);
+		g.addEdge(lonely, davis);
+		path = g.shortestPath(g.matchStopName("Porter"), lonely);
+		assertEquals(2, path.getRoutes().size());
+		assertNull(path.getRoutes().get(1));
+		json = new JSONObject(path.toJson());
+		assertEquals("Lonely \"Stop\"", json.getJSONArray("stops").getJSONObject(2).getString("name"));
+		assertTrue(json.getJSONArray("legs").getJSONObject(1).isNull("route"));
+	}
+
+	@Test
+	void testConcurrentQueries() throws Exception {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+		int n = g.getNumVertices();
+		int[][] expected = new int[n][n];
+		for (int s = 0; s < n; s++)
+			for (int t = 0; t < n; t++)
+				expected[s][t] = g.shortestPath(g.vertexAt(s), g.vertexAt(t)).getDistance();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 32; i++) {
+			int offset = i;
+			results.add(executor.submit(() -> {
+				for (int k = 0; k < n * n; k++) {
+					int s = (k + offset) % n, t = (k / n + offset) % n;
+					if (g.shortestPath(g.vertexAt(s), g.vertexAt(t)).getDistance() != expected[s][t])
+						return false;
+				}
+				return true;
+			}));
+		}
+		for (Future<Boolean> result : results)
+			assertTrue(result.get());
+		executor.shutdown();
+	}
+
+	@Test
+	void testStrategies() {
+		for (SubwayGraph g : new SubwayGraph[] { new SubwayGraph(SyntheticNetwork.excerpt()),
+				new SubwayGraph(SyntheticNetwork.grid(12, 9)) }) {
+			int n = g.getNumVertices();
+			for (int s = 0; s < n; s++) {
+				for (int t = 0; t < n; t++) {
+					Stop start = g.vertexAt(s), goal = g.vertexAt(t);
+					Path expected = g.shortestPath(start, goal, SubwayGraph.Strategy.DIJKSTRA);
+					for (SubwayGraph.Strategy strategy : SubwayGraph.Strategy.values()) {
+						Path path = g.shortestPath(start, goal, strategy);
+						assertEquals(expected.getDistance(), path.getDistance());
+						assertEquals(expected.getDistance() + 1, path.size());
+						assertSame(start, path.getStart());
+						assertSame(goal, path.getGoal());
+						for (int i = 1; i < path.size(); i++)
+							assertTrue(g.hasEdge(path.getStops().get(i - 1), path.getStops().get(i)));
+					}
+				}
+			}
+		}
+
+		// A* only settles stops towards the destination on a located grid.
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.grid(30, 30));
+		Stop start = g.vertexAt(0), goal = g.vertexAt(g.getNumVertices() / 2);
+		Path dijkstra = g.shortestPath(start, goal, SubwayGraph.Strategy.DIJKSTRA);
+		Path astar = g.shortestPath(start, goal, SubwayGraph.Strategy.ASTAR);
+		assertEquals(dijkstra.getDistance(), astar.getDistance());
+		assertTrue(astar.getSettled() < dijkstra.getSettled());
+	}
+
+	@Test
+	void testAllPairs() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+		Stop lonely = new Stop("place-lonely", "Lonely");
+		g.addVertex(lonely);
+		assertFalse(g.hasAllPairs());
+		g.precomputeAllPairs();
+		assertTrue(g.hasAllPairs());
+
+		int n = g.getNumVertices();
+		for (int s = 0; s < n; s++) {
+			for (int t = 0; t < n; t++) {
+				Stop start = g.vertexAt(s), goal = g.vertexAt(t);
+				Path expected = g.shortestPath(start, goal, SubwayGraph.Strategy.DIJKSTRA);
+				Path path = g.shortestPath(start, goal);
+				if (expected == null) {
+					assertNull(path);
+					continue;
+				}
+				assertEquals(expected.getDistance(), path.getDistance());
+				assertEquals(expected.size(), path.size());
+				assertSame(start, path.getStart());
+				assertSame(goal, path.getGoal());
+				assertEquals(0, path.getSettled());
+			}
+		}
+
+		// The table is dropped once the graph changes.
+		g.addEdge(lonely, g.matchStopName("Davis"));
+		assertFalse(g.hasAllPairs());
+		assertEquals(1, g.shortestPath(lonely, g.matchStopName("Davis")).getDistance());
+	}
+
+	@Test
+	void testBatch() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.grid(8, 8, 2));
+		Stop lonely = new Stop("place-lonely", "Lonely");
+		g.addVertex(lonely);
+		List<Stop> stops = new ArrayList<Stop>();
+		for (int v = 0; v < g.getNumVertices(); v += 7)
+			stops.add(g.vertexAt(v));
+		stops.add(lonely);
+
+		for (boolean prepared : new boolean[] { false, true }) {
+			if (prepared)
+				g.prepareContractionHierarchy();
+			int[][] matrix = g.distanceMatrix(stops, stops);
+			for (int i = 0; i < stops.size(); i++) {
+				Stop origin = stops.get(i);
+				int[] distances = g.distances(origin, stops);
+				List<Path> paths = g.shortestPaths(origin, stops);
+				for (int j = 0; j < stops.size(); j++) {
+					Path expected = g.shortestPath(origin, stops.get(j), SubwayGraph.Strategy.DIJKSTRA);
+					int d = expected == null ? -1 : expected.getDistance();
+					assertEquals(d, matrix[i][j]);
+					assertEquals(d, distances[j]);
+					if (expected == null) {
+						assertNull(paths.get(j));
+					} else {
+						assertEquals(d, paths.get(j).getDistance());
+						assertSame(origin, paths.get(j).getStart());
+						assertSame(stops.get(j), paths.get(j).getGoal());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testJourneys() {
+		SubwayGraph g = new SubwayGraph(SyntheticNetwork.excerpt());
+		Stop davis = g.matchStopName("Davis");
+		List<Journey> journeys = g.journeys(davis, g.matchStopName("Ashmont"));
+		assertEquals(1, journeys.size());
+		assertEquals(15, journeys.get(0).getStopsTravelled());
+		assertEquals(0, journeys.get(0).getTransfers());
+
+		journeys = g.journeys(davis, g.matchStopName("Arlington"));
+		assertEquals(1, journeys.size());
+		Journey journey = journeys.get(0);
+		assertEquals(8, journey.getStopsTravelled());
+		assertEquals(1, journey.getTransfers());
+		assertEquals("Red Line", journey.getRoutes().get(0).getLong_name());
+		assertEquals("Green Line B", journey.getRoutes().get(1).getLong_name());
+		assertEquals("Park Street", journey.getBoardingStops().get(1).getName());
+		assertTrue(g.journeys(davis, g.matchStopName("Arlington"), 0).isEmpty());
+		assertEquals(0, g.journeys(davis, davis).get(0).getStopsTravelled());
+
+		// A slow direct line and a faster journey with one transfer are both Pareto optimal.
+		Map<String, Stop> stops = new HashMap<String, Stop>();
+		List<Route> routes = new ArrayList<Route>();
+		routes.add(SyntheticNetwork.route(stops, "A", "Direct", "X", "A1", "A2", "A3", "A4", "Y"));
+		routes.add(SyntheticNetwork.route(stops, "B", "Feeder", "X", "B1", "M"));
+		routes.add(SyntheticNetwork.route(stops, "C", "Connector", "M", "C1", "Y"));
+		g = new SubwayGraph(routes);
+		journeys = g.journeys(stops.get("Y"), stops.get("X"));
+		assertEquals(2, journeys.size());
+		assertEquals(5, journeys.get(0).getStopsTravelled());
+		assertEquals(0, journeys.get(0).getTransfers());
+		assertEquals(4, journeys.get(1).getStopsTravelled());
+		assertEquals(1, journeys.get(1).getTransfers());
+		assertEquals("Y [Connector] -> C1 -> M [Feeder] -> B1 -> X", journeys.get(1).toString());
+		assertEquals(1, g.journeys(stops.get("Y"), stops.get("X"), 0).size());
+
+		// The fewest stops over all journeys is the shortest path.
+		g = new SubwayGraph(SyntheticNetwork.grid(6, 5, 2));
+		int n = g.getNumVertices();
+		for (int s = 0; s < n; s += 5) {
+			for (int t = 0; t < n; t += 3) {
+				journeys = g.journeys(g.vertexAt(s), g.vertexAt(t));
+				int previous = Integer.MAX_VALUE;
+				for (int i = 0; i < journeys.size(); i++) {
+					journey = journeys.get(i);
+					assertTrue(journey.getStopsTravelled() < previous);
+					previous = journey.getStopsTravelled();
+					assertEquals(Math.max(0, journey.getRoutes().size() - 1), journey.getTransfers());
+					List<Stop> along = journey.getStops();
+					assertSame(g.vertexAt(s), along.get(0));
+					assertSame(g.vertexAt(t), along.get(along.size() - 1));
+					for (int j = 1; j < along.size(); j++)
+						assertTrue(g.hasEdge(along.get(j - 1), along.get(j)));
+				}
+				if (s != t)
+					assertTrue(journeys.get(0).getTransfers() <= 2);
+				assertEquals(g.shortestPath(g.vertexAt(s), g.vertexAt(t)).getDistance(), previous);
+			}
+		}
+	}
+}
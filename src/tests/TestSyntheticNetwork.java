@@ -0,0 +1,89 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import bench.SyntheticNetwork;
+
+/**
+ * Unit tests the transit networks of {@code SyntheticNetwork}.
+ *
+ * @author Ivan Chang
+ */
+class TestSyntheticNetwork {
+
+	@Test
+	void testSameSeed() {
+		List<String> first = describe(SyntheticNetwork.transit(2000, 6, 2, 0.5, 7));
+		assertEquals(first, describe(SyntheticNetwork.transit(2000, 6, 2, 0.5, 7)));
+		assertNotEquals(first, describe(SyntheticNetwork.transit(2000, 6, 2, 0.5, 8)));
+	}
+
+	// Every route as its id and the ids and positions of its stops
+	private static List<String> describe(List<Route> routes) {
+		List<String> lines = new ArrayList<String>();
+		for (Route route : routes) {
+			StringBuilder sb = new StringBuilder(route.getId());
+			for (Stop stop : route.getStops())
+				sb.append(' ').append(stop.getId()).append('@').append(stop.getLatitude()).append(',')
+						.append(stop.getLongitude());
+			lines.add(sb.toString());
+		}
+		return lines;
+	}
+
+	@Test
+	void testNumberOfStops() {
+		int[][] arguments = { { 100, 2, 0 }, { 2000, 6, 2 }, { 10000, 33, 2 }, { 50000, 20, 3 } };
+		for (int[] a : arguments) {
+			int stops = a[0], lines = a[1], branches = a[2];
+			int trunk = (int) Math.round(stops / (lines * (1 + branches / 3.0)));
+			int expected = lines * (trunk + branches * (trunk / 3));
+
+			// Without interchanges, exactly the stops of the trunks and branches
+			List<Route> routes = SyntheticNetwork.transit(stops, lines, branches, 0, 1);
+			assertEquals(lines * (1 + branches), routes.size());
+			assertEquals(expected, stops(routes).size());
+			assertEquals(stops, expected, 0.01 * stops);
+
+			// Interchanges take the place of some stops
+			int fewer = stops(SyntheticNetwork.transit(stops, lines, branches, 1, 1)).size();
+			assertTrue(fewer <= expected && fewer > 0.8 * expected, fewer + " of " + expected);
+		}
+	}
+
+	@Test
+	void testNoInterchanges() {
+		assertEquals(0, interchanges(SyntheticNetwork.transit(10000, 33, 2, 0, 1)));
+		assertTrue(interchanges(SyntheticNetwork.transit(10000, 33, 2, 1, 1)) > 0);
+	}
+
+	private static Set<Stop> stops(List<Route> routes) {
+		Set<Stop> stops = new HashSet<Stop>();
+		for (Route route : routes)
+			stops.addAll(route.getStops());
+		return stops;
+	}
+
+	// The stops on more than one line. A branch shares its stops on the trunk
+	// with its own line, which is no interchange.
+	private static int interchanges(List<Route> routes) {
+		int count = 0;
+		for (Stop stop : stops(routes)) {
+			Set<String> lines = new HashSet<String>();
+			for (Route route : stop.getConnectsTo())
+				lines.add(route.getId().split("-")[1]);
+			if (lines.size() > 1)
+				count++;
+		}
+		return count;
+	}
+}
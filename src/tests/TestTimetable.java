@@ -0,0 +1,137 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import api.mbta.com.Itinerary;
+import api.mbta.com.Route;
+import api.mbta.com.Stop;
+import api.mbta.com.Timetable;
+
+/**
+ * Unit tests the {@code Timetable} data type.
+ *
+ * @author Ivan Chang
+ */
+class TestTimetable {
+
+	@Test
+	void testItinerary() {
+		Route red = new Route("Red", "Red Line"), green = new Route("Green-B", "Green Line B");
+		Stop davis = new Stop("place-davis", "Davis"), harvard = new Stop("place-harsq", "Harvard"),
+				park = new Stop("place-pktrm", "Park Street"), boylston = new Stop("place-boyls", "Boylston"),
+				arlington = new Stop("place-armnl", "Arlington");
+		int eight = Timetable.parseTime("08:00:00");
+		Timetable timetable = new Timetable.Builder()
+				.addTrip(red, Arrays.asList(davis, harvard, park), times(eight, eight + 300, eight + 900),
+						times(eight, eight + 360, eight + 900))
+				.addTrip(red, Arrays.asList(davis, harvard, park), times(eight + 600, eight + 900, eight + 1500),
+						times(eight + 600, eight + 960, eight + 1500))
+				.addTrip(green, Arrays.asList(park, boylston, arlington), times(eight + 840, eight + 960, eight + 1080),
+						times(eight + 840, eight + 960, eight + 1080))
+				.addTrip(green, Arrays.asList(park, boylston, arlington), times(eight + 1200, eight + 1320, eight + 1440),
+						times(eight + 1200, eight + 1320, eight + 1440))
+				.build();
+		assertEquals(8, timetable.size());
+		assertEquals(4, timetable.getNumTrips());
+
+		// The first Red Line trip arrives at 08:15, too late for the 08:14 Green Line trip.
+		Itinerary itinerary = timetable.itinerary(davis, arlington, eight);
+		assertEquals(eight + 1440, itinerary.getArrival());
+		assertEquals(eight + 1440, timetable.earliestArrival(davis, arlington, eight));
+		assertEquals(1, itinerary.getTransfers());
+		assertEquals(2, itinerary.getLegs().size());
+		assertSame(red, itinerary.getLegs().get(0).getRoute());
+		assertSame(park, itinerary.getLegs().get(1).getFrom());
+		assertEquals("08:00:00 Davis [Red Line] -> 08:15:00 Park Street, "
+				+ "08:20:00 Park Street [Green Line B] -> 08:24:00 Arlington", itinerary.toString());
+
+		// Staying on board at Harvard, leaving after the first trip has gone.
+		assertEquals(eight + 1500, timetable.earliestArrival(harvard, park, eight + 361));
+		assertEquals(eight + 900, timetable.earliestArrival(harvard, park, eight + 360));
+		assertEquals(-1, timetable.earliestArrival(arlington, davis, eight));
+		assertEquals(-1, timetable.earliestArrival(davis, park, eight + 601));
+		assertNull(timetable.itinerary(davis, park, eight + 601));
+		assertEquals(eight, timetable.earliestArrival(park, park, eight));
+		assertEquals(0, timetable.itinerary(park, park, eight).getLegs().size());
+		assertEquals(-1, timetable.earliestArrival(davis, new Stop("place-lonely", "Lonely"), eight));
+	}
+
+	@Test
+	void testRandom() {
+		Random random = new Random(7);
+		Route route = new Route("R", "Random");
+		Stop[] stops = new Stop[40];
+		for (int i = 0; i < stops.length; i++)
+			stops[i] = new Stop("stop-" + i, "Stop " + i);
+		Timetable.Builder builder = new Timetable.Builder();
+		List<int[]> connections = new ArrayList<int[]>(); // from, departure, to, arrival
+		for (int t = 0; t < 300; t++) {
+			int k = 2 + random.nextInt(6);
+			List<Stop> tripStops = new ArrayList<Stop>();
+			int[] arrivals = new int[k], departures = new int[k];
+			int time = random.nextInt(20000);
+			for (int i = 0; i < k; i++) {
+				tripStops.add(stops[random.nextInt(stops.length)]);
+				arrivals[i] = time;
+				time += random.nextInt(3) * 30;
+				departures[i] = time;
+				time += 60 + random.nextInt(600);
+			}
+			builder.addTrip(route, tripStops, arrivals, departures);
+			for (int i = 0; i + 1 < k; i++)
+				connections.add(new int[] { index(stops, tripStops.get(i)), departures[i],
+						index(stops, tripStops.get(i + 1)), arrivals[i + 1] });
+		}
+		Timetable timetable = builder.build();
+
+		for (int q = 0; q < 200; q++) {
+			int s = random.nextInt(stops.length), t = random.nextInt(stops.length);
+			int departure = random.nextInt(20000);
+			// Relax every connection until no arrival improves.
+			int[] earliest = new int[stops.length];
+			Arrays.fill(earliest, Integer.MAX_VALUE);
+			earliest[s] = departure;
+			for (boolean changed = true; changed;) {
+				changed = false;
+				for (int[] c : connections) {
+					if (earliest[c[0]] <= c[1] && c[3] < earliest[c[2]]) {
+						earliest[c[2]] = c[3];
+						changed = true;
+					}
+				}
+			}
+			int expected = earliest[t] == Integer.MAX_VALUE ? -1 : earliest[t];
+			assertEquals(expected, timetable.earliestArrival(stops[s], stops[t], departure));
+			Itinerary itinerary = timetable.itinerary(stops[s], stops[t], departure);
+			if (expected == -1) {
+				assertNull(itinerary);
+				continue;
+			}
+			assertEquals(expected, itinerary.getArrival());
+			Stop at = stops[s];
+			int time = departure;
+			for (Itinerary.Leg leg : itinerary.getLegs()) {
+				assertSame(at, leg.getFrom());
+				assertTrue(time <= leg.getDeparture());
+				at = leg.getTo();
+				time = leg.getArrival();
+			}
+			assertSame(stops[t], at);
+		}
+	}
+
+	private static int[] times(int... times) {
+		return times;
+	}
+
+	private static int index(Stop[] stops, Stop stop) {
+		return Arrays.asList(stops).indexOf(stop);
+	}
+}